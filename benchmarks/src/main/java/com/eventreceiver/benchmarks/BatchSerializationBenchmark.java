@@ -0,0 +1,94 @@
+package com.eventreceiver.benchmarks;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.FlushReason;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.TierBatch;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.model.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a 5MB batch of events into its JSON array: binding the whole list with
+ * writeValueAsString, streaming the list into a reused buffer, and the service's path of
+ * serializing each event into a scratch buffer and appending it to a {@link TierBatch}, which
+ * also covers the batch size accounting that replaced the per-event size calculation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchSerializationBenchmark {
+    private static final int BATCH_BYTES = 5 * 1024 * 1024;
+
+    @Param({"1024", "65536"})
+    int bodyBytes;
+
+    private List<Event> events;
+    private BatchBufferPool bufferPool;
+    private ScratchOutputStream batchBuffer;
+    private ScratchOutputStream scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int eventBytes = Fixtures.payload(bodyBytes).length + 1;
+        events = List.of(Fixtures.events(BATCH_BYTES / eventBytes - 1, bodyBytes));
+        bufferPool = new BatchBufferPool(BATCH_BYTES, 2, true);
+        batchBuffer = new ScratchOutputStream(BATCH_BYTES);
+        scratch = new ScratchOutputStream(bodyBytes + 256);
+    }
+
+    @Benchmark
+    public String writeValueAsString() throws IOException {
+        return Fixtures.OBJECT_MAPPER.writeValueAsString(events);
+    }
+
+    @Benchmark
+    public int writeValueToReusedStream() throws IOException {
+        batchBuffer.reset();
+        Fixtures.OBJECT_MAPPER.writeValue(batchBuffer, events);
+        return batchBuffer.size();
+    }
+
+    @Benchmark
+    public long appendToTierBatch() throws IOException {
+        TierBatch batch = new TierBatch("bench", JsonArrayFormat.INSTANCE, bufferPool, BATCH_BYTES);
+        for (Event event : events) {
+            scratch.reset();
+            Fixtures.OBJECT_MAPPER.writeValue(scratch, event);
+            batch.tryAppend(scratch.buffer(), 0, scratch.size(), event.getEventTimestamp().toEpochMilli(), null);
+        }
+        SealedBatch sealed = batch.seal(FlushReason.SIZE);
+        long sizeBytes = sealed.getSizeBytes();
+        sealed.release();
+        return sizeBytes;
+    }
+
+    private static final class ScratchOutputStream extends ByteArrayOutputStream {
+        ScratchOutputStream(int capacity) {
+            super(capacity);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+}
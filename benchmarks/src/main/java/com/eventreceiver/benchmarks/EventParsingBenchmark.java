@@ -0,0 +1,55 @@
+package com.eventreceiver.benchmarks;
+
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.Event;
+import com.eventreceiver.service.EventPayloadParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading a single event request body of 1KB to 10MB: the streaming validation of
+ * {@link EventPayloadParser} used by the raw passthrough mode, against binding the body to
+ * {@link Event}. The parser compacts the body in place, so both read a fresh copy of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventParsingBenchmark {
+    @Param({"1024", "65536", "1048576", "10485760"})
+    int bodyBytes;
+
+    private byte[] payload;
+    private EventPayloadParser parser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = Fixtures.payload(bodyBytes);
+        parser = new EventPayloadParser(Fixtures.OBJECT_MAPPER);
+    }
+
+    @Benchmark
+    public EncodedEvent parseStreaming() {
+        return parser.parse(payload.clone());
+    }
+
+    @Benchmark
+    public Event bindToEvent() throws IOException {
+        return Fixtures.OBJECT_MAPPER.readValue(payload.clone(), Event.class);
+    }
+}
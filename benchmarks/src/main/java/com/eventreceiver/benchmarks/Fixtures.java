@@ -0,0 +1,59 @@
+package com.eventreceiver.benchmarks;
+
+import com.eventreceiver.config.JacksonConfig;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Events and payloads shared by the benchmarks.
+ */
+final class Fixtures {
+    static final ObjectMapper OBJECT_MAPPER = new JacksonConfig().objectMapper();
+    static final String[] TIERS = {"free", "pro", "enterprise"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param bodyBytes Length of the body
+     * @return An event with an ASCII body of the given length
+     */
+    static Event event(int bodyBytes) {
+        char[] body = new char[bodyBytes];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (char) ('a' + i % 26);
+        }
+        Event event = new Event();
+        event.setEventTimestamp(Instant.parse("2024-03-20T10:15:30.123Z"));
+        event.setBody(new String(body));
+        return event;
+    }
+
+    /**
+     * @param bodyBytes Length of the body
+     * @return The request body of an event with a body of the given length
+     */
+    static byte[] payload(int bodyBytes) {
+        try {
+            return OBJECT_MAPPER.writeValueAsString(event(bodyBytes)).getBytes(StandardCharsets.UTF_8);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param count Number of events
+     * @param bodyBytes Length of the body of every event
+     * @return Events that all share one body
+     */
+    static Event[] events(int count, int bodyBytes) {
+        Event[] events = new Event[count];
+        Arrays.fill(events, event(bodyBytes));
+        return events;
+    }
+}
@@ -0,0 +1,87 @@
+package com.eventreceiver.benchmarks;
+
+import com.eventreceiver.admission.MemoryBudget;
+import com.eventreceiver.admission.TierRateLimiter;
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.controller.EventController;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.Event;
+import com.eventreceiver.service.EventPayloadParser;
+import com.eventreceiver.service.EventService;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of {@link EventController#ingestEvent} without HTTP: tier resolution, admission,
+ * validation and the response, with an event service that drops the event. Run it with
+ * {@code -prof gc}: an accepted event should allocate the 1KB copy of the body that stands in for
+ * the request payload plus the JSON parser, under 1KB, and a request with an unknown tier nothing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestRequestBenchmark {
+    private byte[] payload;
+    private EventController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of(Fixtures.TIERS));
+        TierRegistry tierRegistry = new TierRegistry(appConfig);
+        BatchBufferPool bufferPool = new BatchBufferPool(appConfig.getBatch().getBufferCapacityBytes(),
+            appConfig.getBatch().getMaxPooledBuffers(), appConfig.getBatch().isOffHeapBuffers());
+        MemoryBudget memoryBudget = new MemoryBudget(bufferPool, tierRegistry, appConfig, registry);
+        controller = new EventController(appConfig, new DiscardingEventService(),
+            new EventPayloadParser(Fixtures.OBJECT_MAPPER), memoryBudget,
+            new TierRateLimiter(tierRegistry, appConfig, registry), tierRegistry, registry);
+        payload = Fixtures.payload(1024);
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, Object>> acceptedEvent() {
+        return controller.ingestEvent(payload.clone(), "pro");
+    }
+
+    @Benchmark
+    public ResponseEntity<Map<String, Object>> unauthorizedTier() {
+        return controller.ingestEvent(payload, "unknown");
+    }
+
+    private static final class DiscardingEventService implements EventService {
+        @Override
+        public void processEvent(Event event, CustomerTier customerTier) {
+        }
+
+        @Override
+        public void processEncodedEvent(EncodedEvent event, CustomerTier customerTier) {
+        }
+
+        @Override
+        public void processEncodedEvents(List<EncodedEvent> events, CustomerTier customerTier) {
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.eventreceiver.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Open-loop load generator for {@code POST /api/v1/ingest}. Requests are sent at a fixed rate
+ * whether or not earlier ones have completed, and their latency is measured from the time they
+ * were due, so a stalled service shows up in the percentiles instead of lowering the load.
+ * Tiers and body sizes are drawn from weighted distributions with a fixed seed, or replayed from
+ * a JSONL file of {@code {"tier": ..., "event": {...}}} lines, so runs are repeatable.
+ * After the run the service's own metrics give the event-to-storage latency and the number of
+ * objects stored per 1000 events; run the service with the {@code bench} profile so it stores
+ * into the S3 stub.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.eventreceiver.benchmarks.LoadGenerator \
+ *     --rps=500 --duration=60 --tiers=free:6,pro:3,enterprise:1 --sizes=1024:90,65536:9,10485760:1
+ * </pre>
+ */
+public final class LoadGenerator {
+    private static final ObjectMapper OBJECT_MAPPER = Fixtures.OBJECT_MAPPER;
+    private static final String[] STATUS_CLASSES = {"202", "400", "429", "503", "other", "failed"};
+    private static final String DURABLE_BUCKET_PREFIX = "durable.le=";
+    private static final Pattern DURABLE_BUCKET = Pattern.compile(
+        "^event_batch_durable_latency_seconds_bucket\\{.*le=\"([^\"]+)\".*} (\\S+)$", Pattern.MULTILINE);
+
+    private final Map<String, String> options;
+    private final String baseUrl;
+    private final HttpClient httpClient;
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        this.baseUrl = option("url", "http://localhost:8080");
+        this.httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws Exception {
+        int rps = Integer.parseInt(option("rps", "200"));
+        int durationSeconds = Integer.parseInt(option("duration", "60"));
+        int drainSeconds = Integer.parseInt(option("drain", "15"));
+        // keep below server.tomcat.max-connections, or requests queue for a connection
+        int maxInFlight = Integer.parseInt(option("max-in-flight", "64"));
+        List<Request> requests = requests(Math.min(rps * durationSeconds, Integer.parseInt(option("distinct", "1000"))));
+
+        Map<String, Double> before = serverCounters();
+        int total = rps * durationSeconds;
+        long[] latencies = new long[total];
+        AtomicLongArray statusCounts = new AtomicLongArray(STATUS_CLASSES.length);
+        AtomicLong acceptedEvents = new AtomicLong();
+        AtomicReference<Throwable> firstError = new AtomicReference<>();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+
+        System.out.printf("Sending %d requests at %d/s to %s/api/v1/ingest%n", total, rps, baseUrl);
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Request request = requests.get(i % requests.size());
+            int index = i;
+            inFlight.acquire();
+            httpClient.sendAsync(request.toHttpRequest(baseUrl), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    latencies[index] = System.nanoTime() - due;
+                    if (error != null) {
+                        firstError.compareAndSet(null, error);
+                    }
+                    int statusClass = error != null ? 5 : statusClass(response.statusCode());
+                    statusCounts.incrementAndGet(statusClass);
+                    if (statusClass == 0) {
+                        acceptedEvents.incrementAndGet();
+                    }
+                    inFlight.release();
+                });
+        }
+        inFlight.acquire(maxInFlight);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        if (firstError.get() != null) {
+            System.out.println("First failed request: " + firstError.get());
+        }
+
+        System.out.printf("Waiting %ds for buffered batches to be stored%n", drainSeconds);
+        TimeUnit.SECONDS.sleep(drainSeconds);
+        Map<String, Double> after = serverCounters();
+
+        report(rps, elapsedSeconds, latencies, statusCounts, acceptedEvents.get(), before, after);
+    }
+
+    private void report(int rps, double elapsedSeconds, long[] latencies, AtomicLongArray statusCounts,
+                        long acceptedEvents, Map<String, Double> before, Map<String, Double> after) throws IOException {
+        Arrays.sort(latencies);
+        ObjectNode result = OBJECT_MAPPER.createObjectNode();
+        result.put("timestamp", Instant.now().toString());
+        result.put("targetRps", rps);
+        result.put("achievedRps", latencies.length / elapsedSeconds);
+        ObjectNode statuses = result.putObject("responses");
+        for (int i = 0; i < STATUS_CLASSES.length; i++) {
+            statuses.put(STATUS_CLASSES[i], statusCounts.get(i));
+        }
+        ObjectNode ingest = result.putObject("ingestLatencyMillis");
+        ingest.put("p50", percentile(latencies, 0.5));
+        ingest.put("p99", percentile(latencies, 0.99));
+        ingest.put("p999", percentile(latencies, 0.999));
+        ingest.put("max", latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+
+        double putRequests = after.get("event.sink.requests") - before.get("event.sink.requests");
+        double storedEvents = after.get("event.processed.total") - before.get("event.processed.total");
+        result.put("acceptedEvents", acceptedEvents);
+        result.put("putRequests", putRequests);
+        result.put("putsPer1kEvents", storedEvents == 0 ? 0 : putRequests * 1000 / storedEvents);
+        ObjectNode durable = result.putObject("durableLatencyMillis");
+        NavigableMap<Double, Double> buckets = new TreeMap<>();
+        after.forEach((key, count) -> {
+            if (key.startsWith(DURABLE_BUCKET_PREFIX)) {
+                String bound = key.substring(DURABLE_BUCKET_PREFIX.length());
+                double le = bound.equals("+Inf") ? Double.POSITIVE_INFINITY : Double.parseDouble(bound);
+                buckets.put(le, count - before.getOrDefault(key, 0.0));
+            }
+        });
+        durable.put("p50", histogramQuantile(buckets, 0.5) * 1000);
+        durable.put("p99", histogramQuantile(buckets, 0.99) * 1000);
+        durable.put("p999", histogramQuantile(buckets, 0.999) * 1000);
+
+        System.out.println(OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        Path out = Paths.get(option("out", "loadgen-result.json"));
+        OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(out.toFile(), result);
+        System.out.println("Result is saved to " + out);
+    }
+
+    /**
+     * Builds the requests to send, either from the replay file or from the tier and size
+     * distributions. Distinct bodies are generated once and sent round robin.
+     */
+    private List<Request> requests(int distinct) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        String input = options.get("input");
+        if (input != null) {
+            for (String line : Files.readAllLines(Paths.get(input), StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = OBJECT_MAPPER.readTree(line);
+                requests.add(new Request(node.path("tier").asText("free"),
+                    OBJECT_MAPPER.writeValueAsBytes(node.path("event"))));
+            }
+            return requests;
+        }
+        Random random = new Random(Long.parseLong(option("seed", "42")));
+        Weighted<String> tiers = Weighted.parse(option("tiers", "free:6,pro:3,enterprise:1"), s -> s);
+        Weighted<Integer> sizes = Weighted.parse(option("sizes", "1024:90,65536:9,1048576:1"), Integer::parseInt);
+        Map<Integer, byte[]> payloads = new HashMap<>();
+        for (int i = 0; i < distinct; i++) {
+            int size = sizes.draw(random);
+            requests.add(new Request(tiers.draw(random), payloads.computeIfAbsent(size, Fixtures::payload)));
+        }
+        return requests;
+    }
+
+    /**
+     * Reads the counters the report is based on, plus the cumulative histogram buckets of the
+     * durable latency summed over all tiers and flush reasons, keyed by {@code DURABLE_BUCKET_PREFIX}
+     * and the bucket's upper bound. Buckets are read from the Prometheus scrape, the only endpoint
+     * that exposes them.
+     */
+    private Map<String, Double> serverCounters() throws IOException, InterruptedException {
+        Map<String, Double> counters = new HashMap<>();
+        for (String name : List.of("event.sink.requests", "event.processed.total")) {
+            JsonNode metric = metric(name, null);
+            counters.put(name, metric == null ? 0 : metric.path("measurements").path(0).path("value").asDouble());
+        }
+        HttpResponse<String> response = httpClient.send(
+            HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/prometheus")).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = DURABLE_BUCKET.matcher(response.body());
+        while (matcher.find()) {
+            counters.merge(DURABLE_BUCKET_PREFIX + matcher.group(1), Double.parseDouble(matcher.group(2)), Double::sum);
+        }
+        return counters;
+    }
+
+    /**
+     * Estimates a quantile from cumulative histogram buckets the way Prometheus'
+     * {@code histogram_quantile} does, interpolating linearly within the bucket it falls in.
+     *
+     * @param buckets Cumulative counts keyed by the bucket's upper bound, in seconds
+     * @return The quantile in seconds, or NaN if no batch was recorded
+     */
+    static double histogramQuantile(NavigableMap<Double, Double> buckets, double quantile) {
+        Map.Entry<Double, Double> last = buckets.lastEntry();
+        if (last == null || last.getValue() <= 0) {
+            return Double.NaN;
+        }
+        double rank = quantile * last.getValue();
+        double lowerBound = 0;
+        double lowerCount = 0;
+        for (Map.Entry<Double, Double> bucket : buckets.entrySet()) {
+            if (bucket.getValue() >= rank) {
+                if (bucket.getKey().isInfinite()) {
+                    return lowerBound;
+                }
+                double inBucket = bucket.getValue() - lowerCount;
+                return inBucket <= 0 ? bucket.getKey()
+                    : lowerBound + (bucket.getKey() - lowerBound) * (rank - lowerCount) / inBucket;
+            }
+            lowerBound = bucket.getKey();
+            lowerCount = bucket.getValue();
+        }
+        return lowerBound;
+    }
+
+    private JsonNode metric(String name, String tag) throws IOException, InterruptedException {
+        String uri = baseUrl + "/actuator/metrics/" + name + (tag != null ? "?tag=" + tag : "");
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(uri)).GET().build(),
+            HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == 200 ? OBJECT_MAPPER.readTree(response.body()) : null;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static int statusClass(int status) {
+        return switch (status) {
+            case 202 -> 0;
+            case 400 -> 1;
+            case 429 -> 2;
+            case 503 -> 3;
+            default -> 4;
+        };
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static final class Request {
+        private final String tier;
+        private final byte[] body;
+
+        Request(String tier, byte[] body) {
+            this.tier = tier;
+            this.body = body;
+        }
+
+        HttpRequest toHttpRequest(String baseUrl) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/ingest"))
+                .header("Content-Type", "application/json")
+                .header("X-Customer-Tier", tier)
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        }
+    }
+
+    /**
+     * Discrete distribution parsed from {@code value:weight,value:weight}.
+     */
+    private static final class Weighted<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Double> cumulative = new ArrayList<>();
+
+        static <T> Weighted<T> parse(String spec, Function<String, T> parser) {
+            Weighted<T> weighted = new Weighted<>();
+            Map<String, Double> weights = new LinkedHashMap<>();
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split(":");
+                weights.put(parts[0], parts.length > 1 ? Double.parseDouble(parts[1]) : 1.0);
+            }
+            double total = weights.values().stream().mapToDouble(Double::doubleValue).sum();
+            double sum = 0;
+            for (Map.Entry<String, Double> entry : weights.entrySet()) {
+                sum += entry.getValue() / total;
+                weighted.values.add(parser.apply(entry.getKey()));
+                weighted.cumulative.add(sum);
+            }
+            return weighted;
+        }
+
+        T draw(Random random) {
+            double r = random.nextDouble();
+            for (int i = 0; i < values.size(); i++) {
+                if (r < cumulative.get(i)) {
+                    return values.get(i);
+                }
+            }
+            return values.get(values.size() - 1);
+        }
+    }
+}
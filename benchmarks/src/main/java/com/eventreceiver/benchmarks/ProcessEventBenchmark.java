@@ -0,0 +1,133 @@
+package com.eventreceiver.benchmarks;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.BatchEncoder;
+import com.eventreceiver.batch.BatchMetrics;
+import com.eventreceiver.batch.BatchUploader;
+import com.eventreceiver.batch.TierFlushScheduler;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.Event;
+import com.eventreceiver.service.EventPayloadParser;
+import com.eventreceiver.service.impl.EventServiceImpl;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.spool.EventSpool;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link EventServiceImpl} appending events to tier batches, with 1 to 64 threads
+ * spread over one or three tiers. Full batches go through the real uploader and encoder into a
+ * sink that discards them, so the numbers cover everything up to the PutObject. The spool is off.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProcessEventBenchmark {
+    @Param({"1", "3"})
+    int tiers;
+
+    @Param({"1024"})
+    int bodyBytes;
+
+    private ResilientStorage resilientStorage;
+    private BatchUploader batchUploader;
+    private TierFlushScheduler flushScheduler;
+    private EventServiceImpl eventService;
+    private TierRegistry tierRegistry;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of(Fixtures.TIERS));
+        BatchBufferPool bufferPool = new BatchBufferPool(appConfig.getBatch().getBufferCapacityBytes(),
+            appConfig.getBatch().getMaxPooledBuffers(), appConfig.getBatch().isOffHeapBuffers());
+        BatchCodecs batchCodecs = new BatchCodecs(appConfig, registry);
+        BatchEncoder batchEncoder = new BatchEncoder(batchCodecs, bufferPool, appConfig, registry);
+        appConfig.getUpload().getFallback().setEnabled(false);
+        BatchFormats batchFormats = new BatchFormats(appConfig);
+        BatchMetrics batchMetrics = new BatchMetrics(appConfig, registry);
+        resilientStorage = new ResilientStorage((batch, key) -> { }, batchFormats, batchCodecs, batchMetrics,
+            appConfig, registry);
+        batchUploader = new BatchUploader(resilientStorage, batchEncoder, bufferPool, batchMetrics, appConfig, registry);
+        EventSpool eventSpool = new EventSpool(appConfig, batchUploader, batchFormats, bufferPool, registry);
+        flushScheduler = new TierFlushScheduler(batchUploader, appConfig, registry);
+        tierRegistry = new TierRegistry(appConfig);
+        eventService = new EventServiceImpl(batchUploader, bufferPool, batchCodecs, batchFormats, eventSpool,
+            flushScheduler, tierRegistry, Fixtures.OBJECT_MAPPER, registry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        flushScheduler.shutdown();
+        batchUploader.shutdown();
+        resilientStorage.shutdown();
+    }
+
+    /**
+     * Event and tier of one benchmark thread; threads are assigned to tiers round robin.
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        CustomerTier tier;
+        Event event;
+        EncodedEvent encodedEvent;
+
+        @Setup(Level.Trial)
+        public void setUp(ProcessEventBenchmark benchmark, ThreadParams threadParams) {
+            tier = benchmark.tierRegistry.resolve(Fixtures.TIERS[threadParams.getThreadIndex() % benchmark.tiers]);
+            event = Fixtures.event(benchmark.bodyBytes);
+            encodedEvent = new EventPayloadParser(Fixtures.OBJECT_MAPPER).parse(Fixtures.payload(benchmark.bodyBytes));
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void processEvent_1Thread(Producer producer) {
+        eventService.processEvent(producer.event, producer.tier);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void processEvent_8Threads(Producer producer) {
+        eventService.processEvent(producer.event, producer.tier);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void processEvent_64Threads(Producer producer) {
+        eventService.processEvent(producer.event, producer.tier);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void processEncodedEvent_64Threads(Producer producer) {
+        eventService.processEncodedEvent(producer.encodedEvent, producer.tier);
+    }
+}
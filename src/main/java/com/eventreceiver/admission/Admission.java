@@ -0,0 +1,28 @@
+package com.eventreceiver.admission;
+
+/**
+ * The outcome of an admission check against the memory budget or a tier's ingest quota.
+ */
+public enum Admission {
+    /** The request may be processed. */
+    ADMITTED("admitted"),
+    /** The budget is past the share of the request's tier; higher-priority tiers are still admitted. */
+    THROTTLED("memory budget exceeds tier share"),
+    /** The whole budget is in use; no tier is admitted. */
+    OVERLOADED("memory budget exhausted"),
+    /** The request's tier has used up its ingest quota; other tiers are still admitted. */
+    RATE_LIMITED("ingest quota exceeded");
+
+    private final String description;
+
+    Admission(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return Why a request was, or was not, admitted, for log messages
+     */
+    public String getDescription() {
+        return description;
+    }
+}
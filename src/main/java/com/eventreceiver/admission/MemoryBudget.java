@@ -0,0 +1,110 @@
+package com.eventreceiver.admission;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Global budget for the memory held by buffered events: the batch buffers of open batches and of
+ * batches waiting for or in upload. When S3 slows down, sealed batches keep their buffers longer
+ * and usage grows; past the budget new requests are turned away instead of letting the JVM run
+ * out of memory.
+ * <p>
+ * Tiers are shed in priority order: each tier may only be admitted while usage is below its share
+ * of the budget (app.admission.tier-shares, 1.0 by default), so e.g. free traffic is throttled
+ * well before enterprise traffic. The check is a cheap read of the pool's counters against limits
+ * and rejection counters precomputed per tier; concurrent requests can overshoot the budget by at
+ * most one request each, so it is a soft limit.
+ */
+@Slf4j
+@Component
+public class MemoryBudget {
+    private static final double DEFAULT_TIER_SHARE = 1.0;
+
+    private final BatchBufferPool bufferPool;
+    private final AppConfig.AdmissionConfig admissionConfig;
+    private final long[] tierLimits;
+    private final Counter[] throttledCounters;
+    private final Counter[] overloadedCounters;
+
+    public MemoryBudget(BatchBufferPool bufferPool, TierRegistry tierRegistry, AppConfig appConfig,
+                        MeterRegistry registry) {
+        this.bufferPool = bufferPool;
+        this.admissionConfig = appConfig.getAdmission();
+        this.tierLimits = new long[tierRegistry.size()];
+        this.throttledCounters = new Counter[tierRegistry.size()];
+        this.overloadedCounters = new Counter[tierRegistry.size()];
+        for (CustomerTier tier : tierRegistry.getTiers()) {
+            double share = admissionConfig.getTierShares().getOrDefault(tier.getName(), DEFAULT_TIER_SHARE);
+            tierLimits[tier.getIndex()] = (long) (admissionConfig.getMaxBufferedBytes() * Math.min(1.0, share));
+            throttledCounters[tier.getIndex()] = rejectionCounter(tier, Admission.THROTTLED, registry);
+            overloadedCounters[tier.getIndex()] = rejectionCounter(tier, Admission.OVERLOADED, registry);
+        }
+        Gauge.builder("event.memory.budget", admissionConfig, AppConfig.AdmissionConfig::getMaxBufferedBytes)
+            .description("Budget for bytes held by open batches and pending uploads")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("event.memory.budget.used", bufferPool, BatchBufferPool::getUsedBytes)
+            .description("Bytes held by open batches and pending uploads")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("event.memory.budget.utilization", this, MemoryBudget::getUtilization)
+            .description("Fraction of the memory budget in use")
+            .register(registry);
+    }
+
+    /**
+     * Checks whether a request of the given tier may be processed.
+     * 
+     * @param tier The customer tier of the request
+     * @return The admission decision; rejections are counted per tier
+     */
+    public Admission admit(CustomerTier tier) {
+        long used = bufferPool.getUsedBytes();
+        if (used >= admissionConfig.getMaxBufferedBytes()) {
+            overloadedCounters[tier.getIndex()].increment();
+            return Admission.OVERLOADED;
+        }
+        if (used >= tierLimits[tier.getIndex()]) {
+            throttledCounters[tier.getIndex()].increment();
+            return Admission.THROTTLED;
+        }
+        return Admission.ADMITTED;
+    }
+
+    /**
+     * Checks whether a request of the given tier would be admitted, without counting a rejection.
+     * Used to hold back requests that were admitted already, e.g. while their body is read.
+     * 
+     * @param tier The customer tier of the request
+     * @return true if usage is below the tier's share of the budget
+     */
+    public boolean hasRoom(CustomerTier tier) {
+        return bufferPool.getUsedBytes() < tierLimits[tier.getIndex()];
+    }
+
+    /**
+     * @return The number of seconds clients should wait before retrying a rejected request
+     */
+    public int getRetryAfterSeconds() {
+        return admissionConfig.getRetryAfterSeconds();
+    }
+
+    public double getUtilization() {
+        return (double) bufferPool.getUsedBytes() / admissionConfig.getMaxBufferedBytes();
+    }
+
+    private static Counter rejectionCounter(CustomerTier tier, Admission admission, MeterRegistry registry) {
+        return Counter.builder("event.admission.rejected")
+            .description("Number of requests rejected by the memory budget or the tier's ingest quota")
+            .tag("tier", tier.getName())
+            .tag("reason", admission.name().toLowerCase())
+            .register(registry);
+    }
+}
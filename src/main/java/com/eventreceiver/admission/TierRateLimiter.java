@@ -0,0 +1,129 @@
+package com.eventreceiver.admission;
+
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-tier ingest quotas (app.admission.tier-rate-limits), so a flood of one tier is turned away
+ * at the door instead of taking the request threads, batch buffers and uploads of the others.
+ * Each limited tier has a token bucket of burst-events tokens, refilled at events-per-second;
+ * every accepted event takes a token, and a request whose events find too few tokens is rejected
+ * as a whole. Unlisted tiers are not limited and pass without touching any shared state.
+ * <p>
+ * The bucket is kept as a single timestamp, the time at which it will be full again (the
+ * generic cell rate algorithm), so taking tokens is one compare-and-set on an
+ * {@link AtomicLong}, without locks, and refilling needs no timer.
+ */
+@Slf4j
+@Component
+public class TierRateLimiter {
+    private final TokenBucket[] buckets;
+    private final Counter[] rejectedCounters;
+
+    public TierRateLimiter(TierRegistry tierRegistry, AppConfig appConfig, MeterRegistry registry) {
+        this.buckets = new TokenBucket[tierRegistry.size()];
+        this.rejectedCounters = new Counter[tierRegistry.size()];
+        for (CustomerTier tier : tierRegistry.getTiers()) {
+            AppConfig.RateLimitConfig limit = appConfig.getAdmission().getTierRateLimits().get(tier.getName());
+            if (limit != null) {
+                buckets[tier.getIndex()] = new TokenBucket(limit.getEventsPerSecond(), limit.getBurstEvents());
+                log.info("Limiting ingest of tier {} to {} events/s with bursts of {} events", tier,
+                    limit.getEventsPerSecond(), limit.getBurstEvents());
+            }
+            rejectedCounters[tier.getIndex()] = Counter.builder("event.admission.rejected")
+                .description("Number of requests rejected by the memory budget or the tier's ingest quota")
+                .tag("tier", tier.getName())
+                .tag("reason", Admission.RATE_LIMITED.name().toLowerCase())
+                .register(registry);
+        }
+    }
+
+    /**
+     * Takes tokens for the events of a request from its tier's bucket.
+     *
+     * @param tier The customer tier of the request
+     * @param events The number of events of the request
+     * @return {@link Admission#ADMITTED}, or {@link Admission#RATE_LIMITED} if the tier's bucket
+     *         holds too few tokens; rejections are counted per tier
+     */
+    public Admission admit(CustomerTier tier, int events) {
+        TokenBucket bucket = buckets[tier.getIndex()];
+        if (bucket == null || bucket.tryAcquire(events, System.nanoTime())) {
+            return Admission.ADMITTED;
+        }
+        rejectedCounters[tier.getIndex()].increment();
+        return Admission.RATE_LIMITED;
+    }
+
+    /**
+     * Tells a rate-limited client how long to wait, as its tier's bucket knows when it will next
+     * hold the tokens for the request.
+     *
+     * @param tier The customer tier of the request
+     * @param events The number of events of the request
+     * @return Whole seconds until the tier's bucket holds tokens for the events, at least 1
+     */
+    public int retryAfterSeconds(CustomerTier tier, int events) {
+        TokenBucket bucket = buckets[tier.getIndex()];
+        long waitNanos = bucket == null ? 0 : bucket.nanosUntilAvailable(events, System.nanoTime());
+        long nanosPerSecond = TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (waitNanos + nanosPerSecond - 1) / nanosPerSecond));
+    }
+
+    /**
+     * A token bucket stored as the time at which it is full again. The tokens in use are that
+     * time's distance from now, divided by the refill interval of one token.
+     */
+    static final class TokenBucket {
+        private final long nanosPerToken;
+        private final long capacityNanos;
+        private final AtomicLong fullAtNanos;
+
+        TokenBucket(double tokensPerSecond, long capacity) {
+            this.nanosPerToken = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+            this.capacityNanos = Math.max(1, capacity) * nanosPerToken;
+            this.fullAtNanos = new AtomicLong(System.nanoTime() - capacityNanos);
+        }
+
+        /**
+         * Takes tokens if the bucket holds enough of them. A full bucket admits a request of
+         * any size, even one larger than the bucket, and stays empty until its cost is refilled.
+         *
+         * @param tokens The tokens to take
+         * @param nowNanos The current {@link System#nanoTime()}
+         * @return true if the tokens were taken
+         */
+        boolean tryAcquire(int tokens, long nowNanos) {
+            long cost = tokens * nanosPerToken;
+            while (true) {
+                long fullAt = fullAtNanos.get();
+                long inUse = Math.max(0, fullAt - nowNanos);
+                if (inUse > 0 && inUse + cost > capacityNanos) {
+                    return false;
+                }
+                if (fullAtNanos.compareAndSet(fullAt, nowNanos + inUse + cost)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @param tokens The tokens to take
+         * @param nowNanos The current {@link System#nanoTime()}
+         * @return The nanoseconds until {@link #tryAcquire} would take the tokens, 0 if it would now;
+         *         a request larger than the bucket waits until the bucket is full
+         */
+        long nanosUntilAvailable(int tokens, long nowNanos) {
+            long cost = Math.min((long) tokens * nanosPerToken, capacityNanos);
+            return Math.max(0, fullAtNanos.get() - nowNanos + cost - capacityNanos);
+        }
+    }
+}
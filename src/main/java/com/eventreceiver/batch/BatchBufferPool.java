@@ -0,0 +1,134 @@
+package com.eventreceiver.batch;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Arena of fixed-capacity buffers that tier batches serialize their events into.
+ * Buffers are returned once the batch they backed has been uploaded, so in steady state
+ * batching allocates no new buffers. By default the buffers are allocated off-heap, which keeps
+ * batch contents out of the Java heap entirely: heap usage no longer grows with ingest volume
+ * and large batches never get promoted to the old generation.
+ * <p>
+ * Content that does not fit a pooled buffer, such as a single oversize event, lives in heap
+ * buffers allocated through the pool instead. They are not reused, but their bytes count as used
+ * until they are handed back, so the memory budget sees all memory held by batches.
+ */
+public class BatchBufferPool implements MeterBinder {
+    private final int bufferCapacity;
+    private final boolean offHeap;
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+    private final AtomicInteger buffersInUse = new AtomicInteger();
+    private final AtomicLong unpooledBytesInUse = new AtomicLong();
+
+    /**
+     * @param bufferCapacity The capacity of every buffer, i.e. the maximum batch size
+     * @param maxPooledBuffers The maximum number of idle buffers kept for reuse
+     * @param offHeap Whether to allocate direct buffers outside the Java heap
+     */
+    public BatchBufferPool(int bufferCapacity, int maxPooledBuffers, boolean offHeap) {
+        this.bufferCapacity = bufferCapacity;
+        this.offHeap = offHeap;
+        this.freeBuffers = new ArrayBlockingQueue<>(Math.max(1, maxPooledBuffers));
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    /**
+     * @return The bytes of buffers currently backing open or uploading batches, pooled or not
+     */
+    public long getUsedBytes() {
+        return (long) buffersInUse.get() * bufferCapacity + unpooledBytesInUse.get();
+    }
+
+    /**
+     * @return An idle buffer from the pool, or a newly allocated one if the pool is empty
+     */
+    public ByteBuffer acquire() {
+        buffersInUse.incrementAndGet();
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        allocatedBuffers.incrementAndGet();
+        return offHeap ? ByteBuffer.allocateDirect(bufferCapacity) : ByteBuffer.allocate(bufferCapacity);
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers beyond maxPooledBuffers are dropped and their memory is
+     * reclaimed by the garbage collector.
+     *
+     * @param buffer A buffer previously obtained from {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        buffersInUse.decrementAndGet();
+        if (!freeBuffers.offer(buffer)) {
+            allocatedBuffers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Allocates a heap buffer for content that does not fit a pooled buffer.
+     *
+     * @param capacity The capacity of the buffer
+     * @return A buffer that counts as used until it is handed back with {@link #releaseUnpooled}
+     */
+    public ByteBuffer allocateUnpooled(int capacity) {
+        return wrapUnpooled(new byte[capacity]);
+    }
+
+    /**
+     * Accounts for content that was produced on the heap because it outgrew a pooled buffer.
+     *
+     * @param content The content, which must not be shared
+     * @return A buffer wrapping the content that counts as used until it is handed back with
+     *         {@link #releaseUnpooled}
+     */
+    public ByteBuffer wrapUnpooled(byte[] content) {
+        unpooledBytesInUse.addAndGet(content.length);
+        return ByteBuffer.wrap(content);
+    }
+
+    /**
+     * Stops counting a buffer from {@link #allocateUnpooled} or {@link #wrapUnpooled}; its memory
+     * is reclaimed by the garbage collector.
+     *
+     * @param buffer The buffer, exactly once
+     */
+    public void releaseUnpooled(ByteBuffer buffer) {
+        unpooledBytesInUse.addAndGet(-buffer.capacity());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String memory = offHeap ? "off-heap" : "heap";
+        Gauge.builder("event.batch.arena.capacity", allocatedBuffers, n -> (double) n.get() * bufferCapacity)
+            .description("Bytes allocated for batch buffers, in use or pooled")
+            .tag("memory", memory)
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("event.batch.arena.used", buffersInUse, n -> (double) n.get() * bufferCapacity)
+            .description("Bytes of batch buffers backing open or uploading batches")
+            .tag("memory", memory)
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("event.batch.unpooled.used", unpooledBytesInUse, AtomicLong::get)
+            .description("Bytes of heap buffers backing batches too large for a pooled buffer")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("event.batch.arena.buffers.pooled", freeBuffers, BlockingQueue::size)
+            .description("Idle batch buffers available for reuse")
+            .tag("memory", memory)
+            .register(registry);
+    }
+}
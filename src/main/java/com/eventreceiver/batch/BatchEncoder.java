@@ -0,0 +1,175 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.codec.BatchCodec;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.codec.IdentityCodec;
+import com.eventreceiver.batch.codec.TierCompression;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.RecordFraming;
+import com.eventreceiver.config.AppConfig;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Encoding stage between batching and storage. Sealed batches are first split by event-time
+ * partition with an {@link EventTimePartitioner}. Batches of transcoded formats are then
+ * converted into their stored format, then compressed with the codec of their tier into a
+ * second pooled buffer, and the framed buffer is released right away.
+ * Batches that do not shrink are stored uncompressed. When app.batch.limit-compressed-size is
+ * set and a compressed batch still exceeds the size limit, the batch is split in half at an
+ * event boundary and each half is encoded on its own.
+ */
+@Slf4j
+@Component
+public class BatchEncoder {
+    private final BatchCodecs batchCodecs;
+    private final BatchBufferPool bufferPool;
+    private final long maxBatchSizeBytes;
+    private final EventTimePartitioner partitioner;
+    private final Counter splitCounter;
+
+    public BatchEncoder(BatchCodecs batchCodecs, BatchBufferPool bufferPool, AppConfig appConfig,
+                        MeterRegistry registry) {
+        this.batchCodecs = batchCodecs;
+        this.bufferPool = bufferPool;
+        this.maxBatchSizeBytes = appConfig.getBatch().getMaxBatchSizeBytes();
+        this.partitioner = new EventTimePartitioner(bufferPool, registry);
+        this.splitCounter = Counter.builder("event.batches.split")
+            .description("Number of compressed batches split because they exceeded the size limit")
+            .register(registry);
+    }
+
+    /**
+     * Encodes a sealed batch into the format and codec of its tier. Ownership of the batch passes
+     * to this method; every batch handed to the consumer must be released by it.
+     * 
+     * @param batch The sealed batch
+     * @param encodedBatchConsumer Receives the encoded batches, usually one, each of which holds
+     *     the events of a single event-time partition
+     */
+    public void encode(SealedBatch batch, Consumer<SealedBatch> encodedBatchConsumer) {
+        partitioner.partition(batch, partition -> encodePartition(partition, encodedBatchConsumer));
+    }
+
+    private void encodePartition(SealedBatch batch, Consumer<SealedBatch> encodedBatchConsumer) {
+        TierCompression compression = batchCodecs.forTier(batch.getTier());
+        BatchCodec codec = compression.getCodec();
+        if (codec == IdentityCodec.INSTANCE && !batch.getFormat().isTranscoded()) {
+            encodedBatchConsumer.accept(batch);
+            return;
+        }
+
+        SealedBatch stored = batch.getFormat().isTranscoded() ? transcode(batch) : batch;
+        SealedBatch encoded = stored;
+        if (codec != IdentityCodec.INSTANCE) {
+            ByteBuffer target = bufferPool.acquire();
+            int encodedBytes = codec.encode(stored.getContent(), target);
+            if (encodedBytes >= 0 && encodedBytes < stored.getSizeBytes()) {
+                // the raw batch limit applies to framed bytes, so the ratio is taken against them
+                compression.recordCompression(batch.getSizeBytes(), encodedBytes);
+                encoded = stored.withEncodedContent(codec, target, encodedBytes, bufferPool::release);
+            } else {
+                bufferPool.release(target);
+            }
+        }
+        if (encoded != stored && stored != batch) {
+            stored.release();
+        }
+
+        if (compression.isLimitCompressedSize() && encoded.getSizeBytes() > maxBatchSizeBytes
+                && batch.getEventCount() > 1) {
+            if (encoded != batch) {
+                encoded.release();
+            }
+            splitCounter.increment();
+            log.warn("Compressed batch of {} events for tier {} exceeds {} bytes, splitting it",
+                batch.getEventCount(), batch.getTier(), maxBatchSizeBytes);
+            for (SealedBatch half : split(batch)) {
+                encodePartition(half, encodedBatchConsumer);
+            }
+            return;
+        }
+        if (encoded != batch) {
+            batch.release();
+        }
+        encodedBatchConsumer.accept(encoded);
+    }
+
+    /**
+     * Converts a framed batch into its stored format. The output goes into a pooled buffer and
+     * only falls back to the heap if it outgrows one, in which case the pool still accounts for
+     * it. The framed batch is kept.
+     */
+    private SealedBatch transcode(SealedBatch batch) {
+        BatchFormat format = batch.getFormat();
+        ByteBuffer target = bufferPool.acquire();
+        try {
+            format.transcode(batch.getContent(), new ByteBufferBackedOutputStream(target));
+            return batch.withEncodedContent(IdentityCodec.INSTANCE, target, target.position(), bufferPool::release);
+        } catch (RuntimeException e) {
+            bufferPool.release(target);
+            if (!isOverflow(e)) {
+                throw e;
+            }
+        } catch (IOException e) {
+            bufferPool.release(target);
+            throw new UncheckedIOException("Failed to transcode batch to " + format.getName(), e);
+        }
+
+        ByteArrayOutputStream heapTarget = new ByteArrayOutputStream(bufferPool.getBufferCapacity());
+        try {
+            format.transcode(batch.getContent(), heapTarget);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to transcode batch to " + format.getName(), e);
+        }
+        return batch.withEncodedContent(IdentityCodec.INSTANCE, bufferPool.wrapUnpooled(heapTarget.toByteArray()),
+            heapTarget.size(), bufferPool::releaseUnpooled);
+    }
+
+    private static boolean isOverflow(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof BufferOverflowException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits a framed batch into two batches of roughly half the events each and releases it.
+     */
+    private List<SealedBatch> split(SealedBatch batch) {
+        RecordFraming framing = batch.getFormat().getFraming();
+        ByteBuffer content = batch.getContent();
+        int size = content.remaining();
+        int middle = batch.getEventCount() / 2;
+        int splitOffset = RecordFraming.findEventOffset(content, middle);
+
+        // the first half ends with the separator after the event before the middle one
+        ByteBuffer first = bufferPool.acquire();
+        first.put(0, content, 0, splitOffset);
+        framing.seal(first, splitOffset);
+        ByteBuffer second = bufferPool.acquire();
+        framing.writeHeader(second);
+        second.put(framing.getHeaderBytes(), content, splitOffset, size - splitOffset);
+        batch.release();
+
+        return List.of(
+            new SealedBatch(batch.getTier(), batch.getFormat(), middle, splitOffset, first, bufferPool::release,
+                batch.getHolds()).inheritFlushInfo(batch),
+            new SealedBatch(batch.getTier(), batch.getFormat(), batch.getEventCount() - middle,
+                framing.getHeaderBytes() + size - splitOffset, second, bufferPool::release, batch.getHolds().split())
+                .inheritFlushInfo(batch));
+    }
+}
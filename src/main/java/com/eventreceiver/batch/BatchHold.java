@@ -0,0 +1,15 @@
+package com.eventreceiver.batch;
+
+/**
+ * A resource that has to be kept until the events it covers are stored, such as the spool
+ * segment holding their durable copy. Batches collect the holds of their events and release
+ * them once the batch has been stored successfully.
+ */
+public interface BatchHold {
+    /**
+     * Called once events covered by this hold have been stored.
+     * 
+     * @param events The number of stored events
+     */
+    void release(long events);
+}
@@ -0,0 +1,44 @@
+package com.eventreceiver.batch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The holds of the events in one batch, with the number of events per hold. A batch that is
+ * split before storage shares its holds with all of its parts, and they are only released once
+ * every part has been stored.
+ */
+public class BatchHolds {
+    private final Map<BatchHold, LongAdder> eventCounts = new ConcurrentHashMap<>(4);
+    private final AtomicInteger pendingParts = new AtomicInteger(1);
+
+    /**
+     * Records that events covered by a hold were added to the batch.
+     */
+    void add(BatchHold hold, int events) {
+        LongAdder count = eventCounts.get(hold);
+        if (count == null) {
+            count = eventCounts.computeIfAbsent(hold, h -> new LongAdder());
+        }
+        count.add(events);
+    }
+
+    /**
+     * Registers one more part of a batch that is being split.
+     */
+    BatchHolds split() {
+        pendingParts.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Marks one part of the batch as stored and releases the holds once all parts are.
+     */
+    void complete() {
+        if (pendingParts.decrementAndGet() == 0) {
+            eventCounts.forEach((hold, count) -> hold.release(count.sum()));
+        }
+    }
+}
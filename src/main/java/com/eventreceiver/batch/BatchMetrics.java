@@ -0,0 +1,117 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-batch meters, tagged by customer tier and {@link FlushReason}. The meters of the allowed
+ * tiers are registered at startup and those of any other tier on its first batch, so recording
+ * a batch only looks up its meters and never builds a meter id.
+ * Timers and summaries publish histogram buckets rather than percentiles, so they can be
+ * aggregated across tiers, reasons and instances.
+ */
+@Component
+public class BatchMetrics {
+    private final MeterRegistry registry;
+    private final Map<String, Map<FlushReason, BatchMeters>> tierMeters = new ConcurrentHashMap<>();
+
+    public BatchMetrics(AppConfig appConfig, MeterRegistry registry) {
+        this.registry = registry;
+        List<String> allowedTiers = appConfig.getAllowedCustomerTiers();
+        if (allowedTiers != null) {
+            allowedTiers.forEach(this::forTier);
+        }
+        if (appConfig.getBatch().getPacking().isEnabled()) {
+            forTier(PackedObject.TIER);
+        }
+    }
+
+    /**
+     * @param batch A sealed batch
+     * @return The meters of the batch's tier and flush reason
+     */
+    public BatchMeters forBatch(SealedBatch batch) {
+        return forTier(batch.getTier()).get(batch.getFlushReason());
+    }
+
+    private Map<FlushReason, BatchMeters> forTier(String tier) {
+        return tierMeters.computeIfAbsent(tier, t -> {
+            Map<FlushReason, BatchMeters> meters = new EnumMap<>(FlushReason.class);
+            for (FlushReason reason : FlushReason.values()) {
+                meters.put(reason, new BatchMeters(t, reason, registry));
+            }
+            return meters;
+        });
+    }
+
+    /**
+     * Meters of the batches of one tier sealed for one reason.
+     */
+    @Getter
+    public static final class BatchMeters {
+        private final Counter flushed;
+        private final DistributionSummary storedBytes;
+        private final DistributionSummary storedEvents;
+        private final Timer durableLatency;
+        private final Timer putLatency;
+        private final Counter putRetries;
+
+        BatchMeters(String tier, FlushReason reason, MeterRegistry registry) {
+            this.flushed = Counter.builder("event.batches.flushed")
+                .description("Batches handed over for upload, by the reason they were sealed")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .register(registry);
+            this.storedBytes = DistributionSummary.builder("event.batch.stored.bytes")
+                .description("Size of stored batch objects, after encoding")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1024.0)
+                .maximumExpectedValue(64.0 * 1024 * 1024)
+                .register(registry);
+            this.storedEvents = DistributionSummary.builder("event.batch.stored.events")
+                .description("Events per stored batch object")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .baseUnit("events")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(100_000.0)
+                .register(registry);
+            this.durableLatency = Timer.builder("event.batch.durable.latency")
+                .description("Time from the oldest event of a batch entering it to the batch being stored")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(registry);
+            this.putLatency = Timer.builder("event.s3.put.latency")
+                .description("Time taken by each attempt to store a batch object in S3")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+            this.putRetries = Counter.builder("event.s3.put.retries")
+                .description("Attempts to store a batch object in S3 that retried a failed one")
+                .tag("tier", tier)
+                .tag("reason", reason.tag())
+                .register(registry);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.sink.StorageSink;
+import com.eventreceiver.sink.StoreOutcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Uploads sealed batches to the storage sink on a dedicated, bounded pool of worker threads so that
+ * ingest threads never wait for a PutObject.
+ * Queued batches are handed to the workers in weighted-fair order across tiers
+ * (app.upload.tier-weights), so one tier's backlog does not hold up the uploads of the others.
+ * When every worker is busy and the queue, or the tier's share of it, is full, a request thread
+ * that sealed a batch uploads it itself, which slows that tier's producers down instead of
+ * letting sealed batches pile up in memory. The flush scheduler never does: it holds back the
+ * deadline flushes of a backlogged tier instead, so the other tiers' flushes are not delayed.
+ * A worker makes the first attempt of a batch only; retries, hedged requests and the local
+ * fallback are left to {@link ResilientStorage}, so a failing batch does not hold a worker.
+ * With app.batch.write-manifests, a {@link FlushManifest} indexing the objects of each sealed
+ * batch is stored once all of them have been. With app.batch.packing, the small batches of a
+ * deadline flush are stored together as one {@link PackedObject}, with a single manifest listing
+ * every tier's section of it.
+ */
+@Slf4j
+@Component
+public class BatchUploader {
+    private final ResilientStorage resilientStorage;
+    private final BatchEncoder batchEncoder;
+    private final BatchBufferPool bufferPool;
+    private final WeightedFairQueue queue;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final Counter batchCounter;
+    private final Counter errorCounter;
+    private final BatchMetrics batchMetrics;
+    private final boolean writeManifests;
+    private final Counter manifestCounter;
+    private final List<ObjLongConsumer<SealedBatch>> storeListeners = new CopyOnWriteArrayList<>();
+
+    public BatchUploader(ResilientStorage resilientStorage, BatchEncoder batchEncoder, BatchBufferPool bufferPool,
+                         BatchMetrics batchMetrics, AppConfig appConfig, MeterRegistry registry) {
+        this.resilientStorage = resilientStorage;
+        this.batchEncoder = batchEncoder;
+        this.bufferPool = bufferPool;
+        this.batchMetrics = batchMetrics;
+        this.writeManifests = appConfig.getBatch().isWriteManifests();
+        if (appConfig.getBatch().getPacking().isEnabled() && !writeManifests) {
+            // packed sections are outside the tier=/dt=/hour= layout and only found through the manifests
+            throw new IllegalStateException("app.batch.packing requires app.batch.write-manifests");
+        }
+        AppConfig.UploadConfig uploadConfig = appConfig.getUpload();
+        List<String> tiers = new ArrayList<>();
+        if (appConfig.getAllowedCustomerTiers() != null) {
+            tiers.addAll(appConfig.getAllowedCustomerTiers());
+        }
+        if (appConfig.getBatch().getPacking().isEnabled()) {
+            tiers.add(PackedObject.TIER);
+        }
+        this.queue = new WeightedFairQueue(uploadConfig.getQueueCapacity(),
+            appConfig.getBatch().getMaxBatchSizeBytes(), uploadConfig.getTierWeights(),
+            uploadConfig.getTierQueueCapacities(), tiers, registry);
+        this.executor = new ThreadPoolExecutor(
+            uploadConfig.getConcurrency(),
+            uploadConfig.getConcurrency(),
+            0L, TimeUnit.MILLISECONDS,
+            queue,
+            new CustomizableThreadFactory("batch-uploader-"),
+            this::uploadRejected
+        );
+
+        this.batchCounter = Counter.builder("event.batches.total")
+            .description("Total number of batches processed")
+            .register(registry);
+        this.errorCounter = Counter.builder("event.errors.total")
+            .description("Total number of processing errors")
+            .register(registry);
+        this.manifestCounter = Counter.builder("event.manifests.stored")
+            .description("Flush manifests stored, or diverted to the local fallback")
+            .register(registry);
+
+        Gauge.builder("event.upload.concurrency", executor, ThreadPoolExecutor::getMaximumPoolSize)
+            .description("Configured number of concurrent batch uploads")
+            .register(registry);
+        Gauge.builder("event.upload.active", executor, ThreadPoolExecutor::getActiveCount)
+            .description("Number of batch uploads currently running")
+            .register(registry);
+        Gauge.builder("event.upload.queue.depth", executor, e -> e.getQueue().size())
+            .description("Number of sealed batches waiting for an upload worker")
+            .register(registry);
+        Gauge.builder("event.upload.inflight.bytes", inFlightBytes, AtomicLong::get)
+            .description("Serialized bytes of batches queued or being uploaded")
+            .baseUnit("bytes")
+            .register(registry);
+        log.info("Initialized batch uploader with concurrency: {}, queue capacity: {}, tier weights: {}",
+            uploadConfig.getConcurrency(), uploadConfig.getQueueCapacity(), uploadConfig.getTierWeights());
+    }
+
+    /**
+     * Hands a sealed batch over to the upload workers. If its tier's share of the queue is full,
+     * the calling thread uploads the batch itself.
+     * 
+     * @param batch The sealed batch
+     */
+    public void submit(SealedBatch batch) {
+        execute(batch, true);
+    }
+
+    /**
+     * Hands a sealed batch over to the upload workers without ever uploading it on the calling
+     * thread: the batch is queued even if its tier's share of the queue is full. For the flush
+     * scheduler, whose single thread serves every tier and must not wait for one tier's upload;
+     * it checks {@link #isBacklogged(String)} before sealing a batch, so the queue is overrun by
+     * at most the batches that fill it between the check and the flush.
+     *
+     * @param batch The sealed batch
+     */
+    public void enqueue(SealedBatch batch) {
+        execute(batch, false);
+    }
+
+    /**
+     * @param tier A customer tier
+     * @return true if the tier's share of the upload queue, or the whole queue, is full
+     */
+    public boolean isBacklogged(String tier) {
+        return !queue.hasRoom(tier);
+    }
+
+    private void execute(SealedBatch batch, boolean bounded) {
+        batchMetrics.forBatch(batch).getFlushed().increment();
+        inFlightBytes.addAndGet(batch.getSizeBytes());
+        executor.execute(new WeightedFairQueue.Task(batch.getTier(), batch.getSizeBytes(), bounded,
+            () -> upload(batch)));
+    }
+
+    /**
+     * Runs an upload the executor turned away on the calling thread. While the executor is running
+     * that happens because the tier's share of the queue is full. After shutdown it happens to the
+     * batches of the final flushes, which are uploaded here too rather than dropped: they are then
+     * stored, diverted or kept in the spool like any other, and their buffers are released.
+     */
+    private void uploadRejected(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            log.warn("Batch uploader is shut down, uploading a batch on the submitting thread");
+        }
+        task.run();
+    }
+
+    /**
+     * Hands the sealed batches of a deadline flush over to the upload workers, to be stored in a
+     * single packed object. A single batch is stored on its own. Like {@link #enqueue}, this never
+     * uploads on the calling thread.
+     *
+     * @param batches The sealed batches, of different tiers
+     */
+    public void submitPacked(List<SealedBatch> batches) {
+        if (batches.size() <= 1) {
+            batches.forEach(this::enqueue);
+            return;
+        }
+        long sizeBytes = 0;
+        for (SealedBatch batch : batches) {
+            batchMetrics.forBatch(batch).getFlushed().increment();
+            inFlightBytes.addAndGet(batch.getSizeBytes());
+            sizeBytes += batch.getSizeBytes();
+        }
+        executor.execute(new WeightedFairQueue.Task(PackedObject.TIER, sizeBytes, false,
+            () -> uploadPacked(batches)));
+    }
+
+    /**
+     * Registers a listener that is told about every batch that has been stored, along with the
+     * nanoseconds between the batch being sealed and being stored.
+     *
+     * @param listener The listener, called on the upload worker
+     */
+    public void addStoreListener(ObjLongConsumer<SealedBatch> listener) {
+        storeListeners.add(listener);
+    }
+
+    /**
+     * Encodes a batch with the codec of its tier and stores the result. From here on the encoded
+     * batches, rather than the sealed one, count as in flight until they are stored.
+     */
+    private void upload(SealedBatch batch) {
+        inFlightBytes.addAndGet(-batch.getSizeBytes());
+        FlushManifest manifest = writeManifests
+            ? new FlushManifest(batch, tierManifest -> storeManifest(tierManifest, StorageSink.manifestKey(tierManifest.getTier())))
+            : null;
+        try {
+            batchEncoder.encode(batch, encoded -> store(encoded, manifest));
+        } catch (Exception e) {
+            errorCounter.increment();
+            log.error("Error encoding batch for tier {}: {}", batch.getTier(), e.getMessage());
+            batch.release();
+        } finally {
+            if (manifest != null) {
+                manifest.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes every batch with the codec of its tier and stores the results as the sections of
+     * one packed object. Each section is then completed and measured like a batch stored on its
+     * own. A single manifest, stored below the pack directory, records every section with its
+     * tier and byte range, so the pack costs two PUTs however many tiers it holds.
+     */
+    private void uploadPacked(List<SealedBatch> batches) {
+        List<SealedBatch> sections = new ArrayList<>(batches.size());
+        PackedObject pack = null;
+        try {
+            for (SealedBatch batch : batches) {
+                inFlightBytes.addAndGet(-batch.getSizeBytes());
+                try {
+                    batchEncoder.encode(batch, encoded -> {
+                        inFlightBytes.addAndGet(encoded.getSizeBytes());
+                        sections.add(encoded);
+                    });
+                } catch (Exception e) {
+                    errorCounter.increment();
+                    log.error("Error encoding batch for tier {}: {}", batch.getTier(), e.getMessage());
+                    batch.release();
+                }
+            }
+            if (sections.isEmpty()) {
+                return;
+            }
+            pack = PackedObject.of(sections, bufferPool);
+            SealedBatch packed = pack.getBatch();
+            String key = StorageSink.packKey();
+            FlushManifest manifest = new FlushManifest(packed,
+                packManifest -> storeManifest(packManifest, StorageSink.packManifestKey()));
+            List<FlushManifest.Entry> entries = new ArrayList<>(sections.size());
+            for (int i = 0; i < sections.size(); i++) {
+                entries.add(manifest.add(sections.get(i), key, pack.getOffset(i)));
+                // the content has been copied into the pack; the holds are kept until it is stored
+                sections.get(i).release();
+            }
+            manifest.close();
+            log.debug("Packing {} batches into {}", sections.size(), key);
+            resilientStorage.store(packed, key, (stored, outcome) -> {
+                packed.release();
+                for (int i = 0; i < sections.size(); i++) {
+                    stored(sections.get(i), outcome);
+                    manifest.finished(entries.get(i), outcome != StoreOutcome.FAILED);
+                }
+            });
+        } catch (Exception e) {
+            errorCounter.increment();
+            log.error("Error packing {} batches: {}", batches.size(), e.getMessage());
+            sections.forEach(this::releaseUnstored);
+            if (pack != null) {
+                pack.getBatch().release();
+            }
+        }
+    }
+
+    private void releaseUnstored(SealedBatch batch) {
+        inFlightBytes.addAndGet(-batch.getSizeBytes());
+        batch.release();
+    }
+
+    private void store(SealedBatch batch, FlushManifest manifest) {
+        inFlightBytes.addAndGet(batch.getSizeBytes());
+        String key = StorageSink.objectKey(batch);
+        if (manifest == null) {
+            resilientStorage.store(batch, key, this::stored);
+            return;
+        }
+        FlushManifest.Entry entry = manifest.add(batch, key);
+        resilientStorage.store(batch, key, (stored, outcome) -> {
+            stored(stored, outcome);
+            manifest.finished(entry, outcome != StoreOutcome.FAILED);
+        });
+    }
+
+    /**
+     * Stores the manifest of a flushed batch whose objects have all finished storing. A manifest
+     * that cannot be stored is only logged, as the objects it lists are stored regardless.
+     */
+    private void storeManifest(FlushManifest manifest, String key) {
+        SealedBatch batch = manifest.toBatch();
+        resilientStorage.store(batch, key, (stored, outcome) -> {
+            if (outcome == StoreOutcome.FAILED) {
+                errorCounter.increment();
+                log.error("Failed to store the flush manifest of a batch for tier {}", manifest.getTier());
+            } else {
+                manifestCounter.increment();
+            }
+        });
+    }
+
+    /**
+     * Completes a batch that has been stored or diverted and hands its buffer back to the pool.
+     * Records a stored batch in the batch counter and the meters of its tier and flush reason,
+     * and logs the processing result. A diverted batch is on local disk, so its events leave
+     * the spool as well. The holds of a batch that could not be stored are kept, so its events
+     * stay in the spool and are replayed on the next start.
+     */
+    private void stored(SealedBatch batch, StoreOutcome outcome) {
+        try {
+            if (outcome == StoreOutcome.FAILED) {
+                errorCounter.increment();
+                return;
+            }
+            batch.complete();
+            if (outcome == StoreOutcome.DIVERTED) {
+                return;
+            }
+            batchCounter.increment();
+            long now = System.nanoTime();
+            BatchMetrics.BatchMeters meters = batchMetrics.forBatch(batch);
+            meters.getDurableLatency().record(now - batch.getOldestEventNanos(), TimeUnit.NANOSECONDS);
+            meters.getStoredBytes().record(batch.getSizeBytes());
+            meters.getStoredEvents().record(batch.getEventCount());
+            long sinceSealed = now - batch.getSealedNanos();
+            storeListeners.forEach(listener -> listener.accept(batch, sinceSealed));
+            log.debug("Processed batch of {} events for tier {}. Current batch count: {}", 
+                batch.getEventCount(), batch.getTier(), batchCounter.count());
+        } catch (Exception e) {
+            errorCounter.increment();
+            log.error("Error completing batch for tier {}: {}", batch.getTier(), e.getMessage());
+        } finally {
+            inFlightBytes.addAndGet(-batch.getSizeBytes());
+            batch.release();
+        }
+    }
+
+    /**
+     * Stops accepting new batches and waits for queued uploads to complete. Batches submitted
+     * afterwards are uploaded by their submitters. Forces shutdown if uploads don't complete within
+     * 30 seconds; the batches still queued then are not stored, and their events stay in the spool.
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down batch uploader");
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                abandonQueued();
+            }
+        } catch (InterruptedException e) {
+            abandonQueued();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void abandonQueued() {
+        int abandoned = executor.shutdownNow().size();
+        if (abandoned > 0) {
+            errorCounter.increment(abandoned);
+            log.error("Batch uploader did not finish in time, {} queued uploads were abandoned", abandoned);
+        }
+    }
+}
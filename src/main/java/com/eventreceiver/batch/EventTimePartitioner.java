@@ -0,0 +1,203 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.RecordFraming;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Splits sealed batches by event-time partition, the hour of the event timestamp in the zone the
+ * timestamps are written in, so every stored object covers a single {@code dt=/hour=} partition.
+ * A batch whose tracked event time range lies within one hour is passed on as it is, which is the
+ * case for nearly every batch. Only batches that straddle an hour, or whose events were appended
+ * without a parsed timestamp, such as replayed ones, have the timestamps of their events read
+ * again, and their events are copied into one pooled buffer per partition.
+ */
+@Slf4j
+public class EventTimePartitioner {
+    private static final ZoneId ZONE = Event.EVENT_TIMESTAMP_FORMAT.getZone();
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter
+        .ofPattern("'dt='yyyy-MM-dd'/hour='HH")
+        .withZone(ZONE);
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final BatchBufferPool bufferPool;
+    private final Counter splitCounter;
+
+    EventTimePartitioner(BatchBufferPool bufferPool, MeterRegistry registry) {
+        this.bufferPool = bufferPool;
+        this.splitCounter = Counter.builder("event.batches.partitioned")
+            .description("Number of sealed batches split because their events span several event-time partitions")
+            .register(registry);
+    }
+
+    /**
+     * @param eventTimeMillis An event timestamp in epoch milliseconds
+     * @return The partition path of the timestamp, e.g. dt=2024-03-20/hour=14
+     */
+    public static String partitionPath(long eventTimeMillis) {
+        return PARTITION_FORMAT.format(Instant.ofEpochMilli(eventTimeMillis));
+    }
+
+    /**
+     * @return The partition of an event timestamp, as hours since the epoch in local time
+     */
+    static long partitionOf(long eventTimeMillis) {
+        Instant instant = Instant.ofEpochMilli(eventTimeMillis);
+        long offsetMillis = ZONE.getRules().getOffset(instant).getTotalSeconds() * 1000L;
+        return Math.floorDiv(eventTimeMillis + offsetMillis, MILLIS_PER_HOUR);
+    }
+
+    /**
+     * Splits a framed batch into one batch per event-time partition. Ownership of the batch
+     * passes to this method; the batches handed to the consumer share its holds, and each of
+     * them knows the time range of its events.
+     *
+     * @param batch The sealed, framed batch
+     * @param partitionConsumer Receives the batch of every partition
+     */
+    void partition(SealedBatch batch, Consumer<SealedBatch> partitionConsumer) {
+        if (batch.getEventCount() == 0 || (batch.hasEventTimes()
+                && partitionOf(batch.getMinEventMillis()) == partitionOf(batch.getMaxEventMillis()))) {
+            partitionConsumer.accept(batch);
+            return;
+        }
+
+        Map<Long, Partition> partitions = readPartitions(batch);
+        if (partitions.size() <= 1) {
+            if (partitions.size() == 1) {
+                Partition partition = partitions.values().iterator().next();
+                batch.setEventTimeRange(partition.minEventMillis, partition.maxEventMillis);
+            }
+            partitionConsumer.accept(batch);
+            return;
+        }
+
+        splitCounter.increment();
+        log.debug("Splitting batch of {} events for tier {} into {} event-time partitions",
+            batch.getEventCount(), batch.getTier(), partitions.size());
+        RecordFraming framing = batch.getFormat().getFraming();
+        ByteBuffer content = batch.getContent();
+        List<SealedBatch> parts = new ArrayList<>(partitions.size());
+        for (Partition partition : partitions.values()) {
+            ByteBuffer target = bufferPool.acquire();
+            framing.writeHeader(target);
+            int position = framing.getHeaderBytes();
+            for (int i = 0; i < partition.eventCount; i++) {
+                int start = (int) (partition.events[i] >>> 32);
+                int length = (int) partition.events[i];
+                target.put(position, content, start, length);
+                position += length;
+                target.put(position++, framing.getSeparator());
+            }
+            framing.seal(target, position);
+            BatchHolds holds = parts.isEmpty() ? batch.getHolds() : batch.getHolds().split();
+            SealedBatch part = new SealedBatch(batch.getTier(), batch.getFormat(), partition.eventCount, position,
+                target, bufferPool::release, holds).inheritFlushInfo(batch);
+            part.setEventTimeRange(partition.minEventMillis, partition.maxEventMillis);
+            parts.add(part);
+        }
+        batch.release();
+        parts.forEach(partitionConsumer);
+    }
+
+    /**
+     * Reads the timestamp of every event of a framed batch and groups the events by partition,
+     * in the order their partitions first occur. An event whose timestamp cannot be read is
+     * filed under the time it is read at. A batch whose events are not all JSON objects is not
+     * partitioned, and no partitions are returned for it.
+     */
+    private Map<Long, Partition> readPartitions(SealedBatch batch) {
+        ByteBuffer content = batch.getContent();
+        Map<Long, Partition> partitions = new LinkedHashMap<>();
+        byte[] scratch = new byte[4096];
+        int depth = 0;
+        int eventStart = -1;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < content.limit(); i++) {
+            byte b = content.get(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                if (depth++ == 0) {
+                    eventStart = i;
+                }
+            } else if (b == '}' && --depth == 0) {
+                int length = i + 1 - eventStart;
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                content.get(eventStart, scratch, 0, length);
+                long eventTimeMillis = readEventTime(scratch, length);
+                partitions.computeIfAbsent(partitionOf(eventTimeMillis), p -> new Partition())
+                    .add(eventStart, length, eventTimeMillis);
+            }
+        }
+        int eventCount = partitions.values().stream().mapToInt(partition -> partition.eventCount).sum();
+        return eventCount == batch.getEventCount() ? partitions : Map.of();
+    }
+
+    private static long readEventTime(byte[] event, int length) {
+        try (JsonParser parser = JSON_FACTORY.createParser(event, 0, length)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (Event.EVENT_TIMESTAMP_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                        return Event.EVENT_TIMESTAMP_FORMAT.parse(parser.getText(), Instant::from).toEpochMilli();
+                    }
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException | DateTimeException e) {
+            log.warn("Failed to read the timestamp of a batched event: {}", e.getMessage());
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Events of one partition, each packed as its offset in the batch content and its length.
+     */
+    private static final class Partition {
+        long[] events = new long[16];
+        int eventCount;
+        long minEventMillis = Long.MAX_VALUE;
+        long maxEventMillis = Long.MIN_VALUE;
+
+        void add(int offset, int length, long eventTimeMillis) {
+            if (eventCount == events.length) {
+                events = Arrays.copyOf(events, eventCount * 2);
+            }
+            events[eventCount++] = ((long) offset << 32) | length;
+            minEventMillis = Math.min(minEventMillis, eventTimeMillis);
+            maxEventMillis = Math.max(maxEventMillis, eventTimeMillis);
+        }
+    }
+}
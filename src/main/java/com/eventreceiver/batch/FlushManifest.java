@@ -0,0 +1,230 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.ManifestFormat;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.Getter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Index of the objects stored for one sealed batch, which may be several after it was split by
+ * event-time partition or size. Every object is recorded with its key, event count, the range of
+ * its event timestamps and the byte range its events occupy, so readers can find the objects of a
+ * time range from the manifests alone, without listing or reading data objects.
+ * The manifest is complete once every object of the batch has finished storing; objects that
+ * could not be stored are left out, as their events stay in the spool and are flushed again.
+ * A packed object gets a single manifest of its own, whose entries are its sections, each with
+ * the tier it belongs to.
+ * The compactor writes manifests of the same shape for the objects it merges, with the keys of
+ * the objects a merged object replaces.
+ */
+public class FlushManifest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Getter
+    private final String tier;
+    private final FlushReason flushReason;
+    private final long oldestEventNanos;
+    private final long flushedAtMillis = System.currentTimeMillis();
+    private final List<Entry> entries = new ArrayList<>(1);
+    // one for the encoding of the batch, plus one per object still being stored
+    private final AtomicInteger pendingParts = new AtomicInteger(1);
+    private final Consumer<FlushManifest> onComplete;
+    private final String reason;
+    private final List<String> replacedKeys = new ArrayList<>(0);
+
+    /**
+     * @param batch The sealed batch, before it is encoded
+     * @param onComplete Receives the manifest once all of the batch's objects have finished
+     *     storing, if at least one of them was stored
+     */
+    public FlushManifest(SealedBatch batch, Consumer<FlushManifest> onComplete) {
+        this.tier = batch.getTier();
+        this.flushReason = batch.getFlushReason();
+        this.oldestEventNanos = batch.getOldestEventNanos();
+        this.onComplete = onComplete;
+        this.reason = flushReason.tag();
+    }
+
+    private FlushManifest(SealedBatch batch, String reason) {
+        this.tier = batch.getTier();
+        this.flushReason = batch.getFlushReason();
+        this.oldestEventNanos = batch.getOldestEventNanos();
+        this.onComplete = manifest -> { };
+        this.reason = reason;
+    }
+
+    /**
+     * Creates the manifest of an object that was merged from smaller objects of the same partition.
+     *
+     * @param merged The merged batch
+     * @param key The key the merged object is stored under
+     * @param replacedKeys The keys of the objects the merged object replaces
+     * @return A complete manifest listing the merged object
+     */
+    public static FlushManifest ofCompaction(SealedBatch merged, String key, List<String> replacedKeys) {
+        FlushManifest manifest = new FlushManifest(merged, "compaction");
+        manifest.replacedKeys.addAll(replacedKeys);
+        manifest.add(merged, key).stored = true;
+        return manifest;
+    }
+
+    /**
+     * Records an object of the batch before it is stored.
+     *
+     * @param batch The encoded batch of the object
+     * @param key The object key
+     * @return The entry, to be handed to {@link #finished} once the object has been stored or not
+     */
+    public Entry add(SealedBatch batch, String key) {
+        return add(new Entry(key, batch, 0, false));
+    }
+
+    /**
+     * Records a section of a packed object, along with the tier it belongs to.
+     *
+     * @param batch The encoded batch of the section
+     * @param key The key of the object holding the section
+     * @param offset The offset of the section in the object
+     * @return The entry, to be handed to {@link #finished} once the object has been stored or not
+     */
+    Entry add(SealedBatch batch, String key, long offset) {
+        return add(new Entry(key, batch, offset, true));
+    }
+
+    private Entry add(Entry entry) {
+        synchronized (entries) {
+            entries.add(entry);
+        }
+        pendingParts.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Records that storing an object has finished.
+     *
+     * @param entry The entry of the object
+     * @param stored true if the object was stored, or is on its way to the sink from the local fallback
+     */
+    public void finished(Entry entry, boolean stored) {
+        entry.stored = stored;
+        release();
+    }
+
+    /**
+     * Records that the batch has been encoded, so no further objects will be added.
+     */
+    public void close() {
+        release();
+    }
+
+    private void release() {
+        if (pendingParts.decrementAndGet() == 0 && entries.stream().anyMatch(entry -> entry.stored)) {
+            onComplete.accept(this);
+        }
+    }
+
+    /**
+     * @return The manifest as a JSON object in a batch of its own, with the flush information of the batch
+     */
+    public SealedBatch toBatch() {
+        byte[] json = toJson();
+        SealedBatch batch = new SealedBatch(tier, ManifestFormat.INSTANCE, 0, json.length, ByteBuffer.wrap(json),
+            b -> { });
+        batch.setFlushInfo(flushReason, oldestEventNanos);
+        return batch;
+    }
+
+    byte[] toJson() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("tier", tier);
+            json.writeStringField("flush_reason", reason);
+            json.writeStringField("flushed_at", formatTimestamp(flushedAtMillis));
+            json.writeArrayFieldStart("objects");
+            synchronized (entries) {
+                for (Entry entry : entries) {
+                    if (entry.stored) {
+                        entry.write(json);
+                    }
+                }
+            }
+            json.writeEndArray();
+            if (!replacedKeys.isEmpty()) {
+                json.writeArrayFieldStart("replaced_objects");
+                for (String key : replacedKeys) {
+                    json.writeString(key);
+                }
+                json.writeEndArray();
+            }
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write flush manifest", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static String formatTimestamp(long epochMillis) {
+        return Event.EVENT_TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * An object of the flushed batch. The offset and length are the byte range of the object
+     * that holds the entry's events, which is the whole object for a batch stored on its own and
+     * the batch's section for one packed with the batches of other tiers.
+     */
+    public static final class Entry {
+        private final String key;
+        // only written for sections, whose tier differs from the manifest's
+        private final String tier;
+        private final String format;
+        private final String codec;
+        private final int eventCount;
+        private final long minEventMillis;
+        private final long maxEventMillis;
+        private final long offset;
+        private final long length;
+        private volatile boolean stored;
+
+        private Entry(String key, SealedBatch batch, long offset, boolean section) {
+            this.key = key;
+            this.tier = section ? batch.getTier() : null;
+            this.format = batch.getFormat().getName();
+            this.codec = batch.getCodec().getName();
+            this.eventCount = batch.getEventCount();
+            this.minEventMillis = batch.getMinEventMillis();
+            this.maxEventMillis = batch.getMaxEventMillis();
+            this.offset = offset;
+            this.length = batch.getSizeBytes();
+        }
+
+        private void write(JsonGenerator json) throws IOException {
+            json.writeStartObject();
+            json.writeStringField("key", key);
+            if (tier != null) {
+                json.writeStringField("tier", tier);
+            }
+            json.writeStringField("format", format);
+            json.writeStringField("codec", codec);
+            json.writeNumberField("event_count", eventCount);
+            if (minEventMillis != TierBatch.UNKNOWN_EVENT_TIME) {
+                json.writeStringField("min_event_timestamp", formatTimestamp(minEventMillis));
+                json.writeStringField("max_event_timestamp", formatTimestamp(maxEventMillis));
+            }
+            json.writeNumberField("offset", offset);
+            json.writeNumberField("length", length);
+            json.writeEndObject();
+        }
+    }
+}
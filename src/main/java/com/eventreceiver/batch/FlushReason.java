@@ -0,0 +1,22 @@
+package com.eventreceiver.batch;
+
+/**
+ * Why a batch was sealed and handed over for upload.
+ */
+public enum FlushReason {
+    /** The batch reached its size limit, or held a single event too large to share a batch. */
+    SIZE,
+    /** The oldest event in the batch reached the flush delay of its tier. */
+    DEADLINE,
+    /** The service is stopping and flushes everything it buffers. */
+    SHUTDOWN,
+    /** The batch holds events replayed from the spool after a restart. */
+    REPLAY;
+
+    /**
+     * @return The value used to tag metrics
+     */
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,127 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.PackFormat;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A single object holding the encoded batches of several tiers, so the deadline flushes of quiet
+ * tiers cost one PUT between them instead of one each. The object starts with a one-line JSON
+ * header, followed by the sections in order:
+ * <pre>
+ * {"sections":[{"tier":"free","format":"ndjson","codec":"gzip","event_count":3,...,"offset":212,"length":96},...]}\n
+ * </pre>
+ * Offsets are counted from the start of the object, so a reader fetches a tier's section with a
+ * ranged GET, using either the header or the section's entry in the pack's flush manifest.
+ * Every section is a complete object of its tier's format and codec.
+ */
+final class PackedObject {
+    /** Tier of packed batches, under which their uploads are measured. */
+    static final String TIER = "_packed";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final SealedBatch batch;
+    private final long[] offsets;
+
+    private PackedObject(SealedBatch batch, long[] offsets) {
+        this.batch = batch;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Copies encoded batches into a packed object. The batches keep their buffers and holds.
+     *
+     * @param sections The encoded batches, in the order they are packed
+     * @param bufferPool The pool that accounts for the packed content until its batch is released
+     * @return The packed object
+     */
+    static PackedObject of(List<SealedBatch> sections, BatchBufferPool bufferPool) {
+        long sectionBytes = sections.stream().mapToLong(SealedBatch::getSizeBytes).sum();
+        // offsets depend on the size of the header that holds them, which settles within a few rounds
+        long[] offsets = new long[sections.size()];
+        byte[] header = header(sections, offsets, 0);
+        int headerBytes;
+        do {
+            headerBytes = header.length;
+            header = header(sections, offsets, headerBytes);
+        } while (header.length != headerBytes);
+
+        ByteBuffer content = bufferPool.allocateUnpooled((int) (header.length + sectionBytes));
+        content.put(header);
+        for (SealedBatch section : sections) {
+            content.put(section.getContent());
+        }
+        content.flip();
+        SealedBatch batch = new SealedBatch(TIER, PackFormat.INSTANCE,
+            sections.stream().mapToInt(SealedBatch::getEventCount).sum(), content.remaining(), content,
+            bufferPool::releaseUnpooled);
+        long oldestEventNanos = sections.get(0).getOldestEventNanos();
+        for (SealedBatch section : sections) {
+            if (section.getOldestEventNanos() - oldestEventNanos < 0) {
+                oldestEventNanos = section.getOldestEventNanos();
+            }
+        }
+        batch.setFlushInfo(FlushReason.DEADLINE, oldestEventNanos);
+        return new PackedObject(batch, offsets);
+    }
+
+    private static byte[] header(List<SealedBatch> sections, long[] offsets, int headerBytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128 * sections.size());
+        try (JsonGenerator json = JSON_FACTORY.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeArrayFieldStart("sections");
+            long offset = headerBytes;
+            for (int i = 0; i < sections.size(); i++) {
+                SealedBatch section = sections.get(i);
+                offsets[i] = offset;
+                json.writeStartObject();
+                json.writeStringField("tier", section.getTier());
+                json.writeStringField("format", section.getFormat().getName());
+                json.writeStringField("codec", section.getCodec().getName());
+                json.writeNumberField("event_count", section.getEventCount());
+                if (section.hasEventTimes()) {
+                    json.writeStringField("min_event_timestamp", formatTimestamp(section.getMinEventMillis()));
+                    json.writeStringField("max_event_timestamp", formatTimestamp(section.getMaxEventMillis()));
+                }
+                json.writeNumberField("offset", offset);
+                json.writeNumberField("length", section.getSizeBytes());
+                json.writeEndObject();
+                offset += section.getSizeBytes();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write pack header", e);
+        }
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static String formatTimestamp(long epochMillis) {
+        return Event.EVENT_TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    /**
+     * @return The packed object as a batch of its own, flushed on deadline
+     */
+    SealedBatch getBatch() {
+        return batch;
+    }
+
+    /**
+     * @param index The index of a section
+     * @return The offset of the section from the start of the object
+     */
+    long getOffset(int index) {
+        return offsets[index];
+    }
+}
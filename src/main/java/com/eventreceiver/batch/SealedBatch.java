@@ -0,0 +1,200 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.codec.BatchCodec;
+import com.eventreceiver.batch.codec.IdentityCodec;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.RecordFraming;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Immutable snapshot of a tier batch that has been swapped out and is ready to be uploaded.
+ * The content is the batch's events in {@link #getFormat()}, encoded with {@link #getCodec()}.
+ * The batch owns a pooled buffer, which must be handed back with {@link #release()} once the
+ * upload has finished, and the holds of its events, which {@link #complete()} releases once it
+ * has been stored. Requests still reading the buffer after the owner is done with the batch
+ * {@link #pin()} it, which keeps the buffer from going back until they have finished.
+ * Batches built from events with known timestamps carry the range of those timestamps, which
+ * selects the event-time partition the batch is stored in.
+ */
+@Getter
+public class SealedBatch {
+    private final String tier;
+    private final BatchFormat format;
+    private final int eventCount;
+    private final long sizeBytes;
+    private final BatchCodec codec;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer buffer;
+    @Getter(AccessLevel.NONE)
+    private final Consumer<ByteBuffer> releaser;
+    @Getter(AccessLevel.PACKAGE)
+    private final BatchHolds holds;
+    @Getter(AccessLevel.NONE)
+    private final AtomicBoolean released = new AtomicBoolean();
+    // the owner's reference plus one per pin
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger references = new AtomicInteger(1);
+    private FlushReason flushReason = FlushReason.SIZE;
+    private long sealedNanos = System.nanoTime();
+    private long oldestEventNanos = sealedNanos;
+    private long minEventMillis = TierBatch.UNKNOWN_EVENT_TIME;
+    private long maxEventMillis = TierBatch.UNKNOWN_EVENT_TIME;
+
+    public SealedBatch(String tier, BatchFormat format, int eventCount, long sizeBytes, ByteBuffer buffer,
+                       Consumer<ByteBuffer> releaser) {
+        this(tier, format, eventCount, sizeBytes, buffer, releaser, new BatchHolds());
+    }
+
+    public SealedBatch(String tier, BatchFormat format, int eventCount, long sizeBytes, ByteBuffer buffer,
+                       Consumer<ByteBuffer> releaser, BatchHolds holds) {
+        this(tier, format, eventCount, sizeBytes, IdentityCodec.INSTANCE, buffer, releaser, holds);
+    }
+
+    private SealedBatch(String tier, BatchFormat format, int eventCount, long sizeBytes, BatchCodec codec,
+                        ByteBuffer buffer, Consumer<ByteBuffer> releaser, BatchHolds holds) {
+        this.tier = tier;
+        this.format = format;
+        this.eventCount = eventCount;
+        this.sizeBytes = sizeBytes;
+        this.codec = codec;
+        this.buffer = buffer;
+        this.releaser = releaser;
+        this.holds = holds;
+    }
+
+    /**
+     * Records why and when the batch was sealed and when its oldest event arrived.
+     */
+    void setFlushInfo(FlushReason flushReason, long oldestEventNanos) {
+        this.flushReason = flushReason;
+        this.oldestEventNanos = oldestEventNanos;
+    }
+
+    /**
+     * Records the range of the timestamps of the batch's events.
+     */
+    public void setEventTimeRange(long minEventMillis, long maxEventMillis) {
+        this.minEventMillis = minEventMillis;
+        this.maxEventMillis = maxEventMillis;
+    }
+
+    /**
+     * @return true if the timestamps of all events of the batch are known
+     */
+    public boolean hasEventTimes() {
+        return minEventMillis != TierBatch.UNKNOWN_EVENT_TIME;
+    }
+
+    /**
+     * Copies the flush information and event time range of the batch this one was derived from.
+     * For a part of a split batch, the range covers the part's events but may be wider.
+     */
+    SealedBatch inheritFlushInfo(SealedBatch origin) {
+        this.flushReason = origin.flushReason;
+        this.sealedNanos = origin.sealedNanos;
+        this.oldestEventNanos = origin.oldestEventNanos;
+        this.minEventMillis = origin.minEventMillis;
+        this.maxEventMillis = origin.maxEventMillis;
+        return this;
+    }
+
+    /**
+     * Creates a batch holding a single event that is too large to share a pooled buffer.
+     *
+     * @param tier The customer tier of the event
+     * @param format The format the batch is stored in
+     * @param event Buffer holding the serialized event
+     * @param offset Offset of the event in the buffer
+     * @param length UTF-8 encoded size of the event
+     * @param eventTimeMillis Event timestamp in epoch milliseconds, or {@link TierBatch#UNKNOWN_EVENT_TIME}
+     * @param hold Hold to release once the event is stored, or null
+     * @param bufferPool The pool that accounts for the batch's buffer until the batch is released
+     * @return A batch backed by its own, unpooled buffer
+     */
+    public static SealedBatch ofSingleEvent(String tier, BatchFormat format, byte[] event, int offset, int length,
+                                            long eventTimeMillis, BatchHold hold, BatchBufferPool bufferPool) {
+        RecordFraming framing = format.getFraming();
+        ByteBuffer buffer = bufferPool.allocateUnpooled((int) framing.singleEventBatchBytes(length));
+        framing.writeHeader(buffer);
+        buffer.put(framing.getHeaderBytes(), event, offset, length);
+        buffer.put(buffer.capacity() - 1, framing.getSeparator());
+        framing.seal(buffer, buffer.capacity());
+        BatchHolds holds = new BatchHolds();
+        if (hold != null) {
+            holds.add(hold, 1);
+        }
+        SealedBatch batch = new SealedBatch(tier, format, 1, buffer.capacity(), buffer, bufferPool::releaseUnpooled,
+            holds);
+        if (eventTimeMillis != TierBatch.UNKNOWN_EVENT_TIME) {
+            batch.setEventTimeRange(eventTimeMillis, eventTimeMillis);
+        }
+        return batch;
+    }
+
+    /**
+     * Creates the encoded form of this batch. This batch keeps its own buffer and must still be released.
+     *
+     * @param codec The codec the content was encoded with
+     * @param encoded Buffer holding the encoded content from index 0
+     * @param encodedBytes The encoded size
+     * @param encodedReleaser Receives the encoded buffer on release
+     * @return A batch with the same events, backed by the encoded buffer
+     */
+    public SealedBatch withEncodedContent(BatchCodec codec, ByteBuffer encoded, long encodedBytes,
+                                          Consumer<ByteBuffer> encodedReleaser) {
+        return new SealedBatch(tier, format, eventCount, encodedBytes, codec, encoded, encodedReleaser, holds)
+            .inheritFlushInfo(this);
+    }
+
+    /**
+     * @return A read-only view of the batch content, positioned at its first byte
+     */
+    public ByteBuffer getContent() {
+        return buffer.slice(0, (int) sizeBytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Marks the batch as stored. The holds of its events are released once this batch, or every
+     * part of the batch it was split from, has been stored.
+     */
+    public void complete() {
+        holds.complete();
+    }
+
+    /**
+     * Hands the backing buffer back to its pool, or once the last pin is dropped if the batch is
+     * pinned. The owner must not read the content afterwards.
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            dereference();
+        }
+    }
+
+    /**
+     * Keeps the buffer readable until {@link #unpin()}, even if the owner releases the batch
+     * meanwhile. For a request that may outlive the owner's interest in the batch.
+     */
+    public void pin() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Drops a pin taken with {@link #pin()}, handing the buffer back if the batch was released.
+     */
+    public void unpin() {
+        dereference();
+    }
+
+    private void dereference() {
+        if (references.decrementAndGet() == 0) {
+            releaser.accept(buffer);
+        }
+    }
+}
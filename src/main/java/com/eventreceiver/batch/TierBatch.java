@@ -0,0 +1,295 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.RecordFraming;
+import com.eventreceiver.model.EncodedEvent;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only, lock-free accumulator for the pending events of a single customer tier.
+ * Events are written straight into a pooled buffer in the record framing of the tier's format,
+ * so the buffer content is the stored object once the batch is sealed and its size is always exact.
+ * <p>
+ * Producers reserve a byte range with a single CAS on a packed state word and then copy the
+ * serialized event into it, so concurrent producers write disjoint ranges in parallel. Sealing
+ * sets a flag in the same word, so no reservation can succeed afterwards, and waits until every
+ * reserved range has been written. The sealed snapshot therefore contains exactly the events
+ * whose append succeeded.
+ * <p>
+ * The batch also tracks the range of its events' timestamps, so a batch whose events all fall
+ * into one event-time partition can be stored without looking at its events again.
+ */
+public class TierBatch {
+    // state layout: [sealed:1][event count:23][bytes:40]
+    private static final int BYTES_BITS = 40;
+    private static final long BYTES_MASK = (1L << BYTES_BITS) - 1;
+    private static final long SEALED = Long.MIN_VALUE;
+    private static final int MAX_EVENTS = (1 << 23) - 1;
+    /** Event time of an event whose timestamp was not parsed before it was appended. */
+    public static final long UNKNOWN_EVENT_TIME = Long.MIN_VALUE;
+
+    public enum AppendResult {
+        /** The event was added and the batch has room for more. */
+        APPENDED,
+        /** The event was added and the batch reached its size limit; it should be sealed. */
+        APPENDED_AND_FULL,
+        /** The event does not fit; the batch should be sealed and the event retried. */
+        FULL,
+        /** The batch was sealed concurrently; the event should be retried on its successor. */
+        SEALED
+    }
+
+    private final String tier;
+    private final BatchFormat format;
+    private final RecordFraming framing;
+    private final BatchBufferPool bufferPool;
+    private final ByteBuffer buffer;
+    private final long capacityBytes;
+    private final long maxBatchSizeBytes;
+    private final AtomicLong state;
+    private final AtomicInteger written = new AtomicInteger();
+    private final BatchHolds holds = new BatchHolds();
+    private final AtomicLong minEventMillis = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxEventMillis = new AtomicLong(Long.MIN_VALUE);
+    private volatile boolean untimedEvents;
+    // System.nanoTime() of the first append, written by the producer that made the batch non-empty
+    private volatile long firstAppendNanos;
+
+    /**
+     * @param tier The customer tier of the batch
+     * @param format The format the batch is stored in
+     * @param bufferPool The pool to take the backing buffer from
+     * @param maxBatchSizeBytes The size at which the batch counts as full, at most the buffer capacity
+     */
+    public TierBatch(String tier, BatchFormat format, BatchBufferPool bufferPool, long maxBatchSizeBytes) {
+        this.tier = tier;
+        this.format = format;
+        this.framing = format.getFraming();
+        this.bufferPool = bufferPool;
+        this.buffer = bufferPool.acquire();
+        this.capacityBytes = buffer.capacity();
+        this.maxBatchSizeBytes = Math.min(maxBatchSizeBytes, capacityBytes);
+        this.state = new AtomicLong(framing.getHeaderBytes());
+        framing.writeHeader(buffer);
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    public boolean isEmpty() {
+        return eventCount(state.get()) == 0;
+    }
+
+    /**
+     * @return The bytes reserved in the batch so far, including the header of its framing
+     */
+    public long getSizeBytes() {
+        return state.get() & BYTES_MASK;
+    }
+
+    /**
+     * @return The System.nanoTime() at which the first event was appended, or 0 if the batch is empty
+     */
+    public long getOldestEventNanos() {
+        long nanos = firstAppendNanos;
+        if (nanos == 0 && !isEmpty()) {
+            // the first producer reserved its range but has not recorded the time yet
+            return System.nanoTime();
+        }
+        return nanos;
+    }
+
+    /**
+     * Checks whether an event of the given size can be stored in a batch at all.
+     *
+     * @param framing The record framing of the batch
+     * @param eventBytes The UTF-8 encoded size of the event
+     * @param maxBatchSizeBytes The maximum size of a batch
+     * @return true if a batch holding only this event stays within maxBatchSizeBytes
+     */
+    public static boolean fitsEmptyBatch(RecordFraming framing, long eventBytes, long maxBatchSizeBytes) {
+        return framing.singleEventBatchBytes(eventBytes) <= maxBatchSizeBytes;
+    }
+
+    /**
+     * Tries to add a serialized event to the batch. An empty batch accepts any event that fits
+     * its buffer, even one larger than maxBatchSizeBytes.
+     *
+     * @param event Buffer holding the serialized event
+     * @param offset Offset of the event in the buffer
+     * @param length UTF-8 encoded size of the event, which must fit an empty buffer
+     * @param eventTimeMillis Event timestamp in epoch milliseconds, or {@link #UNKNOWN_EVENT_TIME}
+     * @param hold Hold to keep until the batch is stored, or null
+     * @return The outcome of the append
+     */
+    public AppendResult tryAppend(byte[] event, int offset, int length, long eventTimeMillis, BatchHold hold) {
+        if (!fitsEmptyBatch(framing, length, capacityBytes)) {
+            throw new IllegalArgumentException("Event of " + length + " bytes exceeds the batch capacity");
+        }
+        long reservedBytes = length + 1L;
+        for (;;) {
+            long current = state.get();
+            if (current < 0) {
+                return AppendResult.SEALED;
+            }
+            int count = eventCount(current);
+            long start = current & BYTES_MASK;
+            long end = start + reservedBytes;
+            if ((count > 0 && end > maxBatchSizeBytes) || end > capacityBytes || count == MAX_EVENTS) {
+                return AppendResult.FULL;
+            }
+            long next = ((long) (count + 1) << BYTES_BITS) | end;
+            if (state.compareAndSet(current, next)) {
+                if (count == 0) {
+                    firstAppendNanos = System.nanoTime();
+                }
+                buffer.put((int) start, event, offset, length);
+                buffer.put((int) (start + length), framing.getSeparator());
+                recordEventTime(eventTimeMillis);
+                if (hold != null) {
+                    holds.add(hold, 1);
+                }
+                written.incrementAndGet();
+                return end >= maxBatchSizeBytes
+                    ? AppendResult.APPENDED_AND_FULL
+                    : AppendResult.APPENDED;
+            }
+        }
+    }
+
+    /**
+     * Tries to add a run of serialized events to the batch with a single reservation, so a bulk
+     * request takes its range of the batch in one CAS instead of one per event. Events are taken in
+     * order for as long as they fit, following the same rules as {@link #tryAppend}.
+     *
+     * @param events Validated events, each of which must fit an empty buffer
+     * @param fromIndex Index of the first event to append
+     * @param hold Hold covering all of the events to keep until the batch is stored, or null
+     * @return The number of events appended, 0 if the batch is full, or -1 if it was sealed
+     */
+    public int tryAppendAll(List<EncodedEvent> events, int fromIndex, BatchHold hold) {
+        for (;;) {
+            long current = state.get();
+            if (current < 0) {
+                return -1;
+            }
+            int count = eventCount(current);
+            long start = current & BYTES_MASK;
+            long end = start;
+            int appended = 0;
+            for (int i = fromIndex; i < events.size(); i++) {
+                long next = end + events.get(i).getLength() + 1L;
+                if ((count + appended > 0 && next > maxBatchSizeBytes) || next > capacityBytes
+                        || count + appended == MAX_EVENTS) {
+                    break;
+                }
+                end = next;
+                appended++;
+            }
+            if (appended == 0) {
+                return 0;
+            }
+            long next = ((long) (count + appended) << BYTES_BITS) | end;
+            if (state.compareAndSet(current, next)) {
+                if (count == 0) {
+                    firstAppendNanos = System.nanoTime();
+                }
+                int position = (int) start;
+                long min = Long.MAX_VALUE;
+                long max = Long.MIN_VALUE;
+                for (int i = fromIndex; i < fromIndex + appended; i++) {
+                    EncodedEvent event = events.get(i);
+                    buffer.put(position, event.getBytes(), event.getOffset(), event.getLength());
+                    position += event.getLength();
+                    buffer.put(position++, framing.getSeparator());
+                    long eventTimeMillis = eventTimeMillis(event);
+                    if (eventTimeMillis == UNKNOWN_EVENT_TIME) {
+                        untimedEvents = true;
+                    } else {
+                        min = Math.min(min, eventTimeMillis);
+                        max = Math.max(max, eventTimeMillis);
+                    }
+                }
+                recordEventTimes(min, max);
+                if (hold != null) {
+                    holds.add(hold, appended);
+                }
+                written.addAndGet(appended);
+                return appended;
+            }
+        }
+    }
+
+    /**
+     * @return true if the batch reached its size limit
+     */
+    public boolean isFull() {
+        return (state.get() & BYTES_MASK) >= maxBatchSizeBytes;
+    }
+
+    /**
+     * Seals the batch so no further events can be added, waits for in-progress appends to
+     * finish writing and completes the framing.
+     *
+     * @param reason Why the batch is sealed
+     * @return The sealed batch, which owns the buffer until it is released
+     */
+    public SealedBatch seal(FlushReason reason) {
+        long sealedState = state.getAndUpdate(s -> s | SEALED);
+        int count = eventCount(sealedState);
+        while (written.get() < count) {
+            Thread.onSpinWait();
+        }
+        long sizeBytes = sealedState & BYTES_MASK;
+        framing.seal(buffer, sizeBytes);
+        SealedBatch sealed = new SealedBatch(tier, format, count, sizeBytes, buffer, bufferPool::release, holds);
+        sealed.setFlushInfo(reason, firstAppendNanos);
+        if (count > 0 && !untimedEvents) {
+            sealed.setEventTimeRange(minEventMillis.get(), maxEventMillis.get());
+        }
+        return sealed;
+    }
+
+    /**
+     * @return The timestamp of a validated event in epoch milliseconds, or {@link #UNKNOWN_EVENT_TIME}
+     */
+    public static long eventTimeMillis(EncodedEvent event) {
+        return event.getEventTimestamp() != null ? event.getEventTimestamp().toEpochMilli() : UNKNOWN_EVENT_TIME;
+    }
+
+    private void recordEventTime(long eventTimeMillis) {
+        if (eventTimeMillis == UNKNOWN_EVENT_TIME) {
+            untimedEvents = true;
+        } else {
+            recordEventTimes(eventTimeMillis, eventTimeMillis);
+        }
+    }
+
+    /**
+     * Widens the event time range; the reads keep the common case, an event inside the range, free of CAS.
+     */
+    private void recordEventTimes(long min, long max) {
+        if (min < minEventMillis.get()) {
+            minEventMillis.accumulateAndGet(min, Math::min);
+        }
+        if (max > maxEventMillis.get()) {
+            maxEventMillis.accumulateAndGet(max, Math::max);
+        }
+    }
+
+    /**
+     * Returns the buffer of a batch that was never used to the pool.
+     */
+    public void discard() {
+        bufferPool.release(buffer);
+    }
+
+    private static int eventCount(long state) {
+        return (int) ((state & ~SEALED) >>> BYTES_BITS);
+    }
+}
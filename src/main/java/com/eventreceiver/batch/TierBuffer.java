@@ -0,0 +1,180 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.model.EncodedEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Double buffer of {@link TierBatch}es for one customer tier. Producers append to the current
+ * batch without taking a lock; a full batch, or one picked up by a deadline flush, is
+ * replaced by an empty successor with a single compare-and-set. Only the thread that wins the
+ * swap seals the old batch, so every batch is handed over exactly once.
+ * The size limit of each new batch is read from a supplier, so it can follow the tier's
+ * compression ratio.
+ */
+public class TierBuffer {
+    private final String tier;
+    private final BatchFormat format;
+    private final BatchBufferPool bufferPool;
+    private final LongSupplier maxBatchSizeBytes;
+    private final AtomicReference<TierBatch> current;
+
+    public TierBuffer(String tier, BatchFormat format, BatchBufferPool bufferPool, LongSupplier maxBatchSizeBytes) {
+        this.tier = tier;
+        this.format = format;
+        this.bufferPool = bufferPool;
+        this.maxBatchSizeBytes = maxBatchSizeBytes;
+        this.current = new AtomicReference<>(newBatch());
+    }
+
+    public String getTier() {
+        return tier;
+    }
+
+    /**
+     * @return The System.nanoTime() at which the oldest pending event was appended, or 0 if there is none
+     */
+    public long getOldestEventNanos() {
+        return current.get().getOldestEventNanos();
+    }
+
+    /**
+     * @return The size of the current batch so far, including the header of its framing
+     */
+    public long getPendingBytes() {
+        return current.get().getSizeBytes();
+    }
+
+    /**
+     * Appends a serialized event to the current batch, swapping out batches that are full.
+     * An event too large to share a batch is sealed into a batch of its own right away.
+     * The event's timestamp is not known, so it is read from the event when the batch is stored.
+     *
+     * @param event Buffer holding the serialized event
+     * @param offset Offset of the event in the buffer
+     * @param length UTF-8 encoded size of the event
+     * @param sealedBatchConsumer Receives every batch this call sealed
+     */
+    public void append(byte[] event, int offset, int length, Consumer<SealedBatch> sealedBatchConsumer) {
+        append(event, offset, length, TierBatch.UNKNOWN_EVENT_TIME, null, sealedBatchConsumer);
+    }
+
+    /**
+     * Appends a serialized event whose batch has to keep a hold until it is stored.
+     *
+     * @param event Buffer holding the serialized event
+     * @param offset Offset of the event in the buffer
+     * @param length UTF-8 encoded size of the event
+     * @param eventTimeMillis Event timestamp in epoch milliseconds, or {@link TierBatch#UNKNOWN_EVENT_TIME}
+     * @param hold Hold to release once the event is stored, or null
+     * @param sealedBatchConsumer Receives every batch this call sealed
+     */
+    public void append(byte[] event, int offset, int length, long eventTimeMillis, BatchHold hold,
+                       Consumer<SealedBatch> sealedBatchConsumer) {
+        if (!TierBatch.fitsEmptyBatch(format.getFraming(), length, bufferPool.getBufferCapacity())) {
+            sealedBatchConsumer.accept(SealedBatch.ofSingleEvent(tier, format, event, offset, length,
+                eventTimeMillis, hold, bufferPool));
+            return;
+        }
+        for (;;) {
+            TierBatch batch = current.get();
+            switch (batch.tryAppend(event, offset, length, eventTimeMillis, hold)) {
+                case APPENDED:
+                    return;
+                case APPENDED_AND_FULL:
+                    swap(batch, FlushReason.SIZE, sealedBatchConsumer);
+                    return;
+                case FULL:
+                    swap(batch, FlushReason.SIZE, sealedBatchConsumer);
+                    break;
+                case SEALED:
+                    Thread.onSpinWait();
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Appends a run of validated events, reserving space for as many of them as fit the current
+     * batch at once. Full batches are swapped out as in {@link #append}, and events too large to
+     * share a batch are sealed into batches of their own.
+     *
+     * @param events The validated events, in order
+     * @param sealedBatchConsumer Receives every batch this call sealed
+     */
+    public void appendAll(List<EncodedEvent> events, Consumer<SealedBatch> sealedBatchConsumer) {
+        appendAll(events, null, sealedBatchConsumer);
+    }
+
+    /**
+     * Appends a run of validated events whose batches have to keep a hold until they are stored.
+     *
+     * @param events The validated events, in order
+     * @param hold Hold covering all of the events, or null
+     * @param sealedBatchConsumer Receives every batch this call sealed
+     */
+    public void appendAll(List<EncodedEvent> events, BatchHold hold, Consumer<SealedBatch> sealedBatchConsumer) {
+        int index = 0;
+        while (index < events.size()) {
+            EncodedEvent event = events.get(index);
+            if (!TierBatch.fitsEmptyBatch(format.getFraming(), event.getLength(), bufferPool.getBufferCapacity())) {
+                sealedBatchConsumer.accept(SealedBatch.ofSingleEvent(tier, format, event.getBytes(),
+                    event.getOffset(), event.getLength(), TierBatch.eventTimeMillis(event), hold, bufferPool));
+                index++;
+                continue;
+            }
+            TierBatch batch = current.get();
+            int appended = batch.tryAppendAll(events, index, hold);
+            if (appended < 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            index += appended;
+            if (appended == 0 || batch.isFull()) {
+                swap(batch, FlushReason.SIZE, sealedBatchConsumer);
+            }
+        }
+    }
+
+    /**
+     * Swaps out the current batch if it holds any events.
+     *
+     * @param reason Why the batch is flushed
+     * @param sealedBatchConsumer Receives the sealed batch, if there was one to flush
+     */
+    public void flush(FlushReason reason, Consumer<SealedBatch> sealedBatchConsumer) {
+        TierBatch batch = current.get();
+        if (!batch.isEmpty()) {
+            swap(batch, reason, sealedBatchConsumer);
+        }
+    }
+
+    /**
+     * Flushes the current batch and returns the buffer of its empty successor to the pool.
+     * The tier buffer must not be used afterwards, nor concurrently with this call.
+     *
+     * @param reason Why the batch is flushed
+     * @param sealedBatchConsumer Receives the sealed batch, if there was one to flush
+     */
+    public void close(FlushReason reason, Consumer<SealedBatch> sealedBatchConsumer) {
+        flush(reason, sealedBatchConsumer);
+        current.get().discard();
+    }
+
+    private void swap(TierBatch batch, FlushReason reason, Consumer<SealedBatch> sealedBatchConsumer) {
+        TierBatch successor = newBatch();
+        if (current.compareAndSet(batch, successor)) {
+            sealedBatchConsumer.accept(batch.seal(reason));
+        } else {
+            successor.discard();
+        }
+    }
+
+    private TierBatch newBatch() {
+        return new TierBatch(tier, format, bufferPool, maxBatchSizeBytes.getAsLong());
+    }
+}
@@ -0,0 +1,233 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Flushes each tier's buffer once its oldest event has waited for the tier's flush delay.
+ * Every tier has its own deadline, so a quiet tier is only flushed when it has something to send
+ * and its oldest event is due, and the first checks of the tiers are spread over the delay so
+ * busy tiers do not all hand their batches to the uploader at the same moment.
+ * With the adaptive delay enabled, a tier's delay is derived from the time its recent batches
+ * took from being sealed to being stored: the delay is as long as the latency SLO allows, which
+ * keeps the number of PUTs down, within the configured bounds.
+ * With packing enabled, a tier that is due takes the other tiers' small batches along, even if
+ * their events are not due yet, and they are stored together in one object. Quiet tiers then
+ * share a PUT per flush delay instead of making one each.
+ * <p>
+ * The scheduler's single thread serves every tier, so it never uploads a batch itself: due
+ * batches are queued for the upload workers, and a tier whose share of the upload queue is full
+ * is not flushed until the queue has drained below it. Its events stay in its open batch, and
+ * once that fills up the request thread that seals it uploads it, which slows down only that
+ * tier's producers.
+ */
+@Slf4j
+@Component
+public class TierFlushScheduler {
+    // Fractional part of the golden ratio; multiples of it are spread evenly over [0, 1)
+    private static final double STAGGER_STEP = 0.6180339887498949;
+    // Weight of the newest sample in the average sealed-to-stored latency
+    private static final double EWMA_ALPHA = 0.2;
+    // How soon a tier whose flush was held back for a full upload queue is checked again
+    private static final long BACKLOG_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final BatchUploader batchUploader;
+    private final AppConfig.BatchConfig batchConfig;
+    private final AppConfig.AdaptiveDelayConfig adaptiveConfig;
+    private final AppConfig.PackingConfig packingConfig;
+    private final MeterRegistry registry;
+    private final Map<String, TierFlush> tiers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    public TierFlushScheduler(BatchUploader batchUploader, AppConfig appConfig, MeterRegistry registry) {
+        this.batchUploader = batchUploader;
+        this.batchConfig = appConfig.getBatch();
+        this.adaptiveConfig = batchConfig.getAdaptiveDelay();
+        this.packingConfig = batchConfig.getPacking();
+        this.registry = registry;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("batch-flush-"));
+        if (adaptiveConfig.isEnabled()) {
+            batchUploader.addStoreListener(this::onStored);
+        }
+        log.info("Initialized batch flush scheduler with delay: {} seconds, adaptive: {}, packing: {}",
+            batchConfig.getMaxBatchDelaySeconds(), adaptiveConfig.isEnabled(), packingConfig.isEnabled());
+    }
+
+    /**
+     * Starts flushing a tier buffer on its deadline. Registering a tier again has no effect.
+     *
+     * @param tierBuffer The buffer of the tier
+     */
+    public void register(TierBuffer tierBuffer) {
+        tiers.computeIfAbsent(tierBuffer.getTier(), tier -> {
+            Counter deferredCounter = Counter.builder("event.batch.flush.deferred")
+                .description("Deadline flushes held back because the tier's share of the upload queue was full")
+                .tag("tier", tier)
+                .register(registry);
+            TierFlush flush = new TierFlush(tierBuffer, configuredDelayNanos(tier), deferredCounter);
+            Gauge.builder("event.batch.flush.delay", flush, f -> f.delayNanos / 1e9)
+                .description("Longest time an event of the tier waits in a batch before it is flushed")
+                .tag("tier", tier)
+                .baseUnit("seconds")
+                .register(registry);
+            double stagger = (tiers.size() * STAGGER_STEP) % 1.0;
+            schedule(flush, (long) (flush.delayNanos * stagger));
+            return flush;
+        });
+    }
+
+    /**
+     * @param tier The customer tier
+     * @return The current flush delay of the tier in nanoseconds, or the configured one if it is not registered
+     */
+    public long getDelayNanos(String tier) {
+        TierFlush flush = tiers.get(tier);
+        return flush != null ? flush.delayNanos : configuredDelayNanos(tier);
+    }
+
+    /**
+     * Derives a flush delay that leaves twice the observed sealed-to-stored latency of the SLO
+     * for the upload, clamped to the configured bounds.
+     *
+     * @param latencySloNanos Target time from an event entering a batch to the batch being stored
+     * @param uploadNanos Average time from a batch being sealed to it being stored
+     * @param minNanos Shortest delay
+     * @param maxNanos Longest delay
+     * @return The delay in nanoseconds
+     */
+    static long adaptiveDelayNanos(long latencySloNanos, long uploadNanos, long minNanos, long maxNanos) {
+        long delay = latencySloNanos - 2 * uploadNanos;
+        return Math.max(minNanos, Math.min(maxNanos, delay));
+    }
+
+    private long configuredDelayNanos(String tier) {
+        AppConfig.TierBatchConfig tierConfig = batchConfig.getTiers().get(tier);
+        int seconds = tierConfig != null && tierConfig.getMaxBatchDelaySeconds() != null
+            ? tierConfig.getMaxBatchDelaySeconds() : batchConfig.getMaxBatchDelaySeconds();
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private void onStored(SealedBatch batch, long sinceSealedNanos) {
+        TierFlush flush = tiers.get(batch.getTier());
+        if (flush == null) {
+            return;
+        }
+        synchronized (flush) {
+            flush.uploadNanos = flush.uploadNanos == 0 ? sinceSealedNanos
+                : (long) (EWMA_ALPHA * sinceSealedNanos + (1 - EWMA_ALPHA) * flush.uploadNanos);
+            flush.delayNanos = adaptiveDelayNanos(
+                TimeUnit.MILLISECONDS.toNanos(adaptiveConfig.getLatencySloMillis()),
+                flush.uploadNanos,
+                TimeUnit.MILLISECONDS.toNanos(adaptiveConfig.getMinDelayMillis()),
+                TimeUnit.MILLISECONDS.toNanos(adaptiveConfig.getMaxDelayMillis()));
+        }
+    }
+
+    /**
+     * Flushes the tier if its oldest event is due and schedules the next check for the deadline
+     * of the oldest event still waiting, or one delay from now if the tier is empty.
+     */
+    private void check(TierFlush flush) {
+        long delay = flush.delayNanos;
+        long next = delay;
+        try {
+            long oldest = flush.tierBuffer.getOldestEventNanos();
+            if (oldest != 0) {
+                long age = System.nanoTime() - oldest;
+                String backlog = packingConfig.isEnabled() ? PackedObject.TIER : flush.tierBuffer.getTier();
+                if (age >= delay && batchUploader.isBacklogged(backlog)) {
+                    flush.deferredCounter.increment();
+                    next = Math.min(delay, BACKLOG_RECHECK_NANOS);
+                } else if (age >= delay && packingConfig.isEnabled()) {
+                    flushPacked(flush);
+                } else if (age >= delay) {
+                    flush.tierBuffer.flush(FlushReason.DEADLINE, batchUploader::enqueue);
+                } else {
+                    next = delay - age;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error flushing batch for tier {}: {}", flush.tierBuffer.getTier(), e.getMessage());
+        }
+        schedule(flush, next);
+    }
+
+    /**
+     * Flushes a tier that is due together with every other tier whose pending batch is no larger
+     * than a section, and hands the small batches over to be packed into one object. Batches
+     * that grew past a section in the meantime are submitted on their own.
+     */
+    private void flushPacked(TierFlush due) {
+        List<SealedBatch> sections = new ArrayList<>(tiers.size());
+        Consumer<SealedBatch> collect = batch -> {
+            if (batch.getSizeBytes() <= packingConfig.getMaxSectionBytes()) {
+                sections.add(batch);
+            } else {
+                batchUploader.enqueue(batch);
+            }
+        };
+        due.tierBuffer.flush(FlushReason.DEADLINE, collect);
+        for (TierFlush flush : tiers.values()) {
+            if (flush != due && flush.tierBuffer.getOldestEventNanos() != 0
+                    && flush.tierBuffer.getPendingBytes() <= packingConfig.getMaxSectionBytes()) {
+                flush.tierBuffer.flush(FlushReason.DEADLINE, collect);
+            }
+        }
+        batchUploader.submitPacked(sections);
+    }
+
+    private void schedule(TierFlush flush, long delayNanos) {
+        try {
+            scheduler.schedule(() -> check(flush), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Flush scheduler stopped, not rescheduling tier {}", flush.tierBuffer.getTier());
+        }
+    }
+
+    /**
+     * Stops the deadline checks and flushes every tier, so buffered events are uploaded
+     * before the uploader shuts down.
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down batch flush scheduler");
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (TierFlush flush : tiers.values()) {
+            flush.tierBuffer.flush(FlushReason.SHUTDOWN, batchUploader::submit);
+        }
+    }
+
+    private static final class TierFlush {
+        final TierBuffer tierBuffer;
+        final Counter deferredCounter;
+        volatile long delayNanos;
+        long uploadNanos;
+
+        TierFlush(TierBuffer tierBuffer, long delayNanos, Counter deferredCounter) {
+            this.tierBuffer = tierBuffer;
+            this.delayNanos = delayNanos;
+            this.deferredCounter = deferredCounter;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package com.eventreceiver.batch;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Work queue of the upload workers that shares them among tiers by weight rather than by order of
+ * arrival, so a burst of one tier's batches does not delay the uploads of the others. Each tier has
+ * a lane of its own, and lanes are served by deficit round robin over the bytes of their batches:
+ * on its turn a lane is credited its weight times the quantum and hands out batches while their
+ * size is covered by its credit, so while tiers compete each gets upload bandwidth in proportion
+ * to its weight, and a tier alone gets all of it.
+ * <p>
+ * The queue is bounded as a whole and per lane. A lane at its capacity refuses further tasks, so
+ * the executor has the submitting thread of that tier upload its batch itself, while the other
+ * tiers keep queueing. Unbounded tasks are queued regardless, for submitters that must never
+ * upload themselves and check {@link #hasRoom(String)} before creating work instead. How long
+ * tasks waited in each lane is recorded as {@code event.upload.queue.time}.
+ */
+final class WeightedFairQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final int capacity;
+    private final long quantumBytes;
+    private final Map<String, Integer> weights;
+    private final Map<String, Integer> laneCapacities;
+    private final MeterRegistry registry;
+    private final Map<String, Lane> lanesByTier = new HashMap<>();
+    private final List<Lane> lanes = new ArrayList<>();
+    private int cursor;
+    private int count;
+
+    /**
+     * @param capacity The number of tasks the queue holds across all lanes
+     * @param quantumBytes The bytes a lane of weight 1 is credited per turn
+     * @param weights The weight of each tier; other tiers get 1
+     * @param laneCapacities The number of tasks each tier may queue, at most the capacity; other
+     *        tiers may use the whole queue
+     * @param tiers The tiers whose lanes and meters are created up front
+     * @param registry The registry of the queue time meters
+     */
+    WeightedFairQueue(int capacity, long quantumBytes, Map<String, Integer> weights,
+                      Map<String, Integer> laneCapacities, Collection<String> tiers, MeterRegistry registry) {
+        this.capacity = capacity;
+        this.quantumBytes = Math.max(1, quantumBytes);
+        this.weights = weights;
+        this.laneCapacities = laneCapacities;
+        this.registry = registry;
+        tiers.forEach(this::lane);
+    }
+
+    /**
+     * An upload of one tier, weighed by its bytes.
+     */
+    static final class Task implements Runnable {
+        private final String tier;
+        private final long costBytes;
+        private final boolean bounded;
+        private final Runnable upload;
+
+        /**
+         * @param tier The tier whose lane the task is queued in
+         * @param costBytes The bytes the task is charged against its lane's credit
+         * @param bounded false to queue the task even if its lane or the queue is full
+         * @param upload The upload
+         */
+        Task(String tier, long costBytes, boolean bounded, Runnable upload) {
+            this.tier = tier;
+            this.costBytes = costBytes;
+            this.bounded = bounded;
+            this.upload = upload;
+        }
+
+        @Override
+        public void run() {
+            upload.run();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        Task task = asTask(runnable);
+        lock.lock();
+        try {
+            Lane lane = lane(task.tier);
+            if (task.bounded && !hasRoom(lane)) {
+                return false;
+            }
+            enqueue(lane, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+        Task task = asTask(runnable);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            Lane lane = lane(task.tier);
+            while (task.bounded && !hasRoom(lane)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(lane, task);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable runnable) throws InterruptedException {
+        Task task = asTask(runnable);
+        lock.lockInterruptibly();
+        try {
+            Lane lane = lane(task.tier);
+            while (task.bounded && !hasRoom(lane)) {
+                notFull.await();
+            }
+            enqueue(lane, task);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (int i = 0; i < lanes.size(); i++) {
+                Queued head = lanes.get((cursor + i) % lanes.size()).tasks.peek();
+                if (head != null) {
+                    return head.task;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (Lane lane : lanes) {
+                if (lane.tasks.removeIf(queued -> queued.task == o)) {
+                    count--;
+                    notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return Math.max(0, capacity - count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> target, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (count > 0 && drained < maxElements) {
+                target.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return A snapshot of the queued tasks, lane by lane
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        lock.lock();
+        try {
+            List<Runnable> tasks = new ArrayList<>(count);
+            lanes.forEach(lane -> lane.tasks.forEach(queued -> tasks.add(queued.task)));
+            return tasks.iterator();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Task asTask(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        if (!(runnable instanceof Task task)) {
+            throw new ClassCastException("Only upload tasks can be queued, not " + runnable.getClass().getName());
+        }
+        return task;
+    }
+
+    /**
+     * @param tier A tier
+     * @return true if a bounded task of the tier would be queued now
+     */
+    boolean hasRoom(String tier) {
+        lock.lock();
+        try {
+            return hasRoom(lane(tier));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Lane lane(String tier) {
+        return lanesByTier.computeIfAbsent(tier, t -> {
+            Lane lane = new Lane(t, weights.getOrDefault(t, 1) * quantumBytes,
+                Math.min(capacity, laneCapacities.getOrDefault(t, capacity)), registry);
+            lanes.add(lane);
+            return lane;
+        });
+    }
+
+    private boolean hasRoom(Lane lane) {
+        return count < capacity && lane.tasks.size() < lane.capacity;
+    }
+
+    private void enqueue(Lane lane, Task task) {
+        lane.tasks.add(new Queued(task, System.nanoTime()));
+        count++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Hands out the next task by deficit round robin. The lane under the cursor is credited its
+     * quantum once per turn and keeps the turn while its credit covers its next task; an empty
+     * lane forfeits its credit, so idle tiers do not save up bandwidth. Every full round credits
+     * each waiting lane, so a task is found within a few rounds even if it is larger than a quantum.
+     */
+    private Runnable dequeue() {
+        while (true) {
+            Lane lane = lanes.get(cursor);
+            Queued head = lane.tasks.peek();
+            if (head == null) {
+                lane.deficitBytes = 0;
+                advance();
+                continue;
+            }
+            if (!lane.credited) {
+                lane.deficitBytes += lane.quantumBytes;
+                lane.credited = true;
+            }
+            if (head.task.costBytes > lane.deficitBytes) {
+                advance();
+                continue;
+            }
+            lane.tasks.poll();
+            lane.deficitBytes -= head.task.costBytes;
+            if (lane.tasks.isEmpty()) {
+                lane.deficitBytes = 0;
+                advance();
+            }
+            count--;
+            notFull.signal();
+            lane.queueTime.record(System.nanoTime() - head.enqueuedNanos, TimeUnit.NANOSECONDS);
+            return head.task;
+        }
+    }
+
+    private void advance() {
+        lanes.get(cursor).credited = false;
+        cursor = (cursor + 1) % lanes.size();
+    }
+
+    private static final class Queued {
+        final Task task;
+        final long enqueuedNanos;
+
+        Queued(Task task, long enqueuedNanos) {
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    /**
+     * The queued tasks of one tier and its credit in the current round.
+     */
+    private static final class Lane {
+        final ArrayDeque<Queued> tasks = new ArrayDeque<>();
+        final long quantumBytes;
+        final int capacity;
+        final Timer queueTime;
+        long deficitBytes;
+        boolean credited;
+
+        Lane(String tier, long quantumBytes, int capacity, MeterRegistry registry) {
+            this.quantumBytes = quantumBytes;
+            this.capacity = capacity;
+            this.queueTime = Timer.builder("event.upload.queue.time")
+                .description("Time sealed batches waited for an upload worker")
+                .tag("tier", tier)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.eventreceiver.batch.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression applied to a sealed batch before it is stored.
+ */
+public interface BatchCodec {
+    /**
+     * @return The name of the codec as used in the configuration
+     */
+    String getName();
+
+    /**
+     * @return The Content-Encoding of encoded objects, or null if the content is stored as-is
+     */
+    String getContentEncoding();
+
+    /**
+     * @return The suffix appended to the key of encoded objects, e.g. ".gz"
+     */
+    String getFileExtension();
+
+    /**
+     * Encodes the remaining bytes of source into target, starting at index 0 of target.
+     * 
+     * @param source The serialized batch
+     * @param target The buffer to write the encoded batch into
+     * @return The encoded size, or -1 if the encoded batch does not fit into target
+     */
+    int encode(ByteBuffer source, ByteBuffer target);
+
+    /**
+     * Wraps a stream so that the bytes written to it are encoded into target. Used where objects
+     * are produced incrementally, such as merged objects, rather than from a sealed batch buffer.
+     * Closing the returned stream finishes the encoding and closes target.
+     *
+     * @param target Receives the encoded bytes
+     * @return The stream to write the unencoded content to
+     */
+    OutputStream encodingStream(OutputStream target) throws IOException;
+
+    /**
+     * Wraps a stream of an object encoded with this codec so that it reads the decoded content.
+     *
+     * @param source The encoded object
+     * @return The stream of the decoded content
+     */
+    InputStream decodingStream(InputStream source) throws IOException;
+}
@@ -0,0 +1,77 @@
+package com.eventreceiver.batch.codec;
+
+import com.eventreceiver.config.AppConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the codec of each customer tier from app.batch.codec and the per-tier overrides
+ * under app.batch.tiers, e.g.
+ * <pre>
+ * app:
+ *   batch:
+ *     codec: gzip
+ *     tiers:
+ *       enterprise:
+ *         codec: zstd
+ *         codec-level: 6
+ * </pre>
+ */
+@Slf4j
+@Component
+public class BatchCodecs {
+    private final AppConfig.BatchConfig batchConfig;
+    private final MeterRegistry registry;
+    private final Map<String, TierCompression> tierCompressions = new ConcurrentHashMap<>();
+
+    public BatchCodecs(AppConfig appConfig, MeterRegistry registry) {
+        this.batchConfig = appConfig.getBatch();
+        this.registry = registry;
+        // fail fast on misconfigured tiers
+        batchConfig.getTiers().keySet().forEach(this::forTier);
+    }
+
+    /**
+     * @param tier The customer tier
+     * @return The codec and compression state of the tier
+     */
+    public TierCompression forTier(String tier) {
+        return tierCompressions.computeIfAbsent(tier, this::createTierCompression);
+    }
+
+    private TierCompression createTierCompression(String tier) {
+        AppConfig.TierBatchConfig tierConfig = batchConfig.getTiers().get(tier);
+        String name = tierConfig != null && tierConfig.getCodec() != null ? tierConfig.getCodec() : batchConfig.getCodec();
+        Integer level = tierConfig != null && tierConfig.getCodecLevel() != null
+            ? tierConfig.getCodecLevel()
+            : batchConfig.getCodecLevel();
+        BatchCodec codec = createCodec(name, level);
+        TierCompression compression = new TierCompression(codec, batchConfig.getMaxBatchSizeBytes(),
+            batchConfig.getBufferCapacityBytes(), batchConfig.isLimitCompressedSize());
+        Gauge.builder("event.batch.compression.ratio", compression, TierCompression::getCompressionRatio)
+            .description("Compressed size divided by serialized size of recent batches")
+            .tag("tier", tier)
+            .tag("codec", codec.getName())
+            .register(registry);
+        log.info("Using codec {} for tier {}", codec.getName(), tier);
+        return compression;
+    }
+
+    private static BatchCodec createCodec(String name, Integer level) {
+        switch (name.toLowerCase()) {
+            case IdentityCodec.NAME:
+                return IdentityCodec.INSTANCE;
+            case GzipCodec.NAME:
+                return new GzipCodec(level != null ? level : GzipCodec.DEFAULT_LEVEL);
+            case ZstdCodec.NAME:
+                return new ZstdCodec(level != null ? level : ZstdCodec.DEFAULT_LEVEL);
+            default:
+                throw new IllegalArgumentException("Unknown batch codec: " + name);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.eventreceiver.batch.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip codec that deflates straight from and into byte buffers, so off-heap batches are
+ * compressed without being copied onto the heap.
+ */
+public class GzipCodec implements BatchCodec {
+    public static final String NAME = "gzip";
+    public static final int DEFAULT_LEVEL = 6;
+
+    // magic, CM=deflate, no flags, no mtime, XFL=0, OS=unknown
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_BYTES = 8;
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+
+    private final int level;
+
+    public GzipCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("gzip level must be between 1 and 9, was " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "gzip";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".gz";
+    }
+
+    @Override
+    public int encode(ByteBuffer source, ByteBuffer target) {
+        if (target.capacity() < HEADER.length + TRAILER_BYTES) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(source.duplicate());
+        int inputSize = source.remaining();
+
+        ByteBuffer output = target.duplicate().clear().limit(target.capacity() - TRAILER_BYTES);
+        output.put(HEADER);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(source.duplicate());
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (!output.hasRemaining()) {
+                    return -1;
+                }
+                deflater.deflate(output);
+            }
+        } finally {
+            deflater.end();
+        }
+        output.limit(output.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        output.putInt((int) crc.getValue());
+        output.putInt(inputSize);
+        return output.position();
+    }
+
+    @Override
+    public OutputStream encodingStream(OutputStream target) throws IOException {
+        return new GZIPOutputStream(target, STREAM_BUFFER_BYTES) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    @Override
+    public InputStream decodingStream(InputStream source) throws IOException {
+        return new GZIPInputStream(source, STREAM_BUFFER_BYTES);
+    }
+}
@@ -0,0 +1,51 @@
+package com.eventreceiver.batch.codec;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Codec that leaves batches uncompressed.
+ */
+public final class IdentityCodec implements BatchCodec {
+    public static final String NAME = "none";
+    public static final IdentityCodec INSTANCE = new IdentityCodec();
+
+    private IdentityCodec() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public String getFileExtension() {
+        return "";
+    }
+
+    @Override
+    public int encode(ByteBuffer source, ByteBuffer target) {
+        int size = source.remaining();
+        if (size > target.capacity()) {
+            return -1;
+        }
+        target.put(0, source, source.position(), size);
+        return size;
+    }
+
+    @Override
+    public OutputStream encodingStream(OutputStream target) {
+        return target;
+    }
+
+    @Override
+    public InputStream decodingStream(InputStream source) {
+        return source;
+    }
+}
@@ -0,0 +1,67 @@
+package com.eventreceiver.batch.codec;
+
+/**
+ * Codec of one customer tier together with the compression ratio observed on its batches.
+ * When the size limit applies to compressed objects, the ratio decides how many raw bytes a
+ * batch of the tier may collect so that its compressed form stays just under the limit.
+ */
+public class TierCompression {
+    // Keep estimated batches this far below the limit so ratio fluctuations rarely overshoot it
+    private static final double SAFETY_FACTOR = 0.9;
+    // Weight of the latest batch in the ratio estimate
+    private static final double SMOOTHING = 0.3;
+
+    private final BatchCodec codec;
+    private final long maxBatchSizeBytes;
+    private final long maxRawBatchSizeBytes;
+    private final boolean limitCompressedSize;
+    private volatile double compressionRatio = Double.NaN;
+
+    public TierCompression(BatchCodec codec, long maxBatchSizeBytes, long maxRawBatchSizeBytes,
+                           boolean limitCompressedSize) {
+        this.codec = codec;
+        this.maxBatchSizeBytes = maxBatchSizeBytes;
+        this.maxRawBatchSizeBytes = maxRawBatchSizeBytes;
+        this.limitCompressedSize = limitCompressedSize && codec != IdentityCodec.INSTANCE;
+    }
+
+    public BatchCodec getCodec() {
+        return codec;
+    }
+
+    public boolean isLimitCompressedSize() {
+        return limitCompressedSize;
+    }
+
+    /**
+     * @return The compressed size divided by the raw size, smoothed over recent batches,
+     *         or NaN before the first batch was compressed
+     */
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    /**
+     * @return The number of serialized bytes a new batch of this tier may collect
+     */
+    public long getRawBatchLimit() {
+        double ratio = compressionRatio;
+        if (!limitCompressedSize || Double.isNaN(ratio)) {
+            return maxBatchSizeBytes;
+        }
+        long estimate = (long) (maxBatchSizeBytes * SAFETY_FACTOR / ratio);
+        return Math.max(maxBatchSizeBytes / 2, Math.min(maxRawBatchSizeBytes, estimate));
+    }
+
+    /**
+     * Feeds the outcome of compressing a batch into the ratio estimate.
+     * 
+     * @param rawBytes The serialized size of the batch
+     * @param encodedBytes The compressed size of the batch
+     */
+    public void recordCompression(long rawBytes, long encodedBytes) {
+        double ratio = (double) encodedBytes / rawBytes;
+        double previous = compressionRatio;
+        compressionRatio = Double.isNaN(previous) ? ratio : previous + SMOOTHING * (ratio - previous);
+    }
+}
@@ -0,0 +1,72 @@
+package com.eventreceiver.batch.codec;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Zstandard codec. Direct buffers are compressed in place through JNI; heap buffers are copied
+ * into arrays first.
+ */
+public class ZstdCodec implements BatchCodec {
+    public static final String NAME = "zstd";
+    public static final int DEFAULT_LEVEL = 3;
+
+    private final int level;
+
+    public ZstdCodec(int level) {
+        if (level < Zstd.minCompressionLevel() || level > Zstd.maxCompressionLevel()) {
+            throw new IllegalArgumentException("zstd level must be between " + Zstd.minCompressionLevel()
+                + " and " + Zstd.maxCompressionLevel() + ", was " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return "zstd";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".zst";
+    }
+
+    @Override
+    public int encode(ByteBuffer source, ByteBuffer target) {
+        long size;
+        if (source.isDirect() && target.isDirect()) {
+            size = Zstd.compressDirectByteBuffer(target, 0, target.capacity(),
+                source, source.position(), source.remaining(), level);
+        } else {
+            byte[] input = new byte[source.remaining()];
+            source.duplicate().get(input);
+            byte[] output = new byte[target.capacity()];
+            size = Zstd.compressByteArray(output, 0, output.length, input, 0, input.length, level);
+            if (!Zstd.isError(size)) {
+                target.put(0, output, 0, (int) size);
+            }
+        }
+        return Zstd.isError(size) ? -1 : (int) size;
+    }
+
+    @Override
+    public OutputStream encodingStream(OutputStream target) throws IOException {
+        return new ZstdOutputStream(target, level);
+    }
+
+    @Override
+    public InputStream decodingStream(InputStream source) throws IOException {
+        return new ZstdInputStream(source);
+    }
+}
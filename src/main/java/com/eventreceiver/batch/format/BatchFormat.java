@@ -0,0 +1,49 @@
+package com.eventreceiver.batch.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Object format that batches are stored in.
+ * Formats whose objects are plain framed JSON are written directly while events are appended;
+ * transcoded formats collect newline-delimited JSON and convert it once the batch is sealed.
+ */
+public interface BatchFormat {
+    /**
+     * @return The name of the format as used in the configuration
+     */
+    String getName();
+
+    /**
+     * @return The Content-Type of stored objects
+     */
+    String getContentType();
+
+    /**
+     * @return The extension of stored object keys, e.g. ".ndjson"
+     */
+    String getFileExtension();
+
+    /**
+     * @return The layout of events in the batch buffer while the batch is open
+     */
+    RecordFraming getFraming();
+
+    /**
+     * @return true if sealed batches must be passed through {@link #transcode} before storage
+     */
+    default boolean isTranscoded() {
+        return false;
+    }
+
+    /**
+     * Converts a sealed batch from its framing into the stored format.
+     * 
+     * @param source The framed batch content
+     * @param target Receives the object in the stored format
+     */
+    default void transcode(ByteBuffer source, OutputStream target) throws IOException {
+        throw new UnsupportedOperationException(getName() + " batches are stored as framed");
+    }
+}
@@ -0,0 +1,54 @@
+package com.eventreceiver.batch.format;
+
+import com.eventreceiver.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the object format of each customer tier from app.batch.format and the per-tier
+ * overrides under app.batch.tiers.
+ */
+@Slf4j
+@Component
+public class BatchFormats {
+    private final AppConfig.BatchConfig batchConfig;
+    private final Map<String, BatchFormat> tierFormats = new ConcurrentHashMap<>();
+
+    public BatchFormats(AppConfig appConfig) {
+        this.batchConfig = appConfig.getBatch();
+        // fail fast on misconfigured tiers
+        batchConfig.getTiers().keySet().forEach(this::forTier);
+    }
+
+    /**
+     * @param tier The customer tier
+     * @return The format the tier's batches are stored in
+     */
+    public BatchFormat forTier(String tier) {
+        return tierFormats.computeIfAbsent(tier, this::createFormat);
+    }
+
+    private BatchFormat createFormat(String tier) {
+        AppConfig.TierBatchConfig tierConfig = batchConfig.getTiers().get(tier);
+        String name = tierConfig != null && tierConfig.getFormat() != null ? tierConfig.getFormat() : batchConfig.getFormat();
+        BatchFormat format;
+        switch (name.toLowerCase()) {
+            case JsonArrayFormat.NAME:
+                format = JsonArrayFormat.INSTANCE;
+                break;
+            case NdjsonFormat.NAME:
+                format = NdjsonFormat.INSTANCE;
+                break;
+            case AvroFormat.NAME:
+                format = AvroFormat.INSTANCE;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown batch format: " + name);
+        }
+        log.info("Using format {} for tier {}", format.getName(), tier);
+        return format;
+    }
+}
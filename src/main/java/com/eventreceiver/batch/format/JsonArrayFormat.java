@@ -0,0 +1,32 @@
+package com.eventreceiver.batch.format;
+
+/**
+ * Every batch is a single JSON array of events.
+ */
+public final class JsonArrayFormat implements BatchFormat {
+    public static final String NAME = "json";
+    public static final JsonArrayFormat INSTANCE = new JsonArrayFormat();
+
+    private JsonArrayFormat() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public RecordFraming getFraming() {
+        return RecordFraming.JSON_ARRAY;
+    }
+}
@@ -0,0 +1,33 @@
+package com.eventreceiver.batch.format;
+
+/**
+ * Format of flush manifests: a single JSON object indexing the batch objects of one flush.
+ * Manifests are written whole rather than appended to, so their framing is never used.
+ */
+public final class ManifestFormat implements BatchFormat {
+    public static final String NAME = "manifest";
+    public static final ManifestFormat INSTANCE = new ManifestFormat();
+
+    private ManifestFormat() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public RecordFraming getFraming() {
+        return RecordFraming.NEWLINE_DELIMITED;
+    }
+}
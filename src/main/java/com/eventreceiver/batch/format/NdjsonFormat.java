@@ -0,0 +1,33 @@
+package com.eventreceiver.batch.format;
+
+/**
+ * Newline-delimited JSON, one event per line. Readers can stream events without parsing the
+ * whole object and split objects at line boundaries for parallel reads.
+ */
+public final class NdjsonFormat implements BatchFormat {
+    public static final String NAME = "ndjson";
+    public static final NdjsonFormat INSTANCE = new NdjsonFormat();
+
+    private NdjsonFormat() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/x-ndjson";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".ndjson";
+    }
+
+    @Override
+    public RecordFraming getFraming() {
+        return RecordFraming.NEWLINE_DELIMITED;
+    }
+}
@@ -0,0 +1,34 @@
+package com.eventreceiver.batch.format;
+
+/**
+ * Format of packed objects: a one-line JSON header indexing the sections, followed by the
+ * encoded batches of several tiers, each in its own tier's format and codec. Packs are written
+ * whole rather than appended to, so their framing is never used.
+ */
+public final class PackFormat implements BatchFormat {
+    public static final String NAME = "pack";
+    public static final PackFormat INSTANCE = new PackFormat();
+
+    private PackFormat() {
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/octet-stream";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".pack";
+    }
+
+    @Override
+    public RecordFraming getFraming() {
+        return RecordFraming.NEWLINE_DELIMITED;
+    }
+}
@@ -0,0 +1,106 @@
+package com.eventreceiver.batch.format;
+
+import java.nio.ByteBuffer;
+
+/**
+ * How serialized events are laid out in a batch buffer while the batch is open.
+ * Every event is followed by one separator byte, so the size of a batch is always the header
+ * plus the sum of its event sizes plus one byte per event.
+ */
+public enum RecordFraming {
+    /**
+     * A JSON array: "[" header, "," after every event, and the last separator replaced by "]".
+     */
+    JSON_ARRAY((byte) ',', 1) {
+        @Override
+        public void writeHeader(ByteBuffer buffer) {
+            buffer.put(0, (byte) '[');
+        }
+
+        @Override
+        public void seal(ByteBuffer buffer, long sizeBytes) {
+            buffer.put((int) sizeBytes - 1, (byte) ']');
+        }
+    },
+    /**
+     * Newline-delimited JSON: no header and every event terminated by a newline.
+     */
+    NEWLINE_DELIMITED((byte) '\n', 0) {
+        @Override
+        public void writeHeader(ByteBuffer buffer) {
+        }
+
+        @Override
+        public void seal(ByteBuffer buffer, long sizeBytes) {
+        }
+    };
+
+    private final byte separator;
+    private final int headerBytes;
+
+    RecordFraming(byte separator, int headerBytes) {
+        this.separator = separator;
+        this.headerBytes = headerBytes;
+    }
+
+    public byte getSeparator() {
+        return separator;
+    }
+
+    public int getHeaderBytes() {
+        return headerBytes;
+    }
+
+    /**
+     * @return The size of a batch holding a single event of the given size
+     */
+    public long singleEventBatchBytes(long eventBytes) {
+        return headerBytes + eventBytes + 1;
+    }
+
+    /**
+     * Writes the header at the start of an empty batch buffer.
+     */
+    public abstract void writeHeader(ByteBuffer buffer);
+
+    /**
+     * Finishes a batch whose events occupy the first sizeBytes of the buffer.
+     */
+    public abstract void seal(ByteBuffer buffer, long sizeBytes);
+
+    /**
+     * Finds where an event starts in a framed batch. Events are compact JSON objects, so they
+     * are located by tracking object nesting outside of strings.
+     * 
+     * @param content The batch content, positioned at its first byte
+     * @param eventIndex The index of the event
+     * @return The offset of the event relative to the content position
+     */
+    public static int findEventOffset(ByteBuffer content, int eventIndex) {
+        int depth = 0;
+        int index = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = content.position(); i < content.limit(); i++) {
+            byte b = content.get(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                if (depth++ == 0 && index++ == eventIndex) {
+                    return i - content.position();
+                }
+            } else if (b == '}') {
+                depth--;
+            }
+        }
+        throw new IllegalStateException("Batch holds fewer than " + (eventIndex + 1) + " events");
+    }
+}
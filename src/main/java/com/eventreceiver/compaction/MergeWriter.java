@@ -0,0 +1,200 @@
+package com.eventreceiver.compaction;
+
+import com.eventreceiver.batch.format.AvroFormat;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.RecordFraming;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.DateTimeException;
+import java.time.Instant;
+
+/**
+ * Writes the events of several stored objects of one format into a single object of that
+ * format. Sources are streamed event by event, so only the parser's and the writer's buffers
+ * are held besides the merged object. While copying, the writer counts the events and tracks
+ * the range of their timestamps for the manifest of the merged object.
+ */
+abstract class MergeWriter implements Closeable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private int eventCount;
+    private long minEventMillis = Long.MAX_VALUE;
+    private long maxEventMillis = Long.MIN_VALUE;
+    private boolean untimedEvents;
+
+    /**
+     * @param format The format of the sources and the merged object
+     * @param target Receives the merged object; closed when the writer is closed
+     * @return A writer for the format
+     */
+    static MergeWriter create(BatchFormat format, OutputStream target) throws IOException {
+        if (format == AvroFormat.INSTANCE) {
+            return new AvroMergeWriter(target);
+        }
+        if (format.isTranscoded()) {
+            throw new IllegalArgumentException("Objects of format " + format.getName() + " cannot be merged");
+        }
+        return new JsonMergeWriter(format.getFraming(), target);
+    }
+
+    /**
+     * Copies the events of a decoded source object to the merged object.
+     *
+     * @param source The decoded content of the source object
+     */
+    abstract void append(InputStream source) throws IOException;
+
+    int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return true if the timestamps of all events are known
+     */
+    boolean hasEventTimes() {
+        return eventCount > 0 && !untimedEvents;
+    }
+
+    long getMinEventMillis() {
+        return minEventMillis;
+    }
+
+    long getMaxEventMillis() {
+        return maxEventMillis;
+    }
+
+    void recordEvent(long eventTimeMillis) {
+        eventCount++;
+        minEventMillis = Math.min(minEventMillis, eventTimeMillis);
+        maxEventMillis = Math.max(maxEventMillis, eventTimeMillis);
+    }
+
+    void recordUntimedEvent() {
+        eventCount++;
+        untimedEvents = true;
+    }
+
+    /**
+     * Merges framed JSON objects: the events of JSON arrays are written into one array, those of
+     * newline-delimited JSON one per line. Events are copied token by token, so their content
+     * is unchanged.
+     */
+    private static final class JsonMergeWriter extends MergeWriter {
+        private final RecordFraming framing;
+        private final JsonGenerator generator;
+
+        JsonMergeWriter(RecordFraming framing, OutputStream target) throws IOException {
+            this.framing = framing;
+            this.generator = JSON_FACTORY.createGenerator(target);
+            this.generator.setRootValueSeparator(null);
+            if (framing == RecordFraming.JSON_ARRAY) {
+                generator.writeStartArray();
+            }
+        }
+
+        @Override
+        void append(InputStream source) throws IOException {
+            try (JsonParser parser = JSON_FACTORY.createParser(source)) {
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token == JsonToken.START_ARRAY || token == JsonToken.END_ARRAY) {
+                        continue;
+                    }
+                    copyEvent(parser);
+                }
+            }
+        }
+
+        private void copyEvent(JsonParser parser) throws IOException {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                generator.copyCurrentStructure(parser);
+                endEvent();
+                recordUntimedEvent();
+                return;
+            }
+            long eventTimeMillis = Long.MIN_VALUE;
+            boolean timed = false;
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (Event.EVENT_TIMESTAMP_FIELD.equals(field) && value == JsonToken.VALUE_STRING) {
+                    try {
+                        eventTimeMillis = Event.EVENT_TIMESTAMP_FORMAT.parse(parser.getText(), Instant::from)
+                            .toEpochMilli();
+                        timed = true;
+                    } catch (DateTimeException e) {
+                        timed = false;
+                    }
+                }
+                generator.writeFieldName(field);
+                generator.copyCurrentStructure(parser);
+            }
+            generator.writeEndObject();
+            endEvent();
+            if (timed) {
+                recordEvent(eventTimeMillis);
+            } else {
+                recordUntimedEvent();
+            }
+        }
+
+        private void endEvent() throws IOException {
+            if (framing == RecordFraming.NEWLINE_DELIMITED) {
+                generator.writeRaw((char) framing.getSeparator());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (framing == RecordFraming.JSON_ARRAY) {
+                generator.writeEndArray();
+            }
+            generator.close();
+        }
+    }
+
+    /**
+     * Merges Avro object container files by appending the records of every source to a new
+     * container file with the event schema.
+     */
+    private static final class AvroMergeWriter extends MergeWriter {
+        private final DataFileWriter<GenericRecord> writer;
+        private GenericRecord record;
+
+        AvroMergeWriter(OutputStream target) throws IOException {
+            this.writer = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(AvroFormat.SCHEMA));
+            this.writer.create(AvroFormat.SCHEMA, target);
+        }
+
+        @Override
+        void append(InputStream source) throws IOException {
+            try (DataFileStream<GenericRecord> records = new DataFileStream<>(source,
+                    new GenericDatumReader<>(AvroFormat.SCHEMA))) {
+                while (records.hasNext()) {
+                    record = records.next(record);
+                    writer.append(record);
+                    recordEvent((Long) record.get(Event.EVENT_TIMESTAMP_FIELD));
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
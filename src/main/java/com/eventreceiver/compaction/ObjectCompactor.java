@@ -0,0 +1,330 @@
+package com.eventreceiver.compaction;
+
+import com.eventreceiver.batch.FlushManifest;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.codec.BatchCodec;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.codec.IdentityCodec;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.sink.StorageSink;
+import com.eventreceiver.sink.StoredObject;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the small objects that deadline flushes leave in closed event-time partitions into
+ * objects of about app.compaction.target-object-bytes, so quiet tiers and every additional
+ * instance do not multiply the number of objects readers have to list and open.
+ * <p>
+ * A partition is closed once its hour has ended and the grace period for late events has
+ * passed. Each pass looks at the closed partitions within the lookback window it has not yet
+ * compacted, lists the objects of every tier's current format and codec that are below
+ * app.compaction.small-object-bytes, and packs them into groups up to the target size. The
+ * objects of a group are decoded, merged event by event and encoded again as one stream, so
+ * memory is bounded by a single merged object, and groups are merged one at a time.
+ * <p>
+ * The merged object replaces its sources in three steps, each of which is atomic on its own:
+ * the merged object is stored, then its manifest, which lists the keys it replaces and is the
+ * point at which the swap is committed, and then the sources are deleted in one request. Without
+ * manifests, storing the merged object commits the swap.
+ * A failure before the commit deletes the merged object again and leaves the sources in place.
+ * A failure after it keeps the merged object and deletes the sources on the next pass. Readers
+ * therefore never miss events; at worst they see some twice for a short while, which the
+ * at-least-once delivery of the service already allows for. Objects are only ever merged by one
+ * compactor, so compaction must be enabled on a single instance, e.g. with the compactor profile.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.compaction", name = "enabled", havingValue = "true")
+public class ObjectCompactor {
+    private static final long MILLIS_PER_HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final StorageSink sink;
+    private final BatchFormats batchFormats;
+    private final BatchCodecs batchCodecs;
+    private final TierRegistry tierRegistry;
+    private final AppConfig.CompactionConfig config;
+    private final boolean writeManifests;
+    private final Set<String> compactedPartitions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<List<String>> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService scheduler;
+    private final Timer passTimer;
+    private final Counter mergedCounter;
+    private final Counter writtenCounter;
+    private final Counter failureCounter;
+
+    public ObjectCompactor(StorageSink sink, BatchFormats batchFormats, BatchCodecs batchCodecs,
+                           TierRegistry tierRegistry, AppConfig appConfig, MeterRegistry registry) {
+        this.sink = sink;
+        this.batchFormats = batchFormats;
+        this.batchCodecs = batchCodecs;
+        this.tierRegistry = tierRegistry;
+        this.config = appConfig.getCompaction();
+        this.writeManifests = appConfig.getBatch().isWriteManifests();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("compactor-"));
+
+        this.passTimer = Timer.builder("event.compaction.pass.duration")
+            .description("Time taken by a compaction pass over the closed partitions")
+            .register(registry);
+        this.mergedCounter = Counter.builder("event.compaction.objects.merged")
+            .description("Small objects replaced by merged objects")
+            .register(registry);
+        this.writtenCounter = Counter.builder("event.compaction.objects.written")
+            .description("Merged objects stored by the compactor")
+            .register(registry);
+        this.failureCounter = Counter.builder("event.compaction.failures")
+            .description("Merges that failed and were rolled back or left for the next pass to finish")
+            .register(registry);
+
+        scheduler.scheduleWithFixedDelay(this::runPass, config.getIntervalMillis(), config.getIntervalMillis(),
+            TimeUnit.MILLISECONDS);
+        log.info("Compacting objects below {} bytes into objects of up to {} bytes every {}ms, looking back {} hours",
+            config.getSmallObjectBytes(), config.getTargetObjectBytes(), config.getIntervalMillis(),
+            config.getLookbackHours());
+    }
+
+    private void runPass() {
+        try {
+            passTimer.record(() -> compact(System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            log.error("Compaction pass failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Runs a compaction pass over the partitions that are closed at the given time. A partition
+     * in which every merge succeeded is not looked at again by this instance.
+     *
+     * @param nowMillis The current time in epoch milliseconds
+     */
+    void compact(long nowMillis) {
+        retryPendingDeletes();
+        long closedBefore = nowMillis - TimeUnit.MINUTES.toMillis(config.getGraceMinutes());
+        Set<String> window = new LinkedHashSet<>();
+        for (CustomerTier tier : tierRegistry.getTiers()) {
+            for (int hours = 1; hours <= config.getLookbackHours(); hours++) {
+                window.add(StorageSink.partitionPrefix(tier.getName(), closedBefore - hours * MILLIS_PER_HOUR));
+            }
+        }
+        compactedPartitions.retainAll(window);
+        for (String partitionPrefix : window) {
+            if (!compactedPartitions.contains(partitionPrefix) && compactPartition(partitionPrefix)) {
+                compactedPartitions.add(partitionPrefix);
+            }
+        }
+    }
+
+    /**
+     * Merges the small objects of a partition.
+     *
+     * @return true if every merge of the partition succeeded
+     */
+    private boolean compactPartition(String partitionPrefix) {
+        String tier = StorageSink.tierOf(partitionPrefix);
+        BatchFormat format = batchFormats.forTier(tier);
+        BatchCodec codec = batchCodecs.forTier(tier).getCodec();
+        // objects written under an earlier format or codec configuration are left alone
+        List<StoredObject> candidates = sink.listObjects(partitionPrefix).stream()
+            .filter(object -> codecOf(object.getKey(), format, codec) != null)
+            .filter(object -> object.getSizeBytes() < config.getSmallObjectBytes())
+            .sorted(Comparator.comparing(StoredObject::getKey))
+            .toList();
+        boolean succeeded = true;
+        for (List<StoredObject> group : plan(candidates)) {
+            succeeded &= merge(tier, partitionPrefix, format, codec, group);
+        }
+        return succeeded;
+    }
+
+    /**
+     * Packs objects, in order, into groups whose total size stays within the target size and
+     * whose number of objects stays within the per-merge limit. Groups of a single object are
+     * dropped, as there is nothing to merge them with.
+     */
+    List<List<StoredObject>> plan(List<StoredObject> objects) {
+        List<List<StoredObject>> groups = new ArrayList<>();
+        List<StoredObject> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (StoredObject object : objects) {
+            if (!group.isEmpty() && (groupBytes + object.getSizeBytes() > config.getTargetObjectBytes()
+                    || group.size() == config.getMaxObjectsPerMerge())) {
+                if (group.size() > 1) {
+                    groups.add(group);
+                }
+                group = new ArrayList<>();
+                groupBytes = 0;
+            }
+            group.add(object);
+            groupBytes += object.getSizeBytes();
+        }
+        if (group.size() > 1) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    /**
+     * Merges a group of objects into one and swaps it in for them.
+     *
+     * @return true if the sources were replaced, or will be deleted on the next pass
+     */
+    private boolean merge(String tier, String partitionPrefix, BatchFormat format, BatchCodec codec,
+                          List<StoredObject> sources) {
+        List<String> sourceKeys = sources.stream().map(StoredObject::getKey).toList();
+        SealedBatch merged;
+        try {
+            merged = read(tier, format, codec, sources);
+        } catch (IOException | RuntimeException e) {
+            failureCounter.increment();
+            log.warn("Failed to merge {} objects of {}: {}", sources.size(), partitionPrefix, e.getMessage());
+            return false;
+        }
+
+        String key = StorageSink.objectKey(partitionPrefix, merged);
+        try {
+            sink.storeEvents(merged, key);
+        } catch (RuntimeException e) {
+            failureCounter.increment();
+            log.warn("Failed to store merged object {}: {}", key, e.getMessage());
+            return false;
+        }
+        if (writeManifests) {
+            try {
+                sink.storeEvents(FlushManifest.ofCompaction(merged, key, sourceKeys).toBatch(),
+                    StorageSink.manifestKey(tier));
+            } catch (RuntimeException e) {
+                failureCounter.increment();
+                log.warn("Failed to store the manifest of merged object {}, removing it again: {}", key,
+                    e.getMessage());
+                rollBack(key);
+                return false;
+            }
+        }
+        writtenCounter.increment();
+        mergedCounter.increment(sources.size());
+        try {
+            sink.deleteObjects(sourceKeys);
+        } catch (RuntimeException e) {
+            failureCounter.increment();
+            log.warn("Failed to delete {} objects replaced by {}, retrying on the next pass: {}", sourceKeys.size(),
+                key, e.getMessage());
+            pendingDeletes.add(sourceKeys);
+        }
+        log.debug("Merged {} objects of {} into {} with {} events and {} bytes", sources.size(), partitionPrefix, key,
+            merged.getEventCount(), merged.getSizeBytes());
+        return true;
+    }
+
+    /**
+     * Reads the sources one after another into a single object encoded with the tier's codec.
+     */
+    private SealedBatch read(String tier, BatchFormat format, BatchCodec codec, List<StoredObject> sources)
+            throws IOException {
+        long sourceBytes = sources.stream().mapToLong(StoredObject::getSizeBytes).sum();
+        MergeBuffer buffer = new MergeBuffer((int) Math.min(sourceBytes, config.getTargetObjectBytes()));
+        MergeWriter writer = MergeWriter.create(format, codec.encodingStream(buffer));
+        try (writer) {
+            for (StoredObject source : sources) {
+                BatchCodec sourceCodec = codecOf(source.getKey(), format, codec);
+                try (InputStream in = sourceCodec.decodingStream(sink.readObject(source.getKey()))) {
+                    writer.append(in);
+                }
+            }
+        }
+        ByteBuffer content = buffer.content();
+        SealedBatch merged = new SealedBatch(tier, format, writer.getEventCount(), content.remaining(), content,
+                b -> { })
+            .withEncodedContent(codec, content, content.remaining(), b -> { });
+        if (writer.hasEventTimes()) {
+            merged.setEventTimeRange(writer.getMinEventMillis(), writer.getMaxEventMillis());
+        }
+        return merged;
+    }
+
+    /**
+     * Batches that do not get smaller when encoded are stored as they are, so a partition holds
+     * objects with and without the codec's extension, and the smallest ones usually lack it.
+     *
+     * @return The codec the object was stored with, or null if it is not of the tier's format and codec
+     */
+    private static BatchCodec codecOf(String key, BatchFormat format, BatchCodec codec) {
+        if (codec != IdentityCodec.INSTANCE && key.endsWith(format.getFileExtension() + codec.getFileExtension())) {
+            return codec;
+        }
+        return key.endsWith(format.getFileExtension()) ? IdentityCodec.INSTANCE : null;
+    }
+
+    private void rollBack(String key) {
+        try {
+            sink.deleteObjects(List.of(key));
+        } catch (RuntimeException e) {
+            log.error("Failed to remove merged object {}, its events are stored twice: {}", key, e.getMessage());
+        }
+    }
+
+    private void retryPendingDeletes() {
+        for (int i = pendingDeletes.size(); i > 0; i--) {
+            List<String> keys = pendingDeletes.poll();
+            try {
+                sink.deleteObjects(keys);
+            } catch (RuntimeException e) {
+                log.warn("Failed again to delete {} merged objects: {}", keys.size(), e.getMessage());
+                pendingDeletes.add(keys);
+            }
+        }
+    }
+
+    /**
+     * Stops scheduling passes and lets a running merge finish.
+     */
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Output stream of the merged object that hands out its buffer without copying it.
+     */
+    private static final class MergeBuffer extends ByteArrayOutputStream {
+        MergeBuffer(int initialCapacity) {
+            super(Math.max(initialCapacity, 1024));
+        }
+
+        ByteBuffer content() {
+            return ByteBuffer.wrap(buf, 0, count).slice();
+        }
+    }
+}
@@ -4,25 +4,27 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import java.util.HashMap;
 import java.util.List;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.http.apache.ApacheHttpClient;
-import java.time.Duration;
-import org.springframework.context.event.ContextRefreshedEvent;
-import org.springframework.context.event.EventListener;
-import lombok.extern.slf4j.Slf4j;
-
-@Slf4j
+import java.util.Map;
+import com.eventreceiver.batch.BatchBufferPool;
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Data
 @Configuration
 @ConfigurationProperties(prefix = "app")
 public class AppConfig {
     private List<String> allowedCustomerTiers;
     private S3Config s3;
-    private BatchConfig batch;
+    private BatchConfig batch = new BatchConfig();
+    private UploadConfig upload = new UploadConfig();
+    private IngestConfig ingest = new IngestConfig();
+    private AsyncConfig async = new AsyncConfig();
+    private SpoolConfig spool = new SpoolConfig();
+    private AdmissionConfig admission = new AdmissionConfig();
+    private SinkConfig sink = new SinkConfig();
+    private ReactiveConfig reactive = new ReactiveConfig();
+    private CompactionConfig compaction = new CompactionConfig();
 
     @Data
     public static class S3Config {
@@ -30,38 +32,239 @@ public class AppConfig {
         private String region;
         private String accessKey;
         private String secretKey;
+        // Connections shared by all uploads and their parts
+        private int maxConnections = 64;
+        private long connectionTimeoutMillis = 5000;
+        private long connectionAcquisitionTimeoutMillis = 10000;
+        private long readTimeoutMillis = 30000;
+        private long writeTimeoutMillis = 30000;
+        // Batches of at least this size are uploaded as multipart uploads
+        private long multipartThresholdBytes = 8 * 1024 * 1024;
+        // At least 5MB, the smallest part S3 accepts
+        private long partSizeBytes = 8 * 1024 * 1024;
+        // Parts of one upload sent concurrently
+        private int maxParallelParts = 4;
+    }
+
+    @Data
+    public static class SinkConfig {
+        // s3, local or stub
+        private String type = "s3";
+        private LocalSinkConfig local = new LocalSinkConfig();
+        private StubSinkConfig stub = new StubSinkConfig();
+    }
+
+    @Data
+    public static class LocalSinkConfig {
+        private String directory = "data";
+        // Force every file to disk before the batch counts as stored
+        private boolean fsync = false;
+    }
+
+    @Data
+    public static class StubSinkConfig {
+        // Simulated PUT latency, uniformly spread by up to latencyJitterMillis
+        private long latencyMillis = 50;
+        private long latencyJitterMillis = 20;
+        // Simulated upload bandwidth per request; 0 for unlimited
+        private long bytesPerSecond = 0;
+        // Fraction of requests failed with a 503 Slow Down error
+        private double errorRate = 0.0;
+        // Keep stored objects in memory, for tests
+        private boolean retainObjects = false;
     }
 
     @Data
     public static class BatchConfig {
         private int maxBatchSizeBytes = 5 * 1024 * 1024; // 5MB
         private int maxBatchDelaySeconds = 5;
+        private int maxPooledBuffers = 8;
+        private boolean offHeapBuffers = true;
+        // json, ndjson or avro; tiers can override it below
+        private String format = "json";
+        // none, gzip or zstd; tiers can override it below
+        private String codec = "none";
+        private Integer codecLevel;
+        // Apply maxBatchSizeBytes to the compressed object instead of the serialized batch
+        private boolean limitCompressedSize = false;
+        // Upper bound on the serialized size of a batch when limitCompressedSize is set
+        private int maxRawBatchSizeBytes = 20 * 1024 * 1024; // 20MB
+        // Store a manifest indexing the objects of every flushed batch below tier={tier}/_manifests/
+        private boolean writeManifests = true;
+        private Map<String, TierBatchConfig> tiers = new HashMap<>();
+        private AdaptiveDelayConfig adaptiveDelay = new AdaptiveDelayConfig();
+        private PackingConfig packing = new PackingConfig();
+
+        /**
+         * @return The capacity of batch buffers, i.e. the largest serialized batch
+         */
+        public int getBufferCapacityBytes() {
+            return limitCompressedSize ? Math.max(maxBatchSizeBytes, maxRawBatchSizeBytes) : maxBatchSizeBytes;
+        }
+    }
+
+    @Data
+    public static class TierBatchConfig {
+        private String format;
+        private String codec;
+        private Integer codecLevel;
+        private Integer maxBatchDelaySeconds;
+    }
+
+    @Data
+    public static class PackingConfig {
+        // Store the batches of a deadline flush, and the small batches of other tiers, in one object; needs writeManifests
+        private boolean enabled = false;
+        // Batches larger than this are stored in objects of their own
+        private long maxSectionBytes = 1024 * 1024;
+    }
+
+    @Data
+    public static class AdaptiveDelayConfig {
+        // Tune each tier's flush delay from its observed upload latency instead of using it as is
+        private boolean enabled = false;
+        private long minDelayMillis = 1000;
+        private long maxDelayMillis = 30000;
+        // Target time from an event entering a batch to the batch being stored
+        private long latencySloMillis = 10000;
+    }
+
+    @Data
+    public static class IngestConfig {
+        // Append validated request bytes to batches instead of binding them to Event and re-encoding
+        private boolean rawPassthrough = true;
+        // Upper bound on the events of one bulk ingest request
+        private int maxBatchEvents = 10000;
+        // At most one warning per interval for each kind of rejected request; the rest are counted
+        private long rejectionLogIntervalMillis = 1000;
+    }
+
+    @Data
+    public static class UploadConfig {
+        private int concurrency = 4;
+        private int queueCapacity = 16;
+        // Relative share of upload bandwidth each tier gets while tiers compete; unlisted tiers get 1
+        private Map<String, Integer> tierWeights = new HashMap<>();
+        // Queued batches per tier, at most queueCapacity; unlisted tiers may use the whole queue
+        private Map<String, Integer> tierQueueCapacities = new HashMap<>();
+        private RetryConfig retry = new RetryConfig();
+        private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+        private HedgeConfig hedge = new HedgeConfig();
+        private FallbackConfig fallback = new FallbackConfig();
+    }
+
+    @Data
+    public static class RetryConfig {
+        // Attempts per batch, including the first one
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 1000;
+        private double backoffMultiplier = 2.0;
+        private long maxBackoffMillis = 30000;
+    }
+
+    @Data
+    public static class CircuitBreakerConfig {
+        private boolean enabled = true;
+        // Consecutive failed attempts that open the circuit
+        private int failureThreshold = 5;
+        // Time the circuit stays open before a single probe is let through
+        private long openMillis = 30000;
+    }
+
+    @Data
+    public static class HedgeConfig {
+        // Send a second request for an attempt that is slower than the given latency percentile
+        private boolean enabled = false;
+        private double percentile = 0.95;
+        // Lower bound on the hedging delay, also used until enough attempts have been timed
+        private long minDelayMillis = 200;
+        // Larger batches spend their time sending bytes, where a second request does not help
+        private long maxBatchBytes = 8 * 1024 * 1024;
+        // Hedged requests running at once; further ones are skipped
+        private int maxInFlight = 2;
+    }
+
+    @Data
+    public static class FallbackConfig {
+        // Write batches to a local directory while the sink's circuit is open or retries are exhausted
+        private boolean enabled = true;
+        private String directory = "fallback";
+        // How often stored fallback files are handed back to the sink
+        private long drainIntervalMillis = 10000;
+    }
+
+    @Data
+    public static class SpoolConfig {
+        // Write accepted events to a local write-ahead spool before acknowledging them
+        private boolean enabled = false;
+        private String directory = "spool";
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        // Longest the committer sleeps when no append wakes it up
+        private long maxCommitDelayMillis = 10;
+    }
+
+    @Data
+    public static class AdmissionConfig {
+        // Budget for batch buffers of open batches and pending uploads
+        private long maxBufferedBytes = 256L * 1024 * 1024;
+        // Fraction of the budget in use at which a tier starts being throttled; unlisted tiers get 1.0
+        private Map<String, Double> tierShares = new HashMap<>();
+        // Ingest quota of each tier; unlisted tiers are not rate limited
+        private Map<String, RateLimitConfig> tierRateLimits = new HashMap<>();
+        private int retryAfterSeconds = 1;
+    }
+
+    @Data
+    public static class RateLimitConfig {
+        // Sustained rate at which the tier's tokens are refilled
+        private double eventsPerSecond = 10000;
+        // Tokens the bucket holds, i.e. the events a tier may send at once after being idle
+        private long burstEvents = 20000;
+    }
+
+    @Data
+    public static class ReactiveConfig {
+        // Serve POST /api/v1/ingest on a separate non-blocking Reactor Netty server as well
+        private boolean enabled = false;
+        private int port = 8081;
+        // Largest single event body the reactive endpoint accepts
+        private int maxEventBytes = 16 * 1024 * 1024;
+        // Longest a request may stop reading its body while the memory budget is exhausted
+        private long maxStallMillis = 30000;
+    }
+
+    @Data
+    public static class CompactionConfig {
+        // Merge small objects of closed event-time partitions; enable on a single instance only
+        private boolean enabled = false;
+        private long intervalMillis = 10 * 60 * 1000;
+        // Merged objects are filled up to this size
+        private long targetObjectBytes = 5 * 1024 * 1024;
+        // Only objects smaller than this are merged
+        private long smallObjectBytes = 2 * 1024 * 1024;
+        // Sources of one merged object, at most 1000, the limit of a single DeleteObjects request
+        private int maxObjectsPerMerge = 1000;
+        // Time after the end of an hour before its partition counts as closed, for late events
+        private long graceMinutes = 30;
+        // Closed partitions older than this are not looked at
+        private int lookbackHours = 48;
+    }
+
+    @Data
+    public static class AsyncConfig {
+        // Platform threads for @Async event processing
+        private int corePoolSize = 8;
+        private int maxPoolSize = 32;
+        private int queueCapacity = 1000;
+        // Concurrent @Async tasks when running on virtual threads
+        private int maxConcurrency = 1000;
     }
 
     @Bean
-    public S3Client s3Client() {
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(s3.getAccessKey(), s3.getSecretKey());
-        return S3Client.builder()
-                .region(Region.of(s3.getRegion()))
-                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
-                .httpClient(ApacheHttpClient.builder()
-                    .connectionTimeout(Duration.ofSeconds(5))
-                    .socketTimeout(Duration.ofSeconds(5))
-                    .build())
-                .build();
-    }
-
-    @EventListener
-    public void onApplicationEvent(ContextRefreshedEvent event) {
-        try {
-            log.info("Verifying S3 bucket access...");
-            log.info("Bucket: {}, Region: {}", s3.getBucketName(), s3.getRegion());
-            
-            s3Client().headBucket(builder -> builder.bucket(s3.getBucketName()).build());
-            log.info("Successfully connected to S3 bucket: {}", s3.getBucketName());
-        } catch (Exception e) {
-            log.error("Failed to access S3 bucket: {}. Error: {}", s3.getBucketName(), e.getMessage());
-            throw new RuntimeException("Failed to access S3 bucket", e);
-        }
+    public BatchBufferPool batchBufferPool(MeterRegistry registry) {
+        BatchBufferPool pool = new BatchBufferPool(batch.getBufferCapacityBytes(), batch.getMaxPooledBuffers(),
+            batch.isOffHeapBuffers());
+        pool.bindTo(registry);
+        return pool;
     }
 } 
\ No newline at end of file
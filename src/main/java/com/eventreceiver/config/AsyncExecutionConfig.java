@@ -0,0 +1,89 @@
+package com.eventreceiver.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor for the @Async hand-off of events. By default it is a bounded pool of platform
+ * threads; when the queue is full the submitting request thread runs the task itself, which
+ * pushes back on clients instead of growing the backlog without limit.
+ * <p>
+ * With spring.threads.virtual.enabled on a Java 21+ runtime, Spring Boot runs Tomcat requests on
+ * virtual threads and @Async tasks run on virtual threads too, throttled to
+ * app.async.max-concurrency concurrent tasks. On older runtimes the flag is ignored with a warning.
+ */
+@Slf4j
+@Configuration
+public class AsyncExecutionConfig implements AsyncConfigurer {
+    private static final int VIRTUAL_THREADS_MIN_JAVA_VERSION = 21;
+
+    private final AppConfig.AsyncConfig asyncConfig;
+    private final MeterRegistry registry;
+    private final boolean virtualThreadsRequested;
+
+    public AsyncExecutionConfig(AppConfig appConfig, MeterRegistry registry,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsRequested) {
+        this.asyncConfig = appConfig.getAsync();
+        this.registry = registry;
+        this.virtualThreadsRequested = virtualThreadsRequested;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return eventAsyncExecutor();
+    }
+
+    @Bean
+    public Executor eventAsyncExecutor() {
+        if (virtualThreadsRequested) {
+            if (Runtime.version().feature() >= VIRTUAL_THREADS_MIN_JAVA_VERSION) {
+                return virtualThreadExecutor();
+            }
+            log.warn("spring.threads.virtual.enabled requires Java {}+, running on Java {}; using platform threads",
+                VIRTUAL_THREADS_MIN_JAVA_VERSION, Runtime.version().feature());
+        }
+        return platformThreadExecutor();
+    }
+
+    private Executor virtualThreadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("event-async-");
+        executor.setVirtualThreads(true);
+        // submitters block once the limit is reached, like the request threads of the platform pool
+        executor.setConcurrencyLimit(asyncConfig.getMaxConcurrency());
+        Gauge.builder("event.async.concurrency.limit", executor, SimpleAsyncTaskExecutor::getConcurrencyLimit)
+            .description("Maximum number of concurrent @Async event tasks")
+            .tag("threads", "virtual")
+            .register(registry);
+        log.info("Running @Async event processing on virtual threads, at most {} concurrent tasks",
+            asyncConfig.getMaxConcurrency());
+        return executor;
+    }
+
+    private Executor platformThreadExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("event-async-");
+        executor.setCorePoolSize(asyncConfig.getCorePoolSize());
+        executor.setMaxPoolSize(asyncConfig.getMaxPoolSize());
+        executor.setQueueCapacity(asyncConfig.getQueueCapacity());
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        Gauge.builder("event.async.concurrency.limit", executor, ThreadPoolTaskExecutor::getMaxPoolSize)
+            .description("Maximum number of concurrent @Async event tasks")
+            .tag("threads", "platform")
+            .register(registry);
+        Gauge.builder("event.async.queue.depth", executor, ThreadPoolTaskExecutor::getQueueSize)
+            .description("@Async event tasks waiting for a thread")
+            .register(registry);
+        return executor;
+    }
+}
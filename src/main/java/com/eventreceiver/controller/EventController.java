@@ -1,12 +1,22 @@
 package com.eventreceiver.controller;
 
+import com.eventreceiver.admission.Admission;
+import com.eventreceiver.admission.MemoryBudget;
+import com.eventreceiver.admission.TierRateLimiter;
 import com.eventreceiver.config.AppConfig;
-import com.eventreceiver.model.Event;
+import com.eventreceiver.exception.InvalidEventException;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.EncodedEventBatch;
+import com.eventreceiver.service.EventPayloadParser;
+import com.eventreceiver.logging.LogSampler;
 import com.eventreceiver.service.EventService;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
-import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -14,6 +24,8 @@ import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Slf4j
@@ -21,51 +33,233 @@ import java.util.Map;
 @RequestMapping("/api/v1")
 public class EventController {
     private static final String CUSTOMER_TIER_HEADER = "X-Customer-Tier";
+    private static final String OVERLOADED_MESSAGE = "Too many buffered events, retry later";
+    private static final String RATE_LIMITED_MESSAGE = "Ingest quota of the customer tier exceeded, retry later";
+    // responses that do not depend on the request are built once and shared, they are immutable
+    private static final ResponseEntity<Map<String, Object>> EVENT_ACCEPTED = ResponseEntity.accepted()
+        .body(Map.of("status", "success", "message", "Event accepted"));
+    private static final ResponseEntity<Map<String, Object>> UNAUTHORIZED_TIER = ResponseEntity.badRequest()
+        .body(Map.of("status", "error", "message", "Unauthorized customer tier"));
     private final AppConfig appConfig;
     private final EventService eventService;
+    private final EventPayloadParser eventPayloadParser;
+    private final MemoryBudget memoryBudget;
+    private final TierRateLimiter rateLimiter;
+    private final TierRegistry tierRegistry;
+    private final ResponseEntity<Map<String, Object>> throttledResponse;
+    private final ResponseEntity<Map<String, Object>> overloadedResponse;
+    private final LogSampler unauthorizedLogSampler;
+    private final LogSampler invalidLogSampler;
+    private final LogSampler rejectedLogSampler;
     private final Counter requestCounter;
     private final Counter filteredRequestCounter;
+    private final Counter rejectedEventCounter;
 
-    public EventController(AppConfig appConfig, EventService eventService, MeterRegistry registry) {
+    public EventController(AppConfig appConfig, EventService eventService, EventPayloadParser eventPayloadParser,
+                           MemoryBudget memoryBudget, TierRateLimiter rateLimiter, TierRegistry tierRegistry,
+                           MeterRegistry registry) {
         this.appConfig = appConfig;
         this.eventService = eventService;
+        this.eventPayloadParser = eventPayloadParser;
+        this.memoryBudget = memoryBudget;
+        this.rateLimiter = rateLimiter;
+        this.tierRegistry = tierRegistry;
+        int retryAfterSeconds = memoryBudget.getRetryAfterSeconds();
+        this.throttledResponse = rejectedResponse(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds, OVERLOADED_MESSAGE);
+        this.overloadedResponse = rejectedResponse(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+            OVERLOADED_MESSAGE);
+        Duration logInterval = Duration.ofMillis(appConfig.getIngest().getRejectionLogIntervalMillis());
+        this.unauthorizedLogSampler = new LogSampler(logInterval);
+        this.invalidLogSampler = new LogSampler(logInterval);
+        this.rejectedLogSampler = new LogSampler(logInterval);
         this.requestCounter = Counter.builder("event.requests.total")
                 .description("Total number of event requests received")
                 .register(registry);
         this.filteredRequestCounter = Counter.builder("event.requests.filtered")
                 .description("Number of filtered event requests")
                 .register(registry);
+        this.rejectedEventCounter = Counter.builder("event.rejected.total")
+                .description("Number of events rejected from bulk requests")
+                .register(registry);
     }
 
+    /**
+     * Accepts a single event for the given customer tier. The payload is validated with a
+     * streaming parse; in raw passthrough mode its compacted bytes are appended to the tier batch
+     * directly, otherwise it is bound to {@link com.eventreceiver.model.Event} and processed asynchronously.
+     * The tier header is resolved to its handle once, and responses other than validation errors
+     * are shared, so an accepted event allocates little beyond its payload.
+     */
     @PostMapping("/ingest")
-    public ResponseEntity<Map<String, String>> ingestEvent(
-            @Valid @RequestBody Event event,
+    public ResponseEntity<Map<String, Object>> ingestEvent(
+            @RequestBody byte[] payload,
             @RequestHeader(CUSTOMER_TIER_HEADER) String customerTier) {
         try {
             // count total requests
             requestCounter.increment();
 
             // check if customer tier is allowed
-            if (!appConfig.getAllowedCustomerTiers().contains(customerTier)) {
-                log.warn("Rejected event from unauthorized customer tier: {}", customerTier);
-                return ResponseEntity.badRequest().body(Map.of(
-                        "status", "error",
-                        "message", "Unauthorized customer tier"));
+            CustomerTier tier = resolveTier(customerTier);
+            if (tier == null) {
+                return UNAUTHORIZED_TIER;
             }
             // count total requests
             filteredRequestCounter.increment();
-            log.info("Received event from customer tier: {}", customerTier);
+            log.trace("Received event from customer tier: {}", tier);
+
+            // shed load before buffering anything once the memory budget is exhausted
+            Admission admission = memoryBudget.admit(tier);
+            if (admission != Admission.ADMITTED) {
+                return rejected(admission, tier);
+            }
 
-            // process event
-            eventService.processEvent(event, customerTier);
+            // validate the event; as on the bulk endpoint, only a valid event takes from the tier's quota
+            EncodedEvent event = eventPayloadParser.parse(payload);
+            admission = rateLimiter.admit(tier, 1);
+            if (admission != Admission.ADMITTED) {
+                return rateLimited(tier, 1);
+            }
+            if (appConfig.getIngest().isRawPassthrough()) {
+                eventService.processEncodedEvent(event, tier);
+            } else {
+                eventService.processEvent(eventPayloadParser.decode(event), tier);
+            }
 
-            return ResponseEntity.accepted().body(Map.of(
-                "status", "success",
-                "message", "Event accepted"));
+            return EVENT_ACCEPTED;
+        } catch (InvalidEventException e) {
+            long suppressed = invalidLogSampler.sample();
+            if (suppressed >= 0) {
+                log.warn("Rejected invalid event from customer tier {}: {} ({} similar warnings suppressed)",
+                    customerTier, e.getMessage(), suppressed);
+            }
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()));
         } catch (Exception e) {
             log.error("Error processing event: {}", e.getMessage());
             return ResponseEntity.internalServerError()
                 .body(Map.of("status", "error", "message", e.getMessage()));
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Accepts many events for the given customer tier in one request, either as a JSON array or
+     * as newline-delimited JSON. Events are validated one by one as they are read; invalid events
+     * are rejected individually and reported by their position, while the valid ones are appended
+     * to the tier batch together. A payload that is not well-formed JSON is rejected as a whole.
+     */
+    @PostMapping("/ingest/batch")
+    public ResponseEntity<Map<String, Object>> ingestEvents(
+            @RequestBody byte[] payload,
+            @RequestHeader(CUSTOMER_TIER_HEADER) String customerTier) {
+        try {
+            requestCounter.increment();
+            CustomerTier tier = resolveTier(customerTier);
+            if (tier == null) {
+                return UNAUTHORIZED_TIER;
+            }
+            filteredRequestCounter.increment();
+            Admission admission = memoryBudget.admit(tier);
+            if (admission != Admission.ADMITTED) {
+                return rejected(admission, tier);
+            }
+
+            EncodedEventBatch batch = eventPayloadParser.parseBatch(payload, appConfig.getIngest().getMaxBatchEvents());
+            if (log.isTraceEnabled()) {
+                log.trace("Received {} events from customer tier: {}", batch.getAcceptedCount(), tier);
+            }
+            if (batch.getAcceptedCount() > 0) {
+                // the quota is taken per event, so it can only be checked once the events are counted
+                admission = rateLimiter.admit(tier, batch.getAcceptedCount());
+                if (admission != Admission.ADMITTED) {
+                    return rateLimited(tier, batch.getAcceptedCount());
+                }
+                if (appConfig.getIngest().isRawPassthrough()) {
+                    eventService.processEncodedEvents(batch.getEvents(), tier);
+                } else {
+                    batch.getEvents().forEach(event ->
+                        eventService.processEvent(eventPayloadParser.decode(event), tier));
+                }
+            }
+            rejectedEventCounter.increment(batch.getRejectedCount());
+
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("status", batch.getRejectedCount() == 0 ? "success" : "partial");
+            response.put("accepted", batch.getAcceptedCount());
+            response.put("rejected", batch.getRejectedCount());
+            if (batch.getRejectedCount() > 0) {
+                response.put("errors", batch.getRejections().stream()
+                    .map(rejection -> Map.of("index", rejection.getIndex(), "message", rejection.getMessage()))
+                    .toList());
+            }
+            if (batch.getAcceptedCount() == 0) {
+                response.put("status", "error");
+                return ResponseEntity.badRequest().body(response);
+            }
+            return ResponseEntity.accepted().body(response);
+        } catch (InvalidEventException e) {
+            long suppressed = invalidLogSampler.sample();
+            if (suppressed >= 0) {
+                log.warn("Rejected invalid batch from customer tier {}: {} ({} similar warnings suppressed)",
+                    customerTier, e.getMessage(), suppressed);
+            }
+            return ResponseEntity.badRequest().body(Map.of(
+                    "status", "error",
+                    "message", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error processing events: {}", e.getMessage());
+            return ResponseEntity.internalServerError()
+                .body(Map.of("status", "error", "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Returns the shared response for a request turned away by the memory budget: 429 when only
+     * the tier is throttled, 503 when the whole budget is in use, both with a Retry-After header.
+     */
+    private ResponseEntity<Map<String, Object>> rejected(Admission admission, CustomerTier tier) {
+        logRejected(admission, tier);
+        return admission == Admission.THROTTLED ? throttledResponse : overloadedResponse;
+    }
+
+    /**
+     * Returns 429 for a request over its tier's ingest quota, with a Retry-After header of the
+     * time until the tier's bucket holds tokens for its events again.
+     */
+    private ResponseEntity<Map<String, Object>> rateLimited(CustomerTier tier, int events) {
+        logRejected(Admission.RATE_LIMITED, tier);
+        return rejectedResponse(HttpStatus.TOO_MANY_REQUESTS, rateLimiter.retryAfterSeconds(tier, events),
+            RATE_LIMITED_MESSAGE);
+    }
+
+    private void logRejected(Admission admission, CustomerTier tier) {
+        long suppressed = rejectedLogSampler.sample();
+        if (suppressed >= 0) {
+            log.warn("Rejected request from customer tier {}: {} ({} similar warnings suppressed)", tier,
+                admission.getDescription(), suppressed);
+        }
+    }
+
+
+    /**
+     * @return The handle of the customer tier, or null if the tier is not allowed
+     */
+    private CustomerTier resolveTier(String customerTier) {
+        CustomerTier tier = tierRegistry.resolve(customerTier);
+        if (tier == null) {
+            long suppressed = unauthorizedLogSampler.sample();
+            if (suppressed >= 0) {
+                log.warn("Rejected event from unauthorized customer tier: {} ({} similar warnings suppressed)",
+                    customerTier, suppressed);
+            }
+        }
+        return tier;
+    }
+
+    private static ResponseEntity<Map<String, Object>> rejectedResponse(HttpStatus status, int retryAfterSeconds,
+                                                                        String message) {
+        return ResponseEntity.status(status)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(Map.of("status", "error", "message", message));
+    }
+}
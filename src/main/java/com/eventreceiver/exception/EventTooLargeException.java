@@ -0,0 +1,12 @@
+package com.eventreceiver.exception;
+
+/**
+ * Thrown when an ingested payload exceeds the size limit of the endpoint receiving it.
+ */
+public class EventTooLargeException extends InvalidEventException {
+    private static final long serialVersionUID = 1L;
+
+    public EventTooLargeException(String message) {
+        super(message);
+    }
+}
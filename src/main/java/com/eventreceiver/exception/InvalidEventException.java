@@ -0,0 +1,16 @@
+package com.eventreceiver.exception;
+
+/**
+ * Thrown when an ingested payload is not a valid event.
+ */
+public class InvalidEventException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public InvalidEventException(String message) {
+        super(message);
+    }
+
+    public InvalidEventException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
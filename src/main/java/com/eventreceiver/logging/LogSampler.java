@@ -0,0 +1,38 @@
+package com.eventreceiver.logging;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets through at most one log message per interval and counts the ones it suppresses, for
+ * warnings that can be triggered by every request, such as rejected tiers or invalid payloads.
+ * A flood of bad requests then costs an atomic read and an increment per request instead of a
+ * formatted log line, while the log still shows that it happens and how often.
+ */
+public final class LogSampler {
+    private final long intervalNanos;
+    private final AtomicLong nextLogNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.nextLogNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Decides whether the caller should log its message.
+     *
+     * @return The number of messages suppressed since the last one that was logged, or -1 if this
+     *         message should be suppressed too
+     */
+    public long sample() {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next < 0 || !nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            suppressed.increment();
+            return -1;
+        }
+        return suppressed.sumThenReset();
+    }
+}
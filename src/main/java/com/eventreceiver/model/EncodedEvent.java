@@ -0,0 +1,19 @@
+package com.eventreceiver.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * A validated event kept in its serialized form: a range of compact UTF-8 JSON bytes, ready to be
+ * appended to a batch as-is, together with the event timestamp parsed during validation.
+ */
+@Getter
+@RequiredArgsConstructor
+public class EncodedEvent {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+    private final Instant eventTimestamp;
+}
@@ -0,0 +1,46 @@
+package com.eventreceiver.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of validating a bulk ingest request: the events that passed validation, in
+ * request order, and the rejected ones. Only the first MAX_REPORTED_REJECTIONS rejections keep
+ * their message, so a request full of bad events cannot blow up the response.
+ */
+@Getter
+public class EncodedEventBatch {
+    public static final int MAX_REPORTED_REJECTIONS = 100;
+
+    private final List<EncodedEvent> events = new ArrayList<>();
+    private final List<Rejection> rejections = new ArrayList<>();
+    private int rejectedCount;
+
+    public void accept(EncodedEvent event) {
+        events.add(event);
+    }
+
+    public void reject(int index, String message) {
+        if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+            rejections.add(new Rejection(index, message));
+        }
+        rejectedCount++;
+    }
+
+    public int getAcceptedCount() {
+        return events.size();
+    }
+
+    /**
+     * A rejected event and the reason, identified by its position in the request.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Rejection {
+        private final int index;
+        private final String message;
+    }
+}
@@ -6,12 +6,22 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 @Data
 public class Event {
+    public static final String EVENT_TIMESTAMP_FIELD = "event_timestamp";
+    public static final String BODY_FIELD = "body";
+    public static final String EVENT_TIMESTAMP_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+    public static final String EVENT_TIMESTAMP_TIMEZONE = "Asia/Kolkata";
+    public static final DateTimeFormatter EVENT_TIMESTAMP_FORMAT = DateTimeFormatter
+        .ofPattern(EVENT_TIMESTAMP_PATTERN)
+        .withZone(ZoneId.of(EVENT_TIMESTAMP_TIMEZONE));
+
     @NotNull(message = "event_timestamp is required")
-    @JsonProperty("event_timestamp")
-    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "Asia/Kolkata")
+    @JsonProperty(EVENT_TIMESTAMP_FIELD)
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = EVENT_TIMESTAMP_PATTERN, timezone = EVENT_TIMESTAMP_TIMEZONE)
     private Instant eventTimestamp;
 
     @NotBlank(message = "body is required")
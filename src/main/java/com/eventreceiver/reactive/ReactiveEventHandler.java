@@ -0,0 +1,258 @@
+package com.eventreceiver.reactive;
+
+import com.eventreceiver.admission.Admission;
+import com.eventreceiver.admission.MemoryBudget;
+import com.eventreceiver.admission.TierRateLimiter;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.exception.EventTooLargeException;
+import com.eventreceiver.exception.InvalidEventException;
+import com.eventreceiver.logging.LogSampler;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.service.EventPayloadParser;
+import com.eventreceiver.service.EventService;
+import com.eventreceiver.service.StreamingEventParser;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking counterpart of {@code POST /api/v1/ingest} in
+ * {@link com.eventreceiver.controller.EventController}, with the same tier filtering, ingest
+ * quotas, admission control, validation and responses. The body is not aggregated: every chunk is
+ * validated and compacted by a {@link StreamingEventParser} as it arrives, so a slow client holds
+ * no thread while it uploads, and an invalid body is rejected without reading the rest of it.
+ * <p>
+ * Chunks are requested one at a time, and before each one the memory budget is checked again.
+ * While the tier has no room, reading stops, so the socket's receive window fills and the client
+ * is slowed down by TCP instead of the service buffering more; a body stalled for longer than
+ * app.reactive.max-stall-millis fails with 503. Only the final append and the wait for the spool
+ * run on a worker thread, as they may block.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "true")
+public class ReactiveEventHandler {
+    static final String CUSTOMER_TIER_HEADER = "X-Customer-Tier";
+    private static final String OVERLOADED_MESSAGE = "Too many buffered events, retry later";
+    private static final String RATE_LIMITED_MESSAGE = "Ingest quota of the customer tier exceeded, retry later";
+    private static final Duration BUDGET_POLL_INTERVAL = Duration.ofMillis(10);
+
+    private final AppConfig appConfig;
+    private final EventService eventService;
+    private final EventPayloadParser eventPayloadParser;
+    private final MemoryBudget memoryBudget;
+    private final TierRateLimiter rateLimiter;
+    private final TierRegistry tierRegistry;
+    private final ObjectMapper objectMapper;
+    private final Duration maxStall;
+    private final String retryAfter;
+    private final byte[] acceptedBody;
+    private final byte[] unauthorizedBody;
+    private final byte[] overloadedBody;
+    private final byte[] rateLimitedBody;
+    private final LogSampler unauthorizedLogSampler;
+    private final LogSampler invalidLogSampler;
+    private final LogSampler rejectedLogSampler;
+    private final Counter requestCounter;
+    private final Counter filteredRequestCounter;
+    private final Counter stalledCounter;
+
+    public ReactiveEventHandler(AppConfig appConfig, EventService eventService, EventPayloadParser eventPayloadParser,
+                                MemoryBudget memoryBudget, TierRateLimiter rateLimiter, TierRegistry tierRegistry,
+                                ObjectMapper objectMapper, MeterRegistry registry) {
+        this.appConfig = appConfig;
+        this.eventService = eventService;
+        this.eventPayloadParser = eventPayloadParser;
+        this.memoryBudget = memoryBudget;
+        this.rateLimiter = rateLimiter;
+        this.tierRegistry = tierRegistry;
+        this.objectMapper = objectMapper;
+        this.maxStall = Duration.ofMillis(appConfig.getReactive().getMaxStallMillis());
+        this.retryAfter = String.valueOf(memoryBudget.getRetryAfterSeconds());
+        this.acceptedBody = json("success", "Event accepted");
+        this.unauthorizedBody = json("error", "Unauthorized customer tier");
+        this.overloadedBody = json("error", OVERLOADED_MESSAGE);
+        this.rateLimitedBody = json("error", RATE_LIMITED_MESSAGE);
+        Duration logInterval = Duration.ofMillis(appConfig.getIngest().getRejectionLogIntervalMillis());
+        this.unauthorizedLogSampler = new LogSampler(logInterval);
+        this.invalidLogSampler = new LogSampler(logInterval);
+        this.rejectedLogSampler = new LogSampler(logInterval);
+        // same meters as the servlet endpoint, so both count into one series
+        this.requestCounter = Counter.builder("event.requests.total")
+                .description("Total number of event requests received")
+                .register(registry);
+        this.filteredRequestCounter = Counter.builder("event.requests.filtered")
+                .description("Number of filtered event requests")
+                .register(registry);
+        this.stalledCounter = Counter.builder("event.reactive.stalls")
+                .description("Times the reactive endpoint stopped reading a body because the memory budget was exhausted")
+                .register(registry);
+    }
+
+    /**
+     * Accepts a single event for the customer tier of the X-Customer-Tier header.
+     */
+    public Mono<ServerResponse> ingestEvent(ServerRequest request) {
+        requestCounter.increment();
+        String customerTier = request.headers().firstHeader(CUSTOMER_TIER_HEADER);
+        CustomerTier tier = tierRegistry.resolve(customerTier);
+        if (tier == null) {
+            long suppressed = unauthorizedLogSampler.sample();
+            if (suppressed >= 0) {
+                log.warn("Rejected event from unauthorized customer tier: {} ({} similar warnings suppressed)",
+                    customerTier, suppressed);
+            }
+            return respond(HttpStatus.BAD_REQUEST, unauthorizedBody);
+        }
+        filteredRequestCounter.increment();
+
+        // shed load before reading anything once the memory budget is exhausted
+        Admission admission = memoryBudget.admit(tier);
+        if (admission != Admission.ADMITTED) {
+            return rejected(admission, tier);
+        }
+
+        int maxEventBytes = appConfig.getReactive().getMaxEventBytes();
+        long contentLength = request.headers().contentLength().orElse(-1);
+        if (contentLength > maxEventBytes) {
+            return invalid(tier, new EventTooLargeException("Event exceeds " + maxEventBytes + " bytes"));
+        }
+        StreamingEventParser eventParser = eventPayloadParser.streamingParser(contentLength, maxEventBytes);
+        return request.bodyToFlux(DataBuffer.class)
+            .concatMap(chunk -> awaitBudget(tier)
+                .then(Mono.fromRunnable(() -> feed(eventParser, chunk)))
+                .doFinally(signal -> DataBufferUtils.release(chunk)), 1)
+            .then(Mono.fromCallable(eventParser::finish))
+            .flatMap(event -> {
+                // only a valid event takes from the tier's quota, as on the servlet endpoints
+                if (rateLimiter.admit(tier, 1) != Admission.ADMITTED) {
+                    return rateLimited(tier, 1);
+                }
+                return Mono.fromRunnable(() -> process(event, tier))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(Mono.defer(() -> respond(HttpStatus.ACCEPTED, acceptedBody)));
+            })
+            .onErrorResume(InvalidEventException.class, e -> invalid(tier, e))
+            .onErrorResume(TimeoutException.class, e -> {
+                log.warn("Rejected request from customer tier {}: body stalled on the memory budget for {}",
+                    tier, maxStall);
+                return rejected(HttpStatus.SERVICE_UNAVAILABLE, overloadedBody);
+            })
+            .onErrorResume(e -> {
+                log.error("Error processing event: {}", e.getMessage());
+                return respond(HttpStatus.INTERNAL_SERVER_ERROR, json("error", String.valueOf(e.getMessage())));
+            });
+    }
+
+    /**
+     * Completes right away while the tier has room in the memory budget, otherwise once it has,
+     * without requesting further chunks of the body meanwhile.
+     */
+    private Mono<Void> awaitBudget(CustomerTier tier) {
+        if (memoryBudget.hasRoom(tier)) {
+            return Mono.empty();
+        }
+        stalledCounter.increment();
+        return Flux.interval(BUDGET_POLL_INTERVAL)
+            .filter(tick -> memoryBudget.hasRoom(tier))
+            .next()
+            .timeout(maxStall)
+            .then();
+    }
+
+    private static void feed(StreamingEventParser eventParser, DataBuffer chunk) {
+        try (DataBuffer.ByteBufferIterator buffers = chunk.readableByteBuffers()) {
+            while (buffers.hasNext()) {
+                ByteBuffer buffer = buffers.next();
+                eventParser.feed(buffer);
+            }
+        }
+    }
+
+    private void process(EncodedEvent event, CustomerTier tier) {
+        if (appConfig.getIngest().isRawPassthrough()) {
+            eventService.processEncodedEvent(event, tier);
+        } else {
+            eventService.processEvent(eventPayloadParser.decode(event), tier);
+        }
+    }
+
+    private Mono<ServerResponse> invalid(CustomerTier tier, InvalidEventException e) {
+        long suppressed = invalidLogSampler.sample();
+        if (suppressed >= 0) {
+            log.warn("Rejected invalid event from customer tier {}: {} ({} similar warnings suppressed)",
+                tier, e.getMessage(), suppressed);
+        }
+        HttpStatus status = e instanceof EventTooLargeException ? HttpStatus.PAYLOAD_TOO_LARGE : HttpStatus.BAD_REQUEST;
+        return respond(status, json("error", e.getMessage()));
+    }
+
+    private Mono<ServerResponse> rejected(Admission admission, CustomerTier tier) {
+        logRejected(admission, tier);
+        return admission == Admission.THROTTLED
+            ? rejected(HttpStatus.TOO_MANY_REQUESTS, overloadedBody)
+            : rejected(HttpStatus.SERVICE_UNAVAILABLE, overloadedBody);
+    }
+
+    /**
+     * Rejects a request over its tier's ingest quota, telling the client to retry once the
+     * tier's bucket holds tokens for its events again.
+     */
+    private Mono<ServerResponse> rateLimited(CustomerTier tier, int events) {
+        logRejected(Admission.RATE_LIMITED, tier);
+        return rejected(HttpStatus.TOO_MANY_REQUESTS, rateLimitedBody,
+            String.valueOf(rateLimiter.retryAfterSeconds(tier, events)));
+    }
+
+    private void logRejected(Admission admission, CustomerTier tier) {
+        long suppressed = rejectedLogSampler.sample();
+        if (suppressed >= 0) {
+            log.warn("Rejected request from customer tier {}: {} ({} similar warnings suppressed)",
+                tier, admission.getDescription(), suppressed);
+        }
+    }
+
+    private Mono<ServerResponse> rejected(HttpStatus status, byte[] body) {
+        return rejected(status, body, retryAfter);
+    }
+
+    private static Mono<ServerResponse> rejected(HttpStatus status, byte[] body, String retryAfter) {
+        return ServerResponse.status(status)
+            .header(HttpHeaders.RETRY_AFTER, retryAfter)
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(body);
+    }
+
+    private static Mono<ServerResponse> respond(HttpStatus status, byte[] body) {
+        return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+    }
+
+    private byte[] json(String status, String message) {
+        try {
+            return objectMapper.writeValueAsBytes(Map.of("status", status, "message", message));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize response", e);
+        }
+    }
+}
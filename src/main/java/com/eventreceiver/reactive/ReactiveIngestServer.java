@@ -0,0 +1,74 @@
+package com.eventreceiver.reactive;
+
+import com.eventreceiver.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+/**
+ * Reactor Netty server for the {@link ReactiveEventHandler}, on app.reactive.port next to the
+ * servlet container, which keeps serving every endpoint on server.port. It is started once the
+ * context is refreshed and stopped before the batching components shut down, so events it
+ * accepted are still flushed.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.reactive", name = "enabled", havingValue = "true")
+public class ReactiveIngestServer implements SmartLifecycle {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ReactiveEventHandler eventHandler;
+    private final int port;
+    private volatile DisposableServer server;
+
+    public ReactiveIngestServer(ReactiveEventHandler eventHandler, AppConfig appConfig) {
+        this.eventHandler = eventHandler;
+        this.port = appConfig.getReactive().getPort();
+    }
+
+    @Override
+    public void start() {
+        RouterFunction<ServerResponse> routes = RouterFunctions.route(POST("/api/v1/ingest"), eventHandler::ingestEvent);
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(routes);
+        server = HttpServer.create()
+            .port(port)
+            .handle(new ReactorHttpHandlerAdapter(httpHandler))
+            .bindNow();
+        log.info("Reactive ingest endpoint listening on port {}", server.port());
+    }
+
+    @Override
+    public void stop() {
+        DisposableServer current = server;
+        if (current != null) {
+            log.info("Shutting down reactive ingest endpoint");
+            current.disposeNow(SHUTDOWN_TIMEOUT);
+            server = null;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * @return The port the server is bound to, or -1 if it is not running
+     */
+    public int getPort() {
+        DisposableServer current = server;
+        return current != null ? current.port() : -1;
+    }
+}
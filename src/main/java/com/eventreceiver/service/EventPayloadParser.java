@@ -0,0 +1,255 @@
+package com.eventreceiver.service;
+
+import com.eventreceiver.exception.InvalidEventException;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.EncodedEventBatch;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Validates ingested event payloads with a single streaming pass instead of binding them to
+ * {@link Event}. The checks mirror the constraints on {@link Event}: a JSON object with a
+ * required event_timestamp in the configured pattern, a non-blank body and no other fields.
+ * A valid payload is compacted in place and kept as bytes, so it can be appended to a batch
+ * without being decoded and encoded again.
+ */
+@Component
+public class EventPayloadParser {
+    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+
+    public EventPayloadParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Validates a single event payload.
+     * 
+     * @param payload The raw request body; insignificant whitespace is stripped in place
+     * @return The validated event
+     * @throws InvalidEventException if the payload is not a valid event
+     */
+    public EncodedEvent parse(byte[] payload) {
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new InvalidEventException("Event must be a JSON object");
+            }
+            EncodedEvent event = readEvent(parser, payload);
+            if (parser.nextToken() != null) {
+                throw new InvalidEventException("Unexpected content after event");
+            }
+            return event;
+        } catch (JsonProcessingException e) {
+            throw new InvalidEventException("Malformed event JSON", e);
+        } catch (IOException e) {
+            throw new InvalidEventException("Failed to read event", e);
+        }
+    }
+
+    /**
+     * Validates the events of a bulk payload, either a JSON array of events or newline-delimited
+     * events, one at a time as they are read. Invalid events are rejected individually; a payload
+     * that is not well-formed JSON is rejected as a whole, so no event of it is ever appended.
+     * 
+     * @param payload The raw request body; valid events are compacted in place
+     * @param maxEvents The maximum number of events, valid or not, in the payload
+     * @return The accepted events and the rejections
+     * @throws InvalidEventException if the payload is malformed or holds too many events
+     */
+    public EncodedEventBatch parseBatch(byte[] payload, int maxEvents) {
+        EncodedEventBatch batch = new EncodedEventBatch();
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            int index = 0;
+            while (token != null && token != JsonToken.END_ARRAY) {
+                if (index == maxEvents) {
+                    throw new InvalidEventException("Batch exceeds " + maxEvents + " events");
+                }
+                readBatchEvent(parser, payload, index++, batch);
+                token = parser.nextToken();
+            }
+            if (array && (token == null || parser.nextToken() != null)) {
+                throw new InvalidEventException("Events must be a single JSON array");
+            }
+            return batch;
+        } catch (JsonProcessingException e) {
+            throw new InvalidEventException("Malformed event JSON", e);
+        } catch (IOException e) {
+            throw new InvalidEventException("Failed to read events", e);
+        }
+    }
+
+    /**
+     * Validates one element of a bulk payload and leaves the parser on its last token, even if
+     * it is rejected.
+     */
+    private void readBatchEvent(JsonParser parser, byte[] payload, int index, EncodedEventBatch batch)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            batch.reject(index, "Event must be a JSON object");
+            return;
+        }
+        JsonStreamContext container = parser.getParsingContext().getParent();
+        try {
+            batch.accept(readEvent(parser, payload));
+        } catch (InvalidEventException e) {
+            // skip the rest of the event; the enclosing context is only current again after its end
+            while (parser.getParsingContext() != container) {
+                if (parser.currentToken() != null && parser.currentToken().isStructStart()) {
+                    parser.skipChildren();
+                }
+                parser.nextToken();
+            }
+            batch.reject(index, e.getMessage());
+        }
+    }
+
+    /**
+     * Validates the event object the parser is positioned on and leaves the parser on its
+     * closing brace.
+     * 
+     * @param parser Parser over source, positioned on the START_OBJECT of the event
+     * @param source The byte array the parser reads from; the event's range is compacted in place
+     * @return The validated event, referencing its range within source
+     * @throws InvalidEventException if the object is not a valid event
+     */
+    public EncodedEvent readEvent(JsonParser parser, byte[] source) throws IOException {
+        int start = (int) parser.currentTokenLocation().getByteOffset();
+        Instant eventTimestamp = null;
+        boolean hasBody = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (Event.EVENT_TIMESTAMP_FIELD.equals(field)) {
+                eventTimestamp = readEventTimestamp(parser, value);
+            } else if (Event.BODY_FIELD.equals(field)) {
+                hasBody = readBody(parser, value);
+            } else {
+                throw new InvalidEventException("Unknown field: " + field);
+            }
+        }
+        if (eventTimestamp == null) {
+            throw new InvalidEventException("event_timestamp is required");
+        }
+        if (!hasBody) {
+            throw new InvalidEventException("body is required");
+        }
+        int end = (int) parser.currentLocation().getByteOffset();
+        return new EncodedEvent(source, start, compact(source, start, end), eventTimestamp);
+    }
+
+    /**
+     * Starts validating a single event payload that arrives in chunks, see {@link StreamingEventParser}.
+     * 
+     * @param expectedBytes The size of the payload if known, e.g. from Content-Length, or -1
+     * @param maxBytes The largest payload to accept
+     * @return A parser for one payload
+     */
+    public StreamingEventParser streamingParser(long expectedBytes, int maxBytes) {
+        try {
+            return new StreamingEventParser(jsonFactory.createNonBlockingByteArrayParser(), expectedBytes, maxBytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create a non-blocking JSON parser", e);
+        }
+    }
+
+    /**
+     * Binds a validated event to the {@link Event} model.
+     * 
+     * @param event A validated event
+     * @return The decoded event
+     */
+    public Event decode(EncodedEvent event) {
+        try {
+            return objectMapper.readValue(event.getBytes(), event.getOffset(), event.getLength(), Event.class);
+        } catch (IOException e) {
+            throw new InvalidEventException("Malformed event JSON", e);
+        }
+    }
+
+    static Instant readEventTimestamp(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw new InvalidEventException("event_timestamp must be a string");
+        }
+        Instant eventTimestamp = EventTimestampParser.parse(parser.getTextCharacters(), parser.getTextOffset(),
+            parser.getTextLength());
+        if (eventTimestamp != null) {
+            return eventTimestamp;
+        }
+        try {
+            return Instant.from(Event.EVENT_TIMESTAMP_FORMAT.parse(parser.getText()));
+        } catch (DateTimeParseException e) {
+            throw new InvalidEventException("event_timestamp must match " + Event.EVENT_TIMESTAMP_PATTERN, e);
+        }
+    }
+
+    /**
+     * @return true if the body is present and not blank, using the same notion of blank as
+     *         {@code @NotBlank}, without materializing the body as a String
+     */
+    static boolean readBody(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        if (value != JsonToken.VALUE_STRING) {
+            throw new InvalidEventException("body must be a string");
+        }
+        char[] text = parser.getTextCharacters();
+        int end = parser.getTextOffset() + parser.getTextLength();
+        for (int i = parser.getTextOffset(); i < end; i++) {
+            if (text[i] > ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes insignificant whitespace from a range of valid JSON by shifting it left in place.
+     * JSON strings cannot contain raw control characters, so the result is always a single line.
+     * 
+     * @return The length of the compacted range
+     */
+    private static int compact(byte[] bytes, int start, int end) {
+        int write = start;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int read = start; read < end; read++) {
+            byte b = bytes[read];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                continue;
+            }
+            bytes[write++] = b;
+        }
+        return write - start;
+    }
+}
@@ -1,7 +1,15 @@
 package com.eventreceiver.service;
 
+import com.eventreceiver.model.EncodedEvent;
 import com.eventreceiver.model.Event;
+import com.eventreceiver.tier.CustomerTier;
+
+import java.util.List;
 
 public interface EventService {
-    void processEvent(Event event, String customerTier);
-} 
\ No newline at end of file
+    void processEvent(Event event, CustomerTier customerTier);
+
+    void processEncodedEvent(EncodedEvent event, CustomerTier customerTier);
+
+    void processEncodedEvents(List<EncodedEvent> events, CustomerTier customerTier);
+}
@@ -0,0 +1,114 @@
+package com.eventreceiver.service;
+
+import com.eventreceiver.model.Event;
+
+import java.time.Instant;
+import java.time.chrono.IsoChronology;
+import java.time.zone.ZoneRules;
+
+/**
+ * Parses event timestamps in the exact form of {@link Event#EVENT_TIMESTAMP_PATTERN} straight from
+ * the parser's character buffer, without the intermediate objects of {@link
+ * java.time.format.DateTimeFormatter#parse}, which account for most of the garbage of validating a
+ * small event. Only unambiguous values are handled: anything the formatter would have to resolve,
+ * reject or explain is left to it, so the results are the same as with the formatter.
+ */
+final class EventTimestampParser {
+    private static final int LENGTH = "yyyy-MM-ddTHH:mm:ss.SSSZ".length();
+    private static final long DAYS_0000_TO_1970 = 719528L;
+    private static final long SECONDS_PER_DAY = 86400L;
+
+    // the zone's offset is constant after its last transition, which is all the fast path supports
+    private static final long FIXED_SINCE_EPOCH_SECOND;
+    private static final int OFFSET_SECONDS;
+
+    static {
+        ZoneRules rules = Event.EVENT_TIMESTAMP_FORMAT.getZone().getRules();
+        Instant now = Instant.now();
+        if (rules.isFixedOffset()) {
+            FIXED_SINCE_EPOCH_SECOND = Long.MIN_VALUE;
+        } else if (rules.nextTransition(now) == null) {
+            FIXED_SINCE_EPOCH_SECOND = rules.previousTransition(now) == null
+                ? Long.MIN_VALUE
+                : rules.previousTransition(now).getInstant().getEpochSecond() + SECONDS_PER_DAY;
+        } else {
+            // daylight saving time ahead, every timestamp goes through the formatter
+            FIXED_SINCE_EPOCH_SECOND = Long.MAX_VALUE;
+        }
+        OFFSET_SECONDS = rules.getOffset(now).getTotalSeconds();
+    }
+
+    private EventTimestampParser() {
+    }
+
+    /**
+     * @param text Buffer holding the timestamp string
+     * @param offset Offset of the timestamp in the buffer
+     * @param length Length of the timestamp
+     * @return The instant, or null if the timestamp has to be parsed by the formatter
+     */
+    static Instant parse(char[] text, int offset, int length) {
+        if (length != LENGTH || text[offset + 4] != '-' || text[offset + 7] != '-' || text[offset + 10] != 'T'
+                || text[offset + 13] != ':' || text[offset + 16] != ':' || text[offset + 19] != '.'
+                || text[offset + 23] != 'Z') {
+            return null;
+        }
+        int year = digits(text, offset, 4);
+        int month = digits(text, offset + 5, 2);
+        int day = digits(text, offset + 8, 2);
+        int hour = digits(text, offset + 11, 2);
+        int minute = digits(text, offset + 14, 2);
+        int second = digits(text, offset + 17, 2);
+        int millis = digits(text, offset + 20, 3);
+        // digits() returns -1 for a non-digit, so every field is checked from below as well
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return null;
+        }
+        long epochSecond = epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second
+            - OFFSET_SECONDS;
+        if (epochSecond < FIXED_SINCE_EPOCH_SECOND) {
+            return null;
+        }
+        return Instant.ofEpochSecond(epochSecond, millis * 1_000_000L);
+    }
+
+    /**
+     * @return The value of a run of ASCII digits, or -1 if any of the characters is not a digit
+     */
+    private static int digits(char[] text, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = text[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> IsoChronology.INSTANCE.isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Same as {@link java.time.LocalDate#toEpochDay()}, for positive years, without creating the date.
+     */
+    private static long epochDay(long year, long month, long day) {
+        long total = 365 * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!IsoChronology.INSTANCE.isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
@@ -0,0 +1,178 @@
+package com.eventreceiver.service;
+
+import com.eventreceiver.exception.EventTooLargeException;
+import com.eventreceiver.exception.InvalidEventException;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.model.Event;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Validates a single event payload chunk by chunk as it is received, with the same rules and
+ * messages as {@link EventPayloadParser#parse}. Each chunk goes through a non-blocking JSON parser
+ * and is then appended, compacted, to the event's bytes, so the only copy of the body that is
+ * kept is the one that will be appended to the batch, and an invalid payload is rejected at the
+ * first chunk that shows it, without reading the rest.
+ * <p>
+ * Instances hold the state of one payload and are not thread-safe; chunks have to be fed in order.
+ */
+public class StreamingEventParser {
+    private static final int MIN_CAPACITY = 256;
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final int maxBytes;
+    // the current chunk, which the parser reads until it asks for more input
+    private byte[] input = new byte[0];
+    private byte[] bytes;
+    private int length;
+    private long receivedBytes;
+    // compaction state, carried over from one chunk to the next
+    private boolean inString;
+    private boolean escaped;
+    // validation state
+    private boolean started;
+    private String field;
+    private Instant eventTimestamp;
+    private boolean hasBody;
+    private boolean complete;
+
+    StreamingEventParser(JsonParser parser, long expectedBytes, int maxBytes) {
+        this.parser = parser;
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        this.maxBytes = maxBytes;
+        this.bytes = new byte[(int) Math.min(maxBytes, Math.max(MIN_CAPACITY, expectedBytes))];
+    }
+
+    /**
+     * Validates and takes in the next chunk of the payload.
+     *
+     * @param chunk The chunk; its content is consumed
+     * @throws InvalidEventException if the payload received so far cannot be a valid event
+     */
+    public void feed(ByteBuffer chunk) {
+        int chunkBytes = chunk.remaining();
+        receivedBytes += chunkBytes;
+        if (receivedBytes > maxBytes) {
+            throw new EventTooLargeException("Event exceeds " + maxBytes + " bytes");
+        }
+        if (input.length < chunkBytes) {
+            input = new byte[chunkBytes];
+        }
+        chunk.get(input, 0, chunkBytes);
+        try {
+            feeder.feedInput(input, 0, chunkBytes);
+            advance();
+        } catch (JsonProcessingException e) {
+            throw new InvalidEventException("Malformed event JSON", e);
+        } catch (IOException e) {
+            throw new InvalidEventException("Failed to read event", e);
+        }
+        compact(input, chunkBytes);
+    }
+
+    /**
+     * Completes validation once the whole payload has been fed.
+     *
+     * @return The validated event
+     * @throws InvalidEventException if the payload is not a valid event
+     */
+    public EncodedEvent finish() {
+        try {
+            feeder.endOfInput();
+            advance();
+            parser.close();
+        } catch (JsonProcessingException e) {
+            throw new InvalidEventException("Malformed event JSON", e);
+        } catch (IOException e) {
+            throw new InvalidEventException("Failed to read event", e);
+        }
+        if (!started) {
+            throw new InvalidEventException("Event must be a JSON object");
+        }
+        if (!complete) {
+            throw new InvalidEventException("Malformed event JSON");
+        }
+        return new EncodedEvent(bytes, 0, length, eventTimestamp);
+    }
+
+    /**
+     * Handles the tokens of the input fed so far. Both fields reject objects and arrays as values,
+     * so a valid event never nests and every token is at the top level of the event object.
+     */
+    private void advance() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (complete) {
+                throw new InvalidEventException("Unexpected content after event");
+            }
+            if (!started) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new InvalidEventException("Event must be a JSON object");
+                }
+                started = true;
+            } else if (field == null) {
+                if (token == JsonToken.END_OBJECT) {
+                    complete();
+                } else {
+                    field = parser.currentName();
+                    if (!Event.EVENT_TIMESTAMP_FIELD.equals(field) && !Event.BODY_FIELD.equals(field)) {
+                        throw new InvalidEventException("Unknown field: " + field);
+                    }
+                }
+            } else {
+                if (Event.EVENT_TIMESTAMP_FIELD.equals(field)) {
+                    eventTimestamp = EventPayloadParser.readEventTimestamp(parser, token);
+                } else {
+                    hasBody = EventPayloadParser.readBody(parser, token);
+                }
+                field = null;
+            }
+        }
+    }
+
+    private void complete() {
+        if (eventTimestamp == null) {
+            throw new InvalidEventException("event_timestamp is required");
+        }
+        if (!hasBody) {
+            throw new InvalidEventException("body is required");
+        }
+        complete = true;
+    }
+
+    /**
+     * Appends a chunk of valid JSON to the event's bytes without insignificant whitespace, like
+     * {@link EventPayloadParser}, growing them as needed.
+     */
+    private void compact(byte[] chunk, int chunkBytes) {
+        if (bytes.length - length < chunkBytes) {
+            long capacity = Math.max(bytes.length * 2L, length + (long) chunkBytes);
+            bytes = Arrays.copyOf(bytes, (int) Math.min(maxBytes, capacity));
+        }
+        for (int read = 0; read < chunkBytes; read++) {
+            byte b = chunk[read];
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                continue;
+            }
+            bytes[length++] = b;
+        }
+    }
+}
@@ -1,53 +1,67 @@
 package com.eventreceiver.service.impl;
 
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.BatchUploader;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.TierBatch;
+import com.eventreceiver.batch.TierBuffer;
+import com.eventreceiver.batch.TierFlushScheduler;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.model.EncodedEvent;
 import com.eventreceiver.model.Event;
 import com.eventreceiver.service.EventService;
-import com.eventreceiver.service.S3Service;
+import com.eventreceiver.spool.EventSpool;
+import com.eventreceiver.spool.SpoolReceipt;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
-import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import jakarta.annotation.PreDestroy;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
 public class EventServiceImpl implements EventService {
-    private final S3Service s3Service;
-    private final Map<String, List<Event>> batchBuffer;
-    private final Counter batchCounter;
+    private static final int MAX_RETAINED_SCRATCH_BYTES = 1024 * 1024;
+
+    private final Consumer<SealedBatch> submitBatch;
+    private final EventSpool eventSpool;
+    private final ObjectMapper objectMapper;
+    private final TierBuffer[] batchBuffer;
+    private final ThreadLocal<ScratchOutputStream> scratchBuffers;
     private final Counter eventCounter;
     private final Timer processingTimer;
     private final Counter errorCounter;
-    private ScheduledExecutorService scheduler;
-
-    @Value("${app.batch.max-batch-size-bytes}")
-    private long maxBatchSizeBytes;
-
-    @Value("${app.batch.max-batch-delay-seconds}")
-    private int maxBatchDelaySeconds;
 
-    public EventServiceImpl(S3Service s3Service, MeterRegistry registry) {
-        this.s3Service = s3Service;
-        this.batchBuffer = new ConcurrentHashMap<>();
+    public EventServiceImpl(BatchUploader batchUploader, BatchBufferPool bufferPool, BatchCodecs batchCodecs,
+                            BatchFormats batchFormats, EventSpool eventSpool, TierFlushScheduler flushScheduler,
+                            TierRegistry tierRegistry, ObjectMapper objectMapper, MeterRegistry registry) {
+        this.submitBatch = batchUploader::submit;
+        this.eventSpool = eventSpool;
+        this.objectMapper = objectMapper;
+        // one buffer per allowed tier, registered with the flush scheduler so events that do not
+        // fill a batch are flushed on their deadline
+        this.batchBuffer = new TierBuffer[tierRegistry.size()];
+        for (CustomerTier tier : tierRegistry.getTiers()) {
+            TierBuffer tierBuffer = new TierBuffer(tier.getName(), batchFormats.forTier(tier.getName()), bufferPool,
+                batchCodecs.forTier(tier.getName())::getRawBatchLimit);
+            flushScheduler.register(tierBuffer);
+            batchBuffer[tier.getIndex()] = tierBuffer;
+        }
+        this.scratchBuffers = ThreadLocal.withInitial(ScratchOutputStream::new);
         
         // Initialize metrics
-        this.batchCounter = Counter.builder("event.batches.total")
-            .description("Total number of batches processed")
-            .register(registry);
-        log.info("Registered metric: event.batches.total with registry: {}", registry.getClass().getName());
-            
         this.eventCounter = Counter.builder("event.processed.total")
             .description("Total number of events processed")
             .register(registry);
@@ -69,128 +83,154 @@ public class EventServiceImpl implements EventService {
         );
     }
 
-    /**
-     * Initializes the batch processing scheduler. Creates a single-threaded scheduler that runs
-     * processBatches() every maxBatchDelaySeconds. This ensures events are processed periodically
-     * even if they don't reach the size limit.
-     */
-    @PostConstruct
-    public void init() {
-        this.scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(
-            this::processBatches,
-            maxBatchDelaySeconds,
-            maxBatchDelaySeconds,
-            TimeUnit.SECONDS
-        );
-        log.info("Initialized batch scheduler with delay: {} seconds", maxBatchDelaySeconds);
-    }
-
     /**
      * Processes an incoming event by adding it to a batch buffer for the specified customer tier.
-     * The event is processed asynchronously and will be stored in S3 when either:
+     * The event is processed asynchronously and will be handed to the batch uploader when either:
      * 1. The batch size reaches maxBatchSizeBytes
-     * 2. The scheduled batch processor runs (every maxBatchDelaySeconds)
+     * 2. The oldest event of the tier's batch has waited for the tier's flush delay
+     * A batch is sealed before an event that would push it over maxBatchSizeBytes is added,
+     * so only a single event that is larger than the limit on its own can exceed it.
+     * The event is serialized into a reused per-thread scratch buffer and copied straight into
+     * the tier batch, which already holds the JSON that will be uploaded.
+     * Appends are lock-free; full batches are swapped out atomically and submitted without
+     * blocking other producers of the tier. As the request was acknowledged already, this path
+     * cannot make the event durable first, so the spool refuses to start together with it and its
+     * appends here return receipts without a hold.
+     * Apart from the event itself, nothing is allocated per event once the batch buffers and the
+     * thread's scratch buffer are warm.
      * 
      * @param event The event to be processed
      * @param customerTier The customer tier for batch grouping
      */
     @Override
     @Async
-    public void processEvent(Event event, String customerTier) {
-        processingTimer.record(() -> {
-            try {
-                List<Event> batch = batchBuffer.computeIfAbsent(customerTier, k -> new ArrayList<>());
-                synchronized (batch) {
-                    batch.add(event);
-                    eventCounter.increment();
-
-                    if (calculateBatchSize(batch) >= maxBatchSizeBytes) {
-                        List<Event> batchToProcess = new ArrayList<>(batch);
-                        batch.clear();
-                        processBatch(customerTier, batchToProcess);
-                    }
-                }
-            } catch (Exception e) {
-                errorCounter.increment();
-                log.error("Error processing event: {}", e.getMessage());
-                throw e;
-            }
-        });
+    public void processEvent(Event event, CustomerTier customerTier) {
+        long start = System.nanoTime();
+        try {
+            ScratchOutputStream scratch = serialize(event);
+            SpoolReceipt receipt = eventSpool.append(customerTier.getName(), scratch.buffer(), 0, scratch.size());
+            long eventTimeMillis = event.getEventTimestamp() != null
+                ? event.getEventTimestamp().toEpochMilli()
+                : TierBatch.UNKNOWN_EVENT_TIME;
+            batchBuffer[customerTier.getIndex()].append(scratch.buffer(), 0, scratch.size(), eventTimeMillis,
+                receipt.getHold(), submitBatch);
+            eventCounter.increment();
+            releaseScratch(scratch);
+        } catch (Exception e) {
+            errorCounter.increment();
+            log.error("Error processing event: {}", e.getMessage());
+            throw e;
+        } finally {
+            processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
-     * Periodically checks all customer tiers for pending events and processes them.
-     * This method is called by the scheduler at fixed intervals to ensure events
-     * are processed even if they don't reach the size limit.
+     * Appends an event that has already been validated and serialized, typically the compacted
+     * request body, to the batch buffer for the specified customer tier. The bytes are copied into
+     * the batch as-is, so the event is never decoded into an {@link Event}. The append is a bounded
+     * copy into a pre-allocated buffer and runs on the calling thread.
+     * With the spool enabled the event is written to it first, and the call returns only once the
+     * spool has been synced to disk, so an acknowledged event survives a crash.
+     * 
+     * @param event The validated event
+     * @param customerTier The customer tier for batch grouping
      */
-    private void processBatches() {
-        for (String tier : batchBuffer.keySet()) {
-            List<Event> batchToProcess = null;
-            synchronized (batchBuffer) {
-                List<Event> currentBatch = batchBuffer.get(tier);
-                if (currentBatch != null && !currentBatch.isEmpty()) {
-                    batchToProcess = new ArrayList<>(currentBatch);
-                    currentBatch.clear();
-                }
-            }
-            
-            if (batchToProcess != null) {
-                processBatch(tier, batchToProcess);
-            }
+    @Override
+    public void processEncodedEvent(EncodedEvent event, CustomerTier customerTier) {
+        long start = System.nanoTime();
+        try {
+            SpoolReceipt receipt = eventSpool.append(customerTier.getName(), event.getBytes(), event.getOffset(),
+                event.getLength());
+            batchBuffer[customerTier.getIndex()].append(event.getBytes(), event.getOffset(), event.getLength(),
+                TierBatch.eventTimeMillis(event), receipt.getHold(), submitBatch);
+            eventSpool.awaitDurable(receipt);
+            eventCounter.increment();
+        } catch (Exception e) {
+            errorCounter.increment();
+            log.error("Error processing event: {}", e.getMessage());
+            throw e;
+        } finally {
+            processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     * Processes a batch of events for a specific customer tier by storing them in S3.
-     * Increments the batch counter and logs the processing result.
+     * Appends the validated events of a bulk request to the batch buffer for the specified customer
+     * tier. The events reserve space in the tier batch together, so a request costs one atomic
+     * update per batch it spans rather than one per event. They are spooled the same way, and the
+     * call returns once the whole run is on disk.
      * 
-     * @param tier The customer tier for the batch
-     * @param batch The list of events to process
+     * @param events The validated events, in request order
+     * @param customerTier The customer tier for batch grouping
      */
-    private void processBatch(String tier, List<Event> batch) {
+    @Override
+    public void processEncodedEvents(List<EncodedEvent> events, CustomerTier customerTier) {
+        long start = System.nanoTime();
         try {
-            s3Service.storeEvents(batch, tier);
-            batchCounter.increment();
-            log.info("Processed batch of {} events for tier {}. Current batch count: {}", 
-                batch.size(), tier, batchCounter.count());
+            TierBuffer tierBuffer = batchBuffer[customerTier.getIndex()];
+            List<SpoolReceipt> receipts = new ArrayList<>(1);
+            int index = 0;
+            while (index < events.size()) {
+                SpoolReceipt receipt = eventSpool.appendAll(customerTier.getName(), events, index);
+                int end = index + receipt.getEventCount();
+                tierBuffer.appendAll(events.subList(index, end), receipt.getHold(), submitBatch);
+                receipts.add(receipt);
+                index = end;
+            }
+            receipts.forEach(eventSpool::awaitDurable);
+            eventCounter.increment(events.size());
         } catch (Exception e) {
             errorCounter.increment();
-            log.error("Error storing batch for tier {}: {}", tier, e.getMessage());
+            log.error("Error processing events: {}", e.getMessage());
+            throw e;
+        } finally {
+            processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
     /**
-     * Calculates the approximate size of a batch in bytes.
-     * Uses a simple calculation based on event body length plus overhead.
+     * Serializes an event into the calling thread's scratch buffer.
      * 
-     * @param batch The list of events to calculate size for
-     * @return The approximate size of the batch in bytes
+     * @param event The event to serialize
+     * @return The scratch buffer holding the UTF-8 encoded JSON of the event
+     */
+    private ScratchOutputStream serialize(Event event) {
+        ScratchOutputStream scratch = scratchBuffers.get();
+        scratch.reset();
+        try {
+            objectMapper.writeValue(scratch, event);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize event", e);
+        }
+        return scratch;
+    }
+
+    /**
+     * Drops scratch buffers that grew past MAX_RETAINED_SCRATCH_BYTES for a large event,
+     * so every thread does not keep a multi-megabyte buffer alive.
      */
-    private long calculateBatchSize(List<Event> batch) {
-        return batch.stream()
-            .mapToLong(event -> event.getBody().length() + 50) // 50 bytes for timestamp and overhead
-            .sum();
+    private void releaseScratch(ScratchOutputStream scratch) {
+        if (scratch.capacity() > MAX_RETAINED_SCRATCH_BYTES) {
+            scratchBuffers.remove();
+        }
     }
 
     /**
-     * Gracefully shuts down the batch scheduler when the application is stopping.
-     * Attempts to complete any pending tasks before shutting down.
-     * Forces shutdown if tasks don't complete within 5 seconds.
+     * Byte array output stream that exposes its internal buffer so the serialized event can be
+     * copied into a batch without an intermediate array.
      */
-    @PreDestroy
-    public void cleanup() {
-        if (scheduler != null) {
-            log.info("Shutting down batch scheduler");
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
+    private static final class ScratchOutputStream extends ByteArrayOutputStream {
+        ScratchOutputStream() {
+            super(4096);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
         }
     }
 } 
\ No newline at end of file
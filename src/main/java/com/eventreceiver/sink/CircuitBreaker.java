@@ -0,0 +1,103 @@
+package com.eventreceiver.sink;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Circuit breaker in front of a storage sink. The circuit opens after failureThreshold
+ * consecutive failed attempts, and while it is open no attempts are made. Once openDuration has
+ * passed a single probe is let through: if it succeeds the circuit closes, otherwise it opens
+ * again for another openDuration.
+ * <p>
+ * Every {@link #tryAcquire()} that returns true must be followed by {@link #onSuccess()} or
+ * {@link #onFailure()}. Attempts made without acquiring, such as hedged requests, report their
+ * result as well.
+ */
+@Slf4j
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Counter openedCounter;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param name Name of the sink, used as the sink tag of the meters
+     * @param failureThreshold Consecutive failures that open the circuit
+     * @param openDuration Time the circuit stays open before a probe
+     * @param registry Registry for the state gauge and the counter of openings
+     */
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration, MeterRegistry registry) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        Gauge.builder("event.sink.circuit.state", this, breaker -> breaker.getState().ordinal())
+            .description("State of the sink's circuit breaker: 0 closed, 1 half-open, 2 open")
+            .tag("sink", name)
+            .register(registry);
+        this.openedCounter = Counter.builder("event.sink.circuit.opened")
+            .description("Times the sink's circuit breaker opened")
+            .tag("sink", name)
+            .register(registry);
+    }
+
+    /**
+     * @return Whether an attempt may be made now
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        if (state != State.CLOSED) {
+            log.info("Circuit of sink {} closed", name);
+            state = State.CLOSED;
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            if (state == State.CLOSED) {
+                log.warn("Circuit of sink {} opened after {} consecutive failures", name, consecutiveFailures);
+            }
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            probing = false;
+            openedCounter.increment();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
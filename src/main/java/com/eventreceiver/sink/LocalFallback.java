@@ -0,0 +1,150 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.codec.BatchCodec;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.codec.IdentityCodec;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.batch.format.ManifestFormat;
+import com.eventreceiver.batch.format.PackFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local directory that takes the batches the storage sink cannot store, in the same key layout.
+ * Files are forced to disk, so a diverted batch is durable and its events can leave the spool.
+ * {@link #drain} hands the files back to the sink, under their original keys, once it accepts
+ * requests again. Files left from an earlier run are drained as well.
+ */
+@Slf4j
+class LocalFallback {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final LocalFileSink files;
+    private final BatchFormats batchFormats;
+    private final BatchCodecs batchCodecs;
+    private final AtomicLong pendingFiles = new AtomicLong();
+    private final Counter divertedCounter;
+    private final Counter drainedCounter;
+
+    LocalFallback(Path directory, BatchFormats batchFormats, BatchCodecs batchCodecs, MeterRegistry registry) {
+        this.directory = directory;
+        this.files = new LocalFileSink(directory, true);
+        this.batchFormats = batchFormats;
+        this.batchCodecs = batchCodecs;
+        this.pendingFiles.set(listFiles().size());
+        Gauge.builder("event.sink.fallback.pending", pendingFiles, AtomicLong::get)
+            .description("Batches in the local fallback directory waiting to be handed back to the sink")
+            .register(registry);
+        this.divertedCounter = Counter.builder("event.sink.fallback.diverted")
+            .description("Batches written to the local fallback directory instead of the sink")
+            .register(registry);
+        this.drainedCounter = Counter.builder("event.sink.fallback.drained")
+            .description("Batches handed back from the local fallback directory to the sink")
+            .register(registry);
+        log.info("Diverting batches the sink cannot store to {}, {} pending", directory.toAbsolutePath(),
+            pendingFiles.get());
+    }
+
+    /**
+     * Writes a batch to the fallback directory and forces it to disk.
+     *
+     * @throws UncheckedIOException if the file could not be written
+     */
+    void store(SealedBatch batch, String key) {
+        files.storeEvents(batch, key);
+        pendingFiles.incrementAndGet();
+        divertedCounter.increment();
+    }
+
+    long getPendingFiles() {
+        return pendingFiles.get();
+    }
+
+    /**
+     * Stores the fallback files in the sink and deletes them, until the circuit breaker refuses
+     * an attempt or an attempt fails.
+     *
+     * @param sink The storage sink
+     * @param circuitBreaker The sink's circuit breaker
+     */
+    void drain(StorageSink sink, CircuitBreaker circuitBreaker) {
+        for (Path file : listFiles()) {
+            String key = directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+            SealedBatch batch;
+            try {
+                batch = read(file, key);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Skipping unreadable fallback file {}: {}", file, e.getMessage());
+                continue;
+            }
+            if (!circuitBreaker.tryAcquire()) {
+                return;
+            }
+            try {
+                sink.storeEvents(batch, key);
+                circuitBreaker.onSuccess();
+            } catch (RuntimeException e) {
+                circuitBreaker.onFailure();
+                log.warn("Failed to hand fallback file {} back to the sink: {}", key, e.getMessage());
+                return;
+            }
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete drained fallback file {}: {}", file, e.getMessage());
+            }
+            pendingFiles.decrementAndGet();
+            drainedCounter.increment();
+            log.debug("Handed fallback file {} back to the sink", key);
+        }
+    }
+
+    /**
+     * Reads a fallback file into a batch, taking the format and codec of its tier from its name.
+     */
+    private SealedBatch read(Path file, String key) throws IOException {
+        String tier = StorageSink.tierOf(key);
+        byte[] content = Files.readAllBytes(file);
+        if (StorageSink.isManifestKey(key)) {
+            return new SealedBatch(tier, ManifestFormat.INSTANCE, 0, content.length, ByteBuffer.wrap(content), b -> { });
+        }
+        if (StorageSink.isPackKey(key)) {
+            return new SealedBatch(tier, PackFormat.INSTANCE, 0, content.length, ByteBuffer.wrap(content), b -> { });
+        }
+        BatchFormat format = batchFormats.forTier(tier);
+        BatchCodec codec = batchCodecs.forTier(tier).getCodec();
+        SealedBatch batch = new SealedBatch(tier, format, 0, content.length, ByteBuffer.wrap(content), b -> { });
+        if (codec != IdentityCodec.INSTANCE && key.endsWith(format.getFileExtension() + codec.getFileExtension())) {
+            return batch.withEncodedContent(codec, ByteBuffer.wrap(content), content.length, b -> { });
+        }
+        return batch;
+    }
+
+    private List<Path> listFiles() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().endsWith(TEMP_SUFFIX))
+                .sorted()
+                .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list fallback directory " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Sink that writes every batch to a file below a local directory, using the same
+ * tier={tier}/dt={date}/hour={hour}/{uuid} layout as the object keys in S3, so a new directory is
+ * started for every event-time hour.
+ * A batch is written to a temporary file that is renamed once complete, so readers never see
+ * a partial file. Meant for running and load testing the service without AWS.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.sink", name = "type", havingValue = "local")
+public class LocalFileSink implements StorageSink {
+    private final Path directory;
+    private final boolean fsync;
+
+    @Autowired
+    public LocalFileSink(AppConfig appConfig) {
+        this(Paths.get(appConfig.getSink().getLocal().getDirectory()), appConfig.getSink().getLocal().isFsync());
+        log.info("Storing batches in local directory: {}, fsync: {}", directory.toAbsolutePath(), fsync);
+    }
+
+    LocalFileSink(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Writes a batch to its file. The buffer is written straight to the file channel without
+     * being copied, and with fsync enabled the file is forced to disk before the call returns.
+     *
+     * @param batch Sealed batch of events to be stored
+     * @param key Path of the file, relative to the directory
+     * @throws UncheckedIOException if the file could not be written
+     */
+    @Override
+    public void storeEvents(SealedBatch batch, String key) {
+        Path target = directory.resolve(key);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer content = batch.getContent();
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Stored {} events in file: {}", batch.getEventCount(), target);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            log.error("Failed to store events in file {}: {}", target, e.getMessage());
+            throw new UncheckedIOException("Failed to store events in " + target, e);
+        }
+    }
+
+    /**
+     * Lists the files below the directory of a prefix, without temporary files of batches
+     * still being written.
+     */
+    @Override
+    public List<StoredObject> listObjects(String prefix) {
+        Path start = directory.resolve(prefix);
+        if (!Files.isDirectory(start)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(start)) {
+            return paths.filter(Files::isRegularFile)
+                .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                .map(path -> new StoredObject(keyOf(path), size(path)))
+                .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list files below " + start, e);
+        }
+    }
+
+    @Override
+    public InputStream readObject(String key) {
+        try {
+            return Files.newInputStream(directory.resolve(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteObjects(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(directory.resolve(key));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete " + key, e);
+            }
+        }
+    }
+
+    private String keyOf(Path file) {
+        return directory.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
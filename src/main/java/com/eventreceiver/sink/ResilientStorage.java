@@ -0,0 +1,437 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.BatchMetrics;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Resilience layer between the batch uploader and the storage sink.
+ * <ul>
+ * <li>Retries: a failed attempt is not retried on the thread that made it. The retry is
+ * scheduled on a timer with exponential backoff and runs on a separate pool once due, so a
+ * failing batch never keeps an upload worker asleep. Client errors, throttling and 5xx responses
+ * are retried; other service errors, such as a missing bucket, are not.</li>
+ * <li>Circuit breaker: after a run of failed attempts no further ones are made for a while.
+ * Batches are then written to a local fallback directory, which is handed back to the sink
+ * once a probe succeeds, instead of queueing in memory behind an unhealthy sink.</li>
+ * <li>Hedging: with app.upload.hedge enabled, an attempt still running after the configured
+ * percentile of recent attempt latencies gets a second, identical request. Both use the same
+ * key, so whichever finishes first stores the batch and the other overwrites it with the same
+ * content. The batch is completed as soon as the first of them has stored it; each request pins
+ * the batch, so its buffer only goes back to the pool once both have finished reading it.</li>
+ * </ul>
+ * Requests are sent with {@link StorageSink#storeEventsAsync}, so with an asynchronous sink a
+ * slow request holds no thread while it is in flight.
+ * Every batch ends in exactly one {@link StoreOutcome}, handed to the caller's callback, which
+ * then owns the batch again.
+ */
+@Slf4j
+@Component
+public class ResilientStorage {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final StorageSink sink;
+    private final LocalFallback fallback;
+    private final BatchMetrics batchMetrics;
+    private final CircuitBreaker circuitBreaker;
+    private final AppConfig.RetryConfig retryConfig;
+    private final AppConfig.HedgeConfig hedgeConfig;
+    private final long hedgeMinDelayNanos;
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor retryExecutor;
+    private final ThreadPoolExecutor hedgeExecutor;
+    private final Set<Upload> pendingRetries = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicInteger hedgesInFlight = new AtomicInteger();
+    private final Timer attemptLatency;
+    private final Counter requests;
+    private final Counter hedgesLaunched;
+    private final Counter hedgesWon;
+    private final Counter hedgesSkipped;
+    private volatile boolean shuttingDown;
+
+    public ResilientStorage(StorageSink sink, BatchFormats batchFormats, BatchCodecs batchCodecs,
+                            BatchMetrics batchMetrics, AppConfig appConfig, MeterRegistry registry) {
+        AppConfig.UploadConfig uploadConfig = appConfig.getUpload();
+        this.sink = sink;
+        this.batchMetrics = batchMetrics;
+        this.retryConfig = uploadConfig.getRetry();
+        this.hedgeConfig = uploadConfig.getHedge();
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeConfig.getMinDelayMillis());
+        String sinkName = appConfig.getSink().getType();
+        AppConfig.CircuitBreakerConfig breakerConfig = uploadConfig.getCircuitBreaker();
+        this.circuitBreaker = new CircuitBreaker(sinkName,
+            breakerConfig.isEnabled() ? breakerConfig.getFailureThreshold() : Integer.MAX_VALUE,
+            Duration.ofMillis(breakerConfig.getOpenMillis()), registry);
+        AppConfig.FallbackConfig fallbackConfig = uploadConfig.getFallback();
+        // a local sink would only divert batches to another directory of the same disk
+        this.fallback = fallbackConfig.isEnabled() && !(sink instanceof LocalFileSink)
+            ? new LocalFallback(Paths.get(fallbackConfig.getDirectory()), batchFormats, batchCodecs, registry)
+            : null;
+
+        this.timer = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("sink-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.retryExecutor = new ThreadPoolExecutor(
+            uploadConfig.getConcurrency(),
+            uploadConfig.getConcurrency(),
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new CustomizableThreadFactory("sink-retry-")
+        );
+        // no queue: a hedge that cannot start right away is pointless
+        this.hedgeExecutor = new ThreadPoolExecutor(
+            0,
+            Math.max(1, hedgeConfig.getMaxInFlight()),
+            60L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new CustomizableThreadFactory("sink-hedge-")
+        );
+        if (fallback != null) {
+            timer.scheduleWithFixedDelay(() -> retryExecutor.execute(this::drainFallback),
+                fallbackConfig.getDrainIntervalMillis(), fallbackConfig.getDrainIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        this.attemptLatency = Timer.builder("event.sink.attempt.latency")
+            .description("Time taken by recent attempts to store a batch, across tiers; the hedging delay is taken from it")
+            .tag("sink", sinkName)
+            .publishPercentiles(hedgeConfig.getPercentile())
+            .distributionStatisticExpiry(Duration.ofMinutes(1))
+            .register(registry);
+        this.requests = Counter.builder("event.sink.requests")
+            .description("Requests sent to the sink to store an object: batches, packs and manifests, with retries and hedges")
+            .tag("sink", sinkName)
+            .register(registry);
+        this.hedgesLaunched = Counter.builder("event.sink.hedges.launched")
+            .description("Hedged requests sent for slow attempts")
+            .tag("sink", sinkName)
+            .register(registry);
+        this.hedgesWon = Counter.builder("event.sink.hedges.won")
+            .description("Hedged requests that stored their batch before the attempt they hedged")
+            .tag("sink", sinkName)
+            .register(registry);
+        this.hedgesSkipped = Counter.builder("event.sink.hedges.skipped")
+            .description("Hedged requests not sent because max-in-flight hedges were running")
+            .tag("sink", sinkName)
+            .register(registry);
+        Gauge.builder("event.sink.hedges.win.ratio", this, ResilientStorage::hedgeWinRatio)
+            .description("Fraction of hedged requests that stored their batch first")
+            .tag("sink", sinkName)
+            .register(registry);
+        Gauge.builder("event.sink.retries.pending", pendingRetries, Set::size)
+            .description("Batches waiting for their next attempt")
+            .tag("sink", sinkName)
+            .register(registry);
+        log.info("Initialized resilient storage with {} attempts, circuit breaker: {}, hedging: {}, fallback: {}",
+            retryConfig.getMaxAttempts(), breakerConfig.isEnabled(), hedgeConfig.isEnabled(), fallback != null);
+    }
+
+    /**
+     * Stores a batch. The first attempt is started on the calling thread; retries and hedged
+     * requests run on their own threads. The call returns once one of the batch's requests has
+     * stored it, or the first attempt has failed, so the callers' threads still bound the number
+     * of uploads in flight, but a winning hedge frees the caller from the attempt it hedged.
+     *
+     * @param batch The encoded batch
+     * @param key Object key of the batch, used by every attempt, see {@link StorageSink#objectKey(SealedBatch)}
+     * @param onDone Receives the batch and its outcome as soon as it is known; the batch may still
+     *     be pinned by a request that has not finished, and its buffer is released after that one
+     */
+    public void store(SealedBatch batch, String key, BiConsumer<SealedBatch, StoreOutcome> onDone) {
+        Upload upload = new Upload(batch, key, batchMetrics.forBatch(batch), onDone);
+        if (circuitBreaker.tryAcquire()) {
+            attempt(upload);
+            upload.firstAttemptSettled.join();
+        } else {
+            divertOrFail(upload);
+        }
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Starts an attempt on the calling thread, scheduling a hedged request for it if enabled.
+     */
+    private void attempt(Upload upload) {
+        synchronized (upload) {
+            upload.attempts++;
+            upload.running++;
+        }
+        if (hedgeConfig.isEnabled() && upload.batch.getSizeBytes() <= hedgeConfig.getMaxBatchBytes()) {
+            upload.hedgeTimer = timer.schedule(() -> hedge(upload), hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        }
+        run(upload, false);
+    }
+
+    private void hedge(Upload upload) {
+        synchronized (upload) {
+            if (upload.outcome != null || upload.running == 0 || circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                return;
+            }
+            upload.running++;
+        }
+        // requests of asynchronous sinks leave their threads at once, so the hedges are counted
+        if (hedgesInFlight.incrementAndGet() > hedgeConfig.getMaxInFlight()) {
+            hedgesInFlight.decrementAndGet();
+            hedgesSkipped.increment();
+            finished(upload, true, false);
+            return;
+        }
+        try {
+            hedgeExecutor.execute(() -> run(upload, true));
+            hedgesLaunched.increment();
+        } catch (RejectedExecutionException e) {
+            hedgesInFlight.decrementAndGet();
+            hedgesSkipped.increment();
+            finished(upload, true, false);
+        }
+    }
+
+    /**
+     * Sends one request for the batch, pinning it until the request has finished reading it.
+     */
+    private void run(Upload upload, boolean hedge) {
+        long start = System.nanoTime();
+        requests.increment();
+        upload.batch.pin();
+        CompletableFuture<Void> request;
+        try {
+            request = sink.storeEventsAsync(upload.batch, upload.key);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request.whenComplete((result, error) -> {
+            long nanos = System.nanoTime() - start;
+            upload.meters.getPutLatency().record(nanos, TimeUnit.NANOSECONDS);
+            attemptLatency.record(nanos, TimeUnit.NANOSECONDS);
+            upload.batch.unpin();
+            if (hedge) {
+                hedgesInFlight.decrementAndGet();
+            }
+            if (error == null) {
+                circuitBreaker.onSuccess();
+            } else {
+                upload.lastError = unwrap(error);
+                circuitBreaker.onFailure();
+            }
+            finished(upload, hedge, error == null);
+        });
+    }
+
+    /**
+     * Records the end of an attempt or hedged request. The first request to store the batch
+     * completes it right away, even while another one is still running. If none does, the batch
+     * is retried, diverted or failed once the last of them has ended.
+     */
+    private void finished(Upload upload, boolean hedge, boolean stored) {
+        synchronized (upload) {
+            upload.running--;
+            if (upload.outcome != null) {
+                return;
+            }
+            if (stored) {
+                upload.outcome = StoreOutcome.STORED;
+                if (hedge) {
+                    hedgesWon.increment();
+                }
+            } else if (upload.running > 0) {
+                return;
+            }
+        }
+        ScheduledFuture<?> hedgeTimer = upload.hedgeTimer;
+        if (hedgeTimer != null) {
+            hedgeTimer.cancel(false);
+        }
+        if (stored) {
+            upload.done(StoreOutcome.STORED);
+        } else {
+            retryOrDivert(upload);
+        }
+        upload.firstAttemptSettled.complete(null);
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RuntimeException runtimeError ? runtimeError : new CompletionException(cause);
+    }
+
+    private void retryOrDivert(Upload upload) {
+        RuntimeException error = upload.lastError;
+        if (shuttingDown || upload.attempts >= retryConfig.getMaxAttempts() || !isRetryable(error)) {
+            divertOrFail(upload);
+            return;
+        }
+        long backoffMillis = backoffMillis(upload.attempts);
+        log.warn("Attempt {} to store batch {} failed, retrying in {}ms: {}", upload.attempts, upload.key,
+            backoffMillis, error.getMessage());
+        pendingRetries.add(upload);
+        try {
+            timer.schedule(() -> retryExecutor.execute(() -> retry(upload)), backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, see shutdown()
+            if (pendingRetries.remove(upload)) {
+                divertOrFail(upload);
+            }
+        }
+    }
+
+    private void retry(Upload upload) {
+        if (!pendingRetries.remove(upload)) {
+            return;
+        }
+        if (circuitBreaker.tryAcquire()) {
+            upload.meters.getPutRetries().increment();
+            attempt(upload);
+        } else {
+            divertOrFail(upload);
+        }
+    }
+
+    private void divertOrFail(Upload upload) {
+        if (fallback != null) {
+            try {
+                fallback.store(upload.batch, upload.key);
+                log.warn("Diverted batch {} of {} events to the local fallback", upload.key, upload.batch.getEventCount());
+                upload.done(StoreOutcome.DIVERTED);
+                return;
+            } catch (RuntimeException e) {
+                log.error("Failed to divert batch {} to the local fallback: {}", upload.key, e.getMessage());
+            }
+        }
+        RuntimeException error = upload.lastError;
+        log.error("Failed to store batch {} of {} events after {} attempts: {}", upload.key,
+            upload.batch.getEventCount(), upload.attempts, error != null ? error.getMessage() : "circuit open");
+        upload.done(StoreOutcome.FAILED);
+    }
+
+    private void drainFallback() {
+        if (fallback.getPendingFiles() == 0 || !draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            fallback.drain(sink, circuitBreaker);
+        } catch (RuntimeException e) {
+            log.error("Failed to drain the local fallback: {}", e.getMessage());
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    private long hedgeDelayNanos() {
+        ValueAtPercentile[] percentiles = attemptLatency.takeSnapshot().percentileValues();
+        double percentileNanos = percentiles.length > 0 ? percentiles[0].value(TimeUnit.NANOSECONDS) : 0;
+        return Math.max(hedgeMinDelayNanos, (long) percentileNanos);
+    }
+
+    private long backoffMillis(int attempts) {
+        double backoff = retryConfig.getInitialBackoffMillis() * Math.pow(retryConfig.getBackoffMultiplier(), attempts - 1);
+        return (long) Math.min(backoff, retryConfig.getMaxBackoffMillis());
+    }
+
+    private double hedgeWinRatio() {
+        double launched = hedgesLaunched.count();
+        return launched > 0 ? hedgesWon.count() / launched : 0;
+    }
+
+    /**
+     * @return Whether a failed attempt may succeed when repeated: network errors, throttling and
+     *     server errors, and local I/O errors
+     */
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof SdkServiceException serviceError) {
+            return serviceError.isThrottlingException() || serviceError.statusCode() >= 500;
+        }
+        return error instanceof SdkClientException || error instanceof UncheckedIOException;
+    }
+
+    /**
+     * Stops retrying: batches waiting for a retry are diverted, or failed, right away, and
+     * running attempts are given 30 seconds to finish.
+     */
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down resilient storage, {} batches waiting for a retry", pendingRetries.size());
+        shuttingDown = true;
+        timer.shutdownNow();
+        for (Upload upload : pendingRetries) {
+            if (pendingRetries.remove(upload)) {
+                divertOrFail(upload);
+            }
+        }
+        awaitTermination(retryExecutor);
+        awaitTermination(hedgeExecutor);
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * State of one batch across its attempts and hedged requests. Guarded by its own monitor.
+     */
+    private static final class Upload {
+        final SealedBatch batch;
+        final String key;
+        final BatchMetrics.BatchMeters meters;
+        final BiConsumer<SealedBatch, StoreOutcome> onDone;
+        final CompletableFuture<Void> firstAttemptSettled = new CompletableFuture<>();
+        int attempts;
+        int running;
+        StoreOutcome outcome;
+        volatile RuntimeException lastError;
+        volatile ScheduledFuture<?> hedgeTimer;
+
+        Upload(SealedBatch batch, String key, BatchMetrics.BatchMeters meters,
+               BiConsumer<SealedBatch, StoreOutcome> onDone) {
+            this.batch = batch;
+            this.key = key;
+            this.meters = meters;
+            this.onDone = onDone;
+        }
+
+        void done(StoreOutcome outcome) {
+            onDone.accept(batch, outcome);
+        }
+    }
+}
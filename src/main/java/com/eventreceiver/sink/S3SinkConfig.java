@@ -0,0 +1,60 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.config.AppConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.time.Duration;
+
+/**
+ * S3 client of the S3 sink. Only active with {@code app.sink.type=s3}, so the other sinks start
+ * without AWS credentials or network access.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.sink", name = "type", havingValue = "s3", matchIfMissing = true)
+public class S3SinkConfig {
+    private final AppConfig appConfig;
+
+    @Bean
+    public S3AsyncClient s3AsyncClient() {
+        AppConfig.S3Config s3 = appConfig.getS3();
+        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(s3.getAccessKey(), s3.getSecretKey());
+        return S3AsyncClient.builder()
+                .region(Region.of(s3.getRegion()))
+                .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                    .maxConcurrency(s3.getMaxConnections())
+                    .connectionTimeout(Duration.ofMillis(s3.getConnectionTimeoutMillis()))
+                    .connectionAcquisitionTimeout(Duration.ofMillis(s3.getConnectionAcquisitionTimeoutMillis()))
+                    .readTimeout(Duration.ofMillis(s3.getReadTimeoutMillis()))
+                    .writeTimeout(Duration.ofMillis(s3.getWriteTimeoutMillis())))
+                .build();
+    }
+
+    @EventListener
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        AppConfig.S3Config s3 = appConfig.getS3();
+        try {
+            log.info("Verifying S3 bucket access...");
+            log.info("Bucket: {}, Region: {}", s3.getBucketName(), s3.getRegion());
+
+            s3AsyncClient().headBucket(builder -> builder.bucket(s3.getBucketName()).build()).join();
+            log.info("Successfully connected to S3 bucket: {}", s3.getBucketName());
+        } catch (Exception e) {
+            log.error("Failed to access S3 bucket: {}. Error: {}", s3.getBucketName(), e.getMessage());
+            throw new RuntimeException("Failed to access S3 bucket", e);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.config.AppConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.core.exception.SdkException;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sink that stores batches as objects in the configured S3 bucket.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.sink", name = "type", havingValue = "s3", matchIfMissing = true)
+public class S3StorageSink implements StorageSink {
+    // S3 rejects parts smaller than 5MB, except for the last one
+    static final long MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+
+    private final S3AsyncClient s3Client;
+    private final AppConfig appConfig;
+
+    /**
+     * Stores a sealed batch of events in S3 for its customer tier.
+     * The batch is already serialized in its format and encoded, so its buffer is streamed as the
+     * request body without being copied. It is stored under the given key, with the Content-Type
+     * of its format and the Content-Encoding of its codec.
+     * Batches of at least multipartThresholdBytes, such as a single oversized event, are uploaded
+     * as a multipart upload whose parts are slices of the same buffer, sent in parallel.
+     * The call returns once the object has been stored; a single attempt is made, retries and
+     * their timing are handled by {@link ResilientStorage}.
+     * 
+     * @param batch Sealed batch of events to be stored
+     * @param s3Key Object key of the batch
+     * @throws RuntimeException if there's an error storing events in S3
+     */
+    @Override
+    public void storeEvents(SealedBatch batch, String s3Key) {
+        try {
+            if (batch.getSizeBytes() >= appConfig.getS3().getMultipartThresholdBytes()) {
+                storeMultipart(batch, s3Key);
+            } else {
+                storeSingle(batch, s3Key);
+            }
+            log.debug("Successfully stored {} events in S3 with key: {}", batch.getEventCount(), s3Key);
+        } catch (SdkException e) {
+            log.warn("Failed to store events in S3 with key {}: {}", s3Key, e.getMessage());
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while storing events in S3 with key {}", s3Key);
+            throw new RuntimeException("Interrupted while storing events in S3", e);
+        } catch (Exception e) {
+            log.error("Unexpected error while storing events in S3: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to store events in S3", e);
+        }
+    }
+
+    /**
+     * Stores a batch below the multipart threshold with a single PutObject, without waiting for
+     * it: the returned future completes with the response, so a slow request holds no thread.
+     * Larger batches are stored as in {@link #storeEvents}, on the calling thread.
+     */
+    @Override
+    public CompletableFuture<Void> storeEventsAsync(SealedBatch batch, String s3Key) {
+        if (batch.getSizeBytes() >= appConfig.getS3().getMultipartThresholdBytes()) {
+            return StorageSink.super.storeEventsAsync(batch, s3Key);
+        }
+        return putSingle(batch, s3Key)
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                    log.warn("Failed to store events in S3 with key {}: {}", s3Key, cause.getMessage());
+                } else {
+                    log.debug("Successfully stored {} events in S3 with key: {}", batch.getEventCount(), s3Key);
+                }
+            })
+            .thenAccept(response -> { });
+    }
+
+    private void storeSingle(SealedBatch batch, String s3Key) {
+        join(putSingle(batch, s3Key));
+    }
+
+    private CompletableFuture<PutObjectResponse> putSingle(SealedBatch batch, String s3Key) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+            .bucket(appConfig.getS3().getBucketName())
+            .key(s3Key)
+            .contentType(batch.getFormat().getContentType())
+            .contentEncoding(batch.getCodec().getContentEncoding())
+            .contentLength(batch.getSizeBytes())
+            .build();
+        return s3Client.putObject(putObjectRequest, AsyncRequestBody.fromRemainingByteBufferUnsafe(batch.getContent()));
+    }
+
+    /**
+     * Uploads a batch in parts of partSizeBytes, at most maxParallelParts at a time, and aborts
+     * the upload if any part fails, so no incomplete parts are left behind in the bucket. Parts
+     * are sent from slices of the batch buffer without copying, so the upload only returns, or
+     * fails, once every part that was started has settled: the buffer goes back to the pool
+     * afterwards and must no longer be read by a part still in flight.
+     */
+    private void storeMultipart(SealedBatch batch, String s3Key) throws InterruptedException {
+        AppConfig.S3Config s3Config = appConfig.getS3();
+        String bucket = s3Config.getBucketName();
+        CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+            .bucket(bucket)
+            .key(s3Key)
+            .contentType(batch.getFormat().getContentType())
+            .contentEncoding(batch.getCodec().getContentEncoding())
+            .build();
+        String uploadId = join(s3Client.createMultipartUpload(createRequest)).uploadId();
+        long[] offsets = partOffsets(batch.getSizeBytes(), s3Config.getPartSizeBytes());
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>(offsets.length - 1);
+        try {
+            ByteBuffer content = batch.getContent();
+            Semaphore permits = new Semaphore(Math.max(1, s3Config.getMaxParallelParts()));
+            for (int i = 0; i < offsets.length - 1; i++) {
+                int partNumber = i + 1;
+                ByteBuffer part = content.duplicate()
+                    .position((int) offsets[i])
+                    .limit((int) offsets[i + 1])
+                    .slice();
+                permits.acquire();
+                UploadPartRequest partRequest = UploadPartRequest.builder()
+                    .bucket(bucket)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .partNumber(partNumber)
+                    .contentLength((long) part.remaining())
+                    .build();
+                CompletableFuture<CompletedPart> upload = s3Client.uploadPart(partRequest,
+                        AsyncRequestBody.fromRemainingByteBufferUnsafe(part))
+                    .thenApply(response -> CompletedPart.builder().partNumber(partNumber).eTag(response.eTag()).build())
+                    .whenComplete((response, error) -> permits.release());
+                parts.add(upload);
+            }
+            awaitSettled(parts);
+            join(CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)));
+            List<CompletedPart> completedParts = parts.stream().map(CompletableFuture::join).toList();
+            join(s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                .bucket(bucket)
+                .key(s3Key)
+                .uploadId(uploadId)
+                .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                .build()));
+            log.debug("Stored {} bytes for tier {} in {} parts", batch.getSizeBytes(), batch.getTier(),
+                completedParts.size());
+        } catch (InterruptedException | RuntimeException e) {
+            awaitSettled(parts);
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucket)
+                    .key(s3Key)
+                    .uploadId(uploadId)
+                    .build())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        log.warn("Failed to abort multipart upload {}: {}", uploadId, error.getMessage());
+                    }
+                });
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the objects below a prefix, one ListObjectsV2 page of up to 1000 keys at a time.
+     */
+    @Override
+    public List<StoredObject> listObjects(String prefix) {
+        List<StoredObject> objects = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            ListObjectsV2Response response = join(s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                .bucket(appConfig.getS3().getBucketName())
+                .prefix(prefix)
+                .continuationToken(continuationToken)
+                .build()));
+            response.contents().forEach(object -> objects.add(new StoredObject(object.key(), object.size())));
+            continuationToken = response.isTruncated() ? response.nextContinuationToken() : null;
+        } while (continuationToken != null);
+        return objects;
+    }
+
+    /**
+     * Opens an object as a stream of its body, which is read from the connection as the caller
+     * consumes it. The stored bytes are returned as they are; S3 does not decode them on the
+     * way out, whatever their Content-Encoding.
+     */
+    @Override
+    public InputStream readObject(String key) {
+        return join(s3Client.getObject(GetObjectRequest.builder()
+                .bucket(appConfig.getS3().getBucketName())
+                .key(key)
+                .build(),
+            AsyncResponseTransformer.toBlockingInputStream()));
+    }
+
+    /**
+     * Deletes up to 1000 objects in a single DeleteObjects request.
+     */
+    @Override
+    public void deleteObjects(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        DeleteObjectsResponse response = join(s3Client.deleteObjects(DeleteObjectsRequest.builder()
+            .bucket(appConfig.getS3().getBucketName())
+            .delete(Delete.builder()
+                .objects(keys.stream().map(key -> ObjectIdentifier.builder().key(key).build()).toList())
+                .quiet(true)
+                .build())
+            .build()));
+        if (response.hasErrors() && !response.errors().isEmpty()) {
+            throw new IllegalStateException("Failed to delete " + response.errors().size() + " of " + keys.size()
+                + " objects, first: " + response.errors().get(0).key() + ": " + response.errors().get(0).message());
+        }
+    }
+
+    /**
+     * Splits an object into parts of the given size. The split only depends on the object size,
+     * so a retried upload sends the same parts; the last part takes the remainder.
+     *
+     * @param sizeBytes Size of the object
+     * @param partSizeBytes Requested part size, raised to the S3 minimum if needed
+     * @return The start offset of every part followed by the object size
+     */
+    static long[] partOffsets(long sizeBytes, long partSizeBytes) {
+        long partSize = Math.max(MIN_PART_SIZE_BYTES, partSizeBytes);
+        int partCount = (int) Math.max(1, sizeBytes / partSize);
+        long[] offsets = new long[partCount + 1];
+        for (int i = 0; i < partCount; i++) {
+            offsets[i] = i * partSize;
+        }
+        offsets[partCount] = sizeBytes;
+        return offsets;
+    }
+
+    /**
+     * Waits until every future has completed, successfully or not, without throwing.
+     */
+    private static void awaitSettled(List<? extends CompletableFuture<?>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).handle((result, error) -> null).join();
+    }
+
+    /**
+     * Waits for an S3 call and rethrows its failure unwrapped, so SDK errors can be classified for retries.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.EventTimePartitioner;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.format.ManifestFormat;
+import com.eventreceiver.batch.format.PackFormat;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Destination of sealed batches. Exactly one sink is active, selected with {@code app.sink.type}:
+ * {@code s3} (default), {@code local} for files on local disk, or {@code stub} for an in-process
+ * stand-in for S3 with configurable latency and errors.
+ * Besides storing batches, sinks list, read and delete objects for the compactor, which
+ * merges the small objects of closed partitions.
+ */
+public interface StorageSink {
+    /** Prefix of the first segment of every key, which names the customer tier. */
+    String TIER_PREFIX = "tier=";
+    /** Directory of each tier's flush manifests; query engines skip paths starting with an underscore. */
+    String MANIFEST_DIRECTORY = "_manifests";
+    /** Top-level directory of objects packing the batches of several tiers. */
+    String PACK_DIRECTORY = "_packed";
+
+    /**
+     * Stores a sealed batch under the given key. Returns once the batch has been stored; a batch
+     * that could not be stored results in an exception. Retries are left to the caller, which
+     * passes the same key to every attempt of a batch, so an attempt that succeeded after the
+     * caller gave up on it is overwritten instead of stored twice.
+     *
+     * @param batch Sealed batch of events to be stored
+     * @param key Object key of the batch, see {@link #objectKey(SealedBatch)}
+     */
+    void storeEvents(SealedBatch batch, String key);
+
+    /**
+     * Stores a sealed batch like {@link #storeEvents}, but without holding the calling thread
+     * while the request is in flight, if the sink supports it. The default stores the batch on
+     * the calling thread and returns a completed future. The batch buffer is read until the
+     * future completes.
+     *
+     * @param batch Sealed batch of events to be stored
+     * @param key Object key of the batch, see {@link #objectKey(SealedBatch)}
+     * @return A future completed once the batch has been stored, or failed with the error
+     */
+    default CompletableFuture<Void> storeEventsAsync(SealedBatch batch, String key) {
+        try {
+            storeEvents(batch, key);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Lists the objects whose keys start with a prefix, in no particular order.
+     *
+     * @param prefix Key prefix ending with a slash, e.g. tier=free/dt=2024-03-20/hour=14/
+     * @return The objects below the prefix, including those in nested directories
+     */
+    default List<StoredObject> listObjects(String prefix) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support listing objects");
+    }
+
+    /**
+     * Opens a stored object for reading. The content is streamed, not loaded into memory.
+     *
+     * @param key Object key
+     * @return The stored bytes of the object, to be closed by the caller
+     */
+    default InputStream readObject(String key) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support reading objects");
+    }
+
+    /**
+     * Deletes objects. Keys of objects that do not exist are ignored, so a deletion that
+     * failed part way can be repeated with the same keys.
+     *
+     * @param keys Object keys, at most 1000
+     * @throws RuntimeException if any of the objects could not be deleted
+     */
+    default void deleteObjects(List<String> keys) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support deleting objects");
+    }
+
+    /**
+     * Generates a unique key for a batch in the Hive-style layout, partitioned by the event time
+     * of the batch's events, or by the current time if they are not known.
+     * Format: tier={customer_tier}/dt={date}/hour={hour}/{uuid}{format extension}{codec extension}
+     * Example: tier=premium/dt=2024-03-20/hour=14/550e8400-e29b-41d4-a716-446655440000.ndjson.gz
+     *
+     * @param batch The batch to be stored
+     * @return Unique key of the batch
+     */
+    static String objectKey(SealedBatch batch) {
+        long partitionMillis = batch.hasEventTimes() ? batch.getMinEventMillis() : System.currentTimeMillis();
+        return objectKey(partitionPrefix(batch.getTier(), partitionMillis), batch);
+    }
+
+    /**
+     * Generates a unique key for a batch below the given partition.
+     *
+     * @param partitionPrefix Prefix of the partition, see {@link #partitionPrefix}
+     * @param batch The batch to be stored
+     * @return Unique key of the batch
+     */
+    static String objectKey(String partitionPrefix, SealedBatch batch) {
+        return partitionPrefix + UUID.randomUUID()
+            + batch.getFormat().getFileExtension() + batch.getCodec().getFileExtension();
+    }
+
+    /**
+     * @param tier The customer tier
+     * @param eventTimeMillis An event timestamp in epoch milliseconds
+     * @return The key prefix of the tier's event-time partition holding the timestamp,
+     *     e.g. tier=premium/dt=2024-03-20/hour=14/
+     */
+    static String partitionPrefix(String tier, long eventTimeMillis) {
+        return TIER_PREFIX + tier + "/" + EventTimePartitioner.partitionPath(eventTimeMillis) + "/";
+    }
+
+    /**
+     * Generates a unique key for a flush manifest of a tier, partitioned by the current time.
+     * Format: tier={customer_tier}/_manifests/dt={date}/hour={hour}/{uuid}.json
+     *
+     * @param tier The customer tier of the flushed batch
+     * @return Unique key of the manifest
+     */
+    static String manifestKey(String tier) {
+        return String.format("%s%s/%s/%s/%s%s",
+            TIER_PREFIX,
+            tier,
+            MANIFEST_DIRECTORY,
+            EventTimePartitioner.partitionPath(System.currentTimeMillis()),
+            UUID.randomUUID(),
+            ManifestFormat.INSTANCE.getFileExtension()
+        );
+    }
+
+    /**
+     * Generates a unique key for an object packing the batches of several tiers, partitioned by
+     * the current time. Its manifest, see {@link #packManifestKey()}, points to the tiers' sections of it.
+     * Format: _packed/dt={date}/hour={hour}/{uuid}.pack
+     *
+     * @return Unique key of the packed object
+     */
+    static String packKey() {
+        return String.format("%s/%s/%s%s",
+            PACK_DIRECTORY,
+            EventTimePartitioner.partitionPath(System.currentTimeMillis()),
+            UUID.randomUUID(),
+            PackFormat.INSTANCE.getFileExtension()
+        );
+    }
+
+    /**
+     * Generates a unique key for the manifest of a packed object, partitioned by the current time.
+     * Format: _packed/_manifests/dt={date}/hour={hour}/{uuid}.json
+     *
+     * @return Unique key of the manifest
+     */
+    static String packManifestKey() {
+        return String.format("%s/%s/%s/%s%s",
+            PACK_DIRECTORY,
+            MANIFEST_DIRECTORY,
+            EventTimePartitioner.partitionPath(System.currentTimeMillis()),
+            UUID.randomUUID(),
+            ManifestFormat.INSTANCE.getFileExtension()
+        );
+    }
+
+    /**
+     * @param key An object key generated by this service
+     * @return true if the key is that of an object packing the batches of several tiers
+     */
+    static boolean isPackKey(String key) {
+        return key.startsWith(PACK_DIRECTORY + "/");
+    }
+
+    /**
+     * @param key An object key generated by this service
+     * @return true if the key is that of a flush manifest
+     */
+    static boolean isManifestKey(String key) {
+        return key.contains("/" + MANIFEST_DIRECTORY + "/");
+    }
+
+    /**
+     * @param key An object key generated by this service
+     * @return The customer tier the object belongs to, or the pack directory for a packed object
+     */
+    static String tierOf(String key) {
+        int end = key.indexOf('/');
+        return key.substring(key.startsWith(TIER_PREFIX) ? TIER_PREFIX.length() : 0, end < 0 ? key.length() : end);
+    }
+}
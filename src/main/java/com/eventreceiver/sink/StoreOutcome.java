@@ -0,0 +1,13 @@
+package com.eventreceiver.sink;
+
+/**
+ * How {@link ResilientStorage} disposed of a batch.
+ */
+public enum StoreOutcome {
+    /** Stored by the storage sink. */
+    STORED,
+    /** Written to the local fallback directory, to be handed to the sink once it is healthy. */
+    DIVERTED,
+    /** Neither stored nor diverted; the events stay in the spool, if enabled. */
+    FAILED
+}
@@ -0,0 +1,12 @@
+package com.eventreceiver.sink;
+
+import lombok.Value;
+
+/**
+ * An object held by a storage sink, as returned by {@link StorageSink#listObjects}.
+ */
+@Value
+public class StoredObject {
+    String key;
+    long sizeBytes;
+}
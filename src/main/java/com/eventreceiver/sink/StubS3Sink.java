@@ -0,0 +1,152 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.config.AppConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for S3 that behaves like a PutObject: each call takes the configured
+ * latency plus the time to send the batch at the configured bandwidth, and a configured
+ * fraction of calls fail with the 503 Slow Down error S3 returns when it throttles. Failures are
+ * retried, hedged and counted against the circuit breaker like those of the S3 sink. Together
+ * with a fixed load this makes throughput and flush behaviour measurable on a laptop, without
+ * network access or AWS credentials.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.sink", name = "type", havingValue = "stub")
+public class StubS3Sink implements StorageSink {
+    private final AppConfig.StubSinkConfig stubConfig;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final AtomicLong storedObjects = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public StubS3Sink(AppConfig appConfig) {
+        this.stubConfig = appConfig.getSink().getStub();
+        log.info("Storing batches in S3 stub with latency: {}ms (+/- {}ms), bandwidth: {} bytes/s, error rate: {}",
+            stubConfig.getLatencyMillis(), stubConfig.getLatencyJitterMillis(), stubConfig.getBytesPerSecond(),
+            stubConfig.getErrorRate());
+    }
+
+    /**
+     * Simulates storing a batch, blocking the calling thread for the simulated duration.
+     *
+     * @param batch Sealed batch of events to be stored
+     * @param key Object key of the batch
+     * @throws S3Exception for the injected fraction of calls
+     */
+    @Override
+    public void storeEvents(SealedBatch batch, String key) {
+        sleep(simulatedNanos(batch.getSizeBytes(), ThreadLocalRandom.current()));
+        complete(batch, key);
+    }
+
+    /**
+     * Simulates storing a batch like an asynchronous PutObject: the calling thread returns right
+     * away, and the outcome is decided once the simulated duration has passed.
+     *
+     * @param batch Sealed batch of events to be stored
+     * @param key Object key of the batch
+     * @return A future failed with an {@link S3Exception} for the injected fraction of calls
+     */
+    @Override
+    public CompletableFuture<Void> storeEventsAsync(SealedBatch batch, String key) {
+        long nanos = simulatedNanos(batch.getSizeBytes(), ThreadLocalRandom.current());
+        return CompletableFuture.runAsync(() -> complete(batch, key),
+            CompletableFuture.delayedExecutor(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    private void complete(SealedBatch batch, String key) {
+        if (ThreadLocalRandom.current().nextDouble() < stubConfig.getErrorRate()) {
+            throw S3Exception.builder().statusCode(503).message("Slow Down (injected by the S3 stub)").build();
+        }
+        if (stubConfig.isRetainObjects()) {
+            ByteBuffer content = batch.getContent();
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            objects.put(key, bytes);
+        }
+        storedObjects.incrementAndGet();
+        storedBytes.addAndGet(batch.getSizeBytes());
+        log.debug("Stored {} events in S3 stub with key: {}", batch.getEventCount(), key);
+    }
+
+    /**
+     * Lists the retained objects below a prefix, without simulated latency.
+     */
+    @Override
+    public List<StoredObject> listObjects(String prefix) {
+        return objects.entrySet().stream()
+            .filter(object -> object.getKey().startsWith(prefix))
+            .map(object -> new StoredObject(object.getKey(), object.getValue().length))
+            .toList();
+    }
+
+    /**
+     * Opens a retained object, without simulated latency.
+     *
+     * @throws S3Exception with status 404 if no object is retained under the key
+     */
+    @Override
+    public InputStream readObject(String key) {
+        byte[] content = objects.get(key);
+        if (content == null) {
+            throw S3Exception.builder().statusCode(404).message("NoSuchKey: " + key).build();
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void deleteObjects(List<String> keys) {
+        keys.forEach(objects::remove);
+    }
+
+    /**
+     * @return The stored objects by key, if retainObjects is set
+     */
+    public Map<String, byte[]> getObjects() {
+        return Collections.unmodifiableMap(objects);
+    }
+
+    public long getStoredObjects() {
+        return storedObjects.get();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    private long simulatedNanos(long sizeBytes, ThreadLocalRandom random) {
+        long jitter = stubConfig.getLatencyJitterMillis();
+        long latencyMillis = stubConfig.getLatencyMillis() + (jitter > 0 ? random.nextLong(-jitter, jitter + 1) : 0);
+        long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyMillis));
+        if (stubConfig.getBytesPerSecond() > 0) {
+            nanos += TimeUnit.SECONDS.toNanos(sizeBytes) / stubConfig.getBytesPerSecond();
+        }
+        return nanos;
+    }
+
+    private static void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating an upload", e);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.eventreceiver.spool;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.BatchUploader;
+import com.eventreceiver.batch.FlushReason;
+import com.eventreceiver.batch.TierBatch;
+import com.eventreceiver.batch.TierBuffer;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.model.EncodedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Durable write-ahead spool for accepted events. Every event is written to a memory-mapped
+ * segment file on local disk before its request is acknowledged, so events that are still
+ * buffered, or whose upload failed, survive a crash or an S3 outage.
+ * <p>
+ * Appends are lock-free copies into the active segment. A single committer thread forces all
+ * completed records to disk in one call (group commit), so concurrent requests share an fsync
+ * instead of paying for one each. Segments are rolled over when full and deleted once every event
+ * in them has been stored; the batches of the events release their segment as a {@link
+ * com.eventreceiver.batch.BatchHold} after a successful upload. Segments left over from a previous
+ * run are replayed through the batch uploader on startup, so delivery is at least once.
+ * <p>
+ * When app.spool.enabled is false, appends return receipts without a hold and nothing is written.
+ */
+@Slf4j
+@Component
+public class EventSpool {
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d{20})\\.log");
+    // receipts of single events carry no state while the spool is disabled, so they are shared
+    private static final SpoolReceipt UNSPOOLED_EVENT = new SpoolReceipt(null, 0, 1);
+
+    private final AppConfig.SpoolConfig spoolConfig;
+    private final boolean rawPassthrough;
+    private final long maxBatchSizeBytes;
+    private final BatchUploader batchUploader;
+    private final BatchFormats batchFormats;
+    private final BatchBufferPool bufferPool;
+    private final Map<String, byte[]> tierNames = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<SpoolSegment> unsyncedSegments = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger segmentCount = new AtomicInteger();
+    private final Object commitMonitor = new Object();
+    private final Object rollLock = new Object();
+    private final Timer syncTimer;
+    private final Counter replayedEventCounter;
+    private volatile SpoolSegment activeSegment;
+    private volatile Thread committer;
+    private volatile boolean running;
+    private volatile RuntimeException syncFailure;
+
+    public EventSpool(AppConfig appConfig, BatchUploader batchUploader, BatchFormats batchFormats,
+                      BatchBufferPool bufferPool, MeterRegistry registry) {
+        this.spoolConfig = appConfig.getSpool();
+        this.rawPassthrough = appConfig.getIngest().isRawPassthrough();
+        this.maxBatchSizeBytes = appConfig.getBatch().getMaxBatchSizeBytes();
+        this.batchUploader = batchUploader;
+        this.batchFormats = batchFormats;
+        this.bufferPool = bufferPool;
+        this.syncTimer = Timer.builder("event.spool.sync.time")
+            .description("Time taken to force a group of spooled events to disk")
+            .register(registry);
+        this.replayedEventCounter = Counter.builder("event.spool.replayed.total")
+            .description("Number of spooled events replayed after a restart")
+            .register(registry);
+        Gauge.builder("event.spool.segments", segmentCount, AtomicInteger::get)
+            .description("Number of spool segment files on disk")
+            .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return spoolConfig.isEnabled();
+    }
+
+    /**
+     * Replays the segments of a previous run and opens a fresh segment for new events.
+     *
+     * @throws IllegalStateException if the spool is enabled with the POJO ingest mode, whose events
+     *         are processed after the request was acknowledged and so could not be durable before it
+     */
+    @PostConstruct
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (!rawPassthrough) {
+            throw new IllegalStateException("app.spool.enabled requires app.ingest.raw-passthrough, as events of the "
+                + "asynchronous POJO ingest mode are acknowledged before they are spooled; disable one of them");
+        }
+        Path directory = Path.of(spoolConfig.getDirectory());
+        try {
+            Files.createDirectories(directory);
+            activeSegment = newSegment(replay(directory) + 1);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open event spool in " + directory, e);
+        }
+        running = true;
+        committer = new Thread(this::runCommitter, "spool-committer");
+        committer.setDaemon(true);
+        committer.start();
+        log.info("Spooling events to {} in segments of {} bytes", directory.toAbsolutePath(),
+            spoolConfig.getSegmentSizeBytes());
+    }
+
+    /**
+     * Writes an event to the spool. The event is not durable before {@link #awaitDurable} returns,
+     * but it can be appended to its batch in the meantime.
+     * 
+     * @param tier The customer tier of the event
+     * @param event Buffer holding the serialized event
+     * @param offset Offset of the event in the buffer
+     * @param length UTF-8 encoded size of the event
+     * @return The receipt of the event
+     */
+    public SpoolReceipt append(String tier, byte[] event, int offset, int length) {
+        if (!isEnabled()) {
+            return UNSPOOLED_EVENT;
+        }
+        byte[] tierName = tierName(tier);
+        if (SpoolSegment.recordBytes(tierName, length) > spoolConfig.getSegmentSizeBytes()) {
+            throw new IllegalArgumentException("Event of " + length + " bytes exceeds the spool segment size");
+        }
+        for (;;) {
+            SpoolSegment segment = activeSegment;
+            SpoolReceipt receipt = segment.tryAppend(tierName, event, offset, length);
+            if (receipt != null) {
+                LockSupport.unpark(committer);
+                return receipt;
+            }
+            roll(segment);
+        }
+    }
+
+    /**
+     * Writes a run of events to the spool with a single reservation. Runs that do not fit the
+     * rest of the active segment are written only in part; call again for the remaining events.
+     * 
+     * @param tier The customer tier of the events
+     * @param events The validated events
+     * @param fromIndex Index of the first event to write
+     * @return The receipt of the written events, at least one
+     */
+    public SpoolReceipt appendAll(String tier, List<EncodedEvent> events, int fromIndex) {
+        if (!isEnabled()) {
+            return new SpoolReceipt(null, 0, events.size() - fromIndex);
+        }
+        byte[] tierName = tierName(tier);
+        for (;;) {
+            SpoolSegment segment = activeSegment;
+            SpoolReceipt receipt = segment.tryAppendAll(tierName, events, fromIndex);
+            if (receipt != null) {
+                LockSupport.unpark(committer);
+                return receipt;
+            }
+            if (segment.getReservedBytes() == 0) {
+                // does not even fit an empty segment, fall back to a single record
+                EncodedEvent event = events.get(fromIndex);
+                return append(tier, event.getBytes(), event.getOffset(), event.getLength());
+            }
+            roll(segment);
+        }
+    }
+
+    /**
+     * Waits until the spooled events of a receipt have been forced to disk.
+     * 
+     * @throws IllegalStateException if the spool could not be synced
+     */
+    public void awaitDurable(SpoolReceipt receipt) {
+        SpoolSegment segment = receipt.getSegment();
+        if (segment == null || isDurable(segment, receipt)) {
+            return;
+        }
+        LockSupport.unpark(committer);
+        synchronized (commitMonitor) {
+            while (!isDurable(segment, receipt)) {
+                if (syncFailure != null) {
+                    throw new IllegalStateException("Failed to sync event spool", syncFailure);
+                }
+                if (!running) {
+                    throw new IllegalStateException("Event spool is closed");
+                }
+                try {
+                    commitMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the event spool", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A deleted segment had all of its events stored, which is at least as durable as a sync.
+     */
+    private static boolean isDurable(SpoolSegment segment, SpoolReceipt receipt) {
+        return segment.getSyncedBytes() >= receipt.getEndOffset() || segment.isDeleted();
+    }
+
+    private void roll(SpoolSegment full) {
+        synchronized (rollLock) {
+            if (activeSegment != full) {
+                return;
+            }
+            try {
+                activeSegment = newSegment(full.getId() + 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to create spool segment", e);
+            }
+            full.roll();
+        }
+    }
+
+    private SpoolSegment newSegment(long id) throws IOException {
+        Path path = Path.of(spoolConfig.getDirectory(), String.format("segment-%020d.log", id));
+        SpoolSegment segment = SpoolSegment.create(id, path, spoolConfig.getSegmentSizeBytes(),
+            segmentCount::decrementAndGet);
+        segmentCount.incrementAndGet();
+        unsyncedSegments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Group commit loop: forces whatever was appended since the last pass, then wakes the waiting
+     * appenders. Appenders unpark the committer, so an idle spool commits right away and a busy
+     * one batches every append that arrived during the previous force.
+     */
+    private void runCommitter() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(spoolConfig.getMaxCommitDelayMillis()));
+            commit();
+        }
+        commit();
+    }
+
+    private void commit() {
+        boolean synced = false;
+        long start = System.nanoTime();
+        try {
+            for (SpoolSegment segment : unsyncedSegments) {
+                if (!segment.isDeleted()) {
+                    synced |= segment.sync();
+                }
+                if (segment.isRolled() && (segment.isDeleted() || segment.isFullySynced())) {
+                    unsyncedSegments.remove(segment);
+                }
+            }
+            syncFailure = null;
+        } catch (RuntimeException e) {
+            log.error("Failed to sync event spool: {}", e.getMessage(), e);
+            syncFailure = e;
+        }
+        if (synced) {
+            syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        synchronized (commitMonitor) {
+            commitMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Re-submits the events of every segment left in the directory and keeps each segment until
+     * its events are stored.
+     * 
+     * @return The highest segment id found, or 0
+     */
+    private long replay(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> SEGMENT_FILE.matcher(p.getFileName().toString()).matches()).sorted().toList();
+        }
+        long maxId = 0;
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+            matcher.matches();
+            long id = Long.parseLong(matcher.group(1));
+            maxId = Math.max(maxId, id);
+            SpoolSegment segment = SpoolSegment.open(id, file, segmentCount::decrementAndGet);
+            segmentCount.incrementAndGet();
+            // hold the segment while its records are appended, so it is not deleted half way
+            segment.hold(1);
+            Map<String, TierBuffer> tierBuffers = new HashMap<>();
+            int records = segment.readRecords((tier, event) -> {
+                segment.hold(1);
+                tierBuffers.computeIfAbsent(tier, t -> new TierBuffer(t, batchFormats.forTier(t), bufferPool,
+                        () -> maxBatchSizeBytes))
+                    .append(event, 0, event.length, TierBatch.UNKNOWN_EVENT_TIME, segment, batchUploader::submit);
+            });
+            tierBuffers.values().forEach(tierBuffer -> tierBuffer.close(FlushReason.REPLAY, batchUploader::submit));
+            replayedEventCounter.increment(records);
+            log.info("Replayed {} spooled events from {}", records, file);
+            segment.release(1);
+        }
+        return maxId;
+    }
+
+    private byte[] tierName(String tier) {
+        return tierNames.computeIfAbsent(tier, t -> t.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stops the committer after a final commit. Segments stay on disk until their events are
+     * stored, so events that are still buffered are replayed on the next start.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(committer);
+        committer.join(TimeUnit.SECONDS.toMillis(10));
+        synchronized (commitMonitor) {
+            commitMonitor.notifyAll();
+        }
+    }
+}
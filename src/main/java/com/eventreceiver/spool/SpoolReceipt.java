@@ -0,0 +1,42 @@
+package com.eventreceiver.spool;
+
+import com.eventreceiver.batch.BatchHold;
+
+/**
+ * Proof that a run of events was written to the spool. The events are durable once the segment
+ * has been forced up to the end of the run, see {@link EventSpool#awaitDurable(SpoolReceipt)}.
+ */
+public class SpoolReceipt {
+    private final SpoolSegment segment;
+    private final long endOffset;
+    private final int eventCount;
+
+    SpoolReceipt(SpoolSegment segment, long endOffset, int eventCount) {
+        this.segment = segment;
+        this.endOffset = endOffset;
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * @return The hold the batches of the events have to keep until they are stored, or null if
+     *         the spool is disabled
+     */
+    public BatchHold getHold() {
+        return segment;
+    }
+
+    /**
+     * @return The number of events covered by this receipt
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    SpoolSegment getSegment() {
+        return segment;
+    }
+
+    long getEndOffset() {
+        return endOffset;
+    }
+}
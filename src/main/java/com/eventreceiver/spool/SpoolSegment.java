@@ -0,0 +1,283 @@
+package com.eventreceiver.spool;
+
+import com.eventreceiver.batch.BatchHold;
+import com.eventreceiver.model.EncodedEvent;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped file of the event spool. Records are appended lock-free: a producer reserves
+ * its byte range with a single CAS and copies the record into the mapping, and the group committer
+ * later forces every completed range to disk at once.
+ * <p>
+ * Record layout: [payload length:4][CRC32C of tier and payload:4][tier length:2][tier][payload].
+ * The file is zero-filled beyond the last record, so replay stops at the first record whose
+ * length is zero or whose checksum does not match, which also drops a torn write at the tail.
+ * <p>
+ * The segment is also the {@link BatchHold} of the events it holds: it counts the events that
+ * have not been stored yet and deletes its file once it has been rolled over and that count
+ * drops to zero.
+ */
+@Slf4j
+class SpoolSegment implements BatchHold {
+    static final int RECORD_HEADER_BYTES = 4 + 4 + 2;
+
+    private final long id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacityBytes;
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final AtomicBoolean deleted = new AtomicBoolean();
+    private final Runnable onDelete;
+    private volatile long syncedBytes;
+    private volatile boolean rolled;
+
+    private SpoolSegment(long id, Path path, MappedByteBuffer buffer, Runnable onDelete) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+        this.capacityBytes = buffer.capacity();
+        this.onDelete = onDelete;
+    }
+
+    /**
+     * Creates a new, empty segment file of the given size and maps it.
+     */
+    static SpoolSegment create(long id, Path path, int capacityBytes, Runnable onDelete) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return new SpoolSegment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes), onDelete);
+        }
+    }
+
+    /**
+     * Maps an existing segment file left over from a previous run. The segment is already rolled
+     * over, so it only accepts holds for its replayed records.
+     */
+    static SpoolSegment open(long id, Path path, Runnable onDelete) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            SpoolSegment segment = new SpoolSegment(id, path,
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()), onDelete);
+            segment.rolled = true;
+            return segment;
+        }
+    }
+
+    long getId() {
+        return id;
+    }
+
+    int getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    static long recordBytes(byte[] tier, int length) {
+        return RECORD_HEADER_BYTES + tier.length + (long) length;
+    }
+
+    /**
+     * Appends one record.
+     * 
+     * @return The receipt of the record, or null if it does not fit the segment
+     */
+    SpoolReceipt tryAppend(byte[] tier, byte[] event, int offset, int length) {
+        long recordBytes = recordBytes(tier, length);
+        // counted before the reservation, so the segment cannot be deleted underneath the record
+        pendingEvents.incrementAndGet();
+        long start = rolled ? -1 : reserve(recordBytes);
+        if (start < 0) {
+            release(1);
+            return null;
+        }
+        write((int) start, tier, event, offset, length);
+        writtenBytes.addAndGet(recordBytes);
+        return new SpoolReceipt(this, start + recordBytes, 1);
+    }
+
+    /**
+     * Appends records for as many of the events as fit, starting at fromIndex, with a single
+     * reservation.
+     * 
+     * @return The receipt of the appended records, or null if no event fits the segment
+     */
+    SpoolReceipt tryAppendAll(byte[] tier, List<EncodedEvent> events, int fromIndex) {
+        for (;;) {
+            long start = reservedBytes.get();
+            long end = start;
+            int count = 0;
+            for (int i = fromIndex; i < events.size(); i++) {
+                long next = end + recordBytes(tier, events.get(i).getLength());
+                if (next > capacityBytes) {
+                    break;
+                }
+                end = next;
+                count++;
+            }
+            if (count == 0) {
+                return null;
+            }
+            pendingEvents.addAndGet(count);
+            if (rolled) {
+                release(count);
+                return null;
+            }
+            if (!reservedBytes.compareAndSet(start, end)) {
+                release(count);
+                continue;
+            }
+            int position = (int) start;
+            for (int i = fromIndex; i < fromIndex + count; i++) {
+                EncodedEvent event = events.get(i);
+                write(position, tier, event.getBytes(), event.getOffset(), event.getLength());
+                position += (int) recordBytes(tier, event.getLength());
+            }
+            writtenBytes.addAndGet(end - start);
+            return new SpoolReceipt(this, end, count);
+        }
+    }
+
+    private long reserve(long recordBytes) {
+        for (;;) {
+            long start = reservedBytes.get();
+            if (start + recordBytes > capacityBytes) {
+                return -1;
+            }
+            if (reservedBytes.compareAndSet(start, start + recordBytes)) {
+                return start;
+            }
+        }
+    }
+
+    private void write(int position, byte[] tier, byte[] event, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(tier);
+        crc.update(event, offset, length);
+        buffer.putInt(position, length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putShort(position + 8, (short) tier.length);
+        buffer.put(position + RECORD_HEADER_BYTES, tier);
+        buffer.put(position + RECORD_HEADER_BYTES + tier.length, event, offset, length);
+    }
+
+    /**
+     * Forces every record whose copy has completed to disk. Called by the group committer only.
+     * 
+     * @return true if anything was forced
+     */
+    boolean sync() {
+        long reserved = reservedBytes.get();
+        if (reserved == syncedBytes) {
+            return false;
+        }
+        // reservations are handed out in order and copies are short, so wait for the stragglers
+        while (writtenBytes.get() < reserved) {
+            Thread.onSpinWait();
+        }
+        long synced = syncedBytes;
+        buffer.force((int) synced, (int) (reserved - synced));
+        syncedBytes = reserved;
+        return true;
+    }
+
+    long getSyncedBytes() {
+        return syncedBytes;
+    }
+
+    boolean isFullySynced() {
+        return syncedBytes == reservedBytes.get();
+    }
+
+    long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    boolean isRolled() {
+        return rolled;
+    }
+
+    /**
+     * Stops the segment from being considered active; it is deleted once its events are stored.
+     */
+    void roll() {
+        rolled = true;
+        deleteIfDone();
+    }
+
+    /**
+     * Reads the valid records of the segment from the start.
+     * 
+     * @param recordConsumer Receives the tier and payload of every record
+     * @return The number of valid records
+     */
+    int readRecords(BiConsumer<String, byte[]> recordConsumer) {
+        int position = 0;
+        int records = 0;
+        while (position + RECORD_HEADER_BYTES <= capacityBytes) {
+            int length = buffer.getInt(position);
+            int tierLength = buffer.getShort(position + 8);
+            long end = position + RECORD_HEADER_BYTES + (long) tierLength + length;
+            if (length <= 0 || tierLength <= 0 || end > capacityBytes) {
+                break;
+            }
+            byte[] tier = new byte[tierLength];
+            byte[] event = new byte[length];
+            buffer.get(position + RECORD_HEADER_BYTES, tier);
+            buffer.get(position + RECORD_HEADER_BYTES + tierLength, event);
+            CRC32C crc = new CRC32C();
+            crc.update(tier);
+            crc.update(event);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                log.warn("Spool segment {} has a corrupt record at offset {}, ignoring the rest", path, position);
+                break;
+            }
+            recordConsumer.accept(new String(tier, StandardCharsets.UTF_8), event);
+            records++;
+            position = (int) end;
+        }
+        return records;
+    }
+
+    /**
+     * Registers events that are appended to batches outside of {@link #tryAppend}, i.e. replayed ones.
+     */
+    void hold(long events) {
+        pendingEvents.addAndGet(events);
+    }
+
+    @Override
+    public void release(long events) {
+        if (pendingEvents.addAndGet(-events) == 0) {
+            deleteIfDone();
+        }
+    }
+
+    private void deleteIfDone() {
+        if (rolled && pendingEvents.get() == 0 && deleted.compareAndSet(false, true)) {
+            try {
+                Files.deleteIfExists(path);
+                log.debug("Deleted spool segment {}", path);
+            } catch (IOException e) {
+                log.warn("Failed to delete spool segment {}: {}", path, e.getMessage());
+            }
+            onDelete.run();
+        }
+    }
+
+    boolean isDeleted() {
+        return deleted.get();
+    }
+}
@@ -0,0 +1,25 @@
+package com.eventreceiver.tier;
+
+import lombok.Getter;
+
+/**
+ * Handle of an allowed customer tier, created once by the {@link TierRegistry}. Requests resolve
+ * their tier header to the handle, and everything downstream indexes its per-tier state, such as
+ * the open batch or the admission limit, by {@link #getIndex()} instead of hashing the name again.
+ * There is exactly one handle per tier, so handles can be compared by identity.
+ */
+@Getter
+public final class CustomerTier {
+    private final String name;
+    private final int index;
+
+    CustomerTier(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
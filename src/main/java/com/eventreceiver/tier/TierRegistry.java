@@ -0,0 +1,60 @@
+package com.eventreceiver.tier;
+
+import com.eventreceiver.config.AppConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The allowed customer tiers (app.allowed-customer-tiers), compiled at startup into one
+ * {@link CustomerTier} handle each. Resolving a header is a lookup in an immutable map and never
+ * allocates; the handles are numbered from zero, so per-tier state can be kept in arrays.
+ */
+@Component
+public class TierRegistry {
+    private final List<CustomerTier> tiers;
+    private final Map<String, CustomerTier> tiersByName;
+
+    public TierRegistry(AppConfig appConfig) {
+        List<CustomerTier> tiers = new ArrayList<>();
+        Map<String, CustomerTier> tiersByName = new HashMap<>();
+        List<String> allowedTiers = appConfig.getAllowedCustomerTiers();
+        if (allowedTiers != null) {
+            for (String name : allowedTiers) {
+                if (!tiersByName.containsKey(name)) {
+                    CustomerTier tier = new CustomerTier(name.intern(), tiers.size());
+                    tiers.add(tier);
+                    tiersByName.put(tier.getName(), tier);
+                }
+            }
+        }
+        this.tiers = Collections.unmodifiableList(tiers);
+        this.tiersByName = Map.copyOf(tiersByName);
+    }
+
+    /**
+     * @param name The customer tier header of a request, may be null
+     * @return The handle of the tier, or null if the tier is not allowed
+     */
+    public CustomerTier resolve(String name) {
+        return name == null ? null : tiersByName.get(name);
+    }
+
+    /**
+     * @return The handles of all allowed tiers, in index order
+     */
+    public List<CustomerTier> getTiers() {
+        return tiers;
+    }
+
+    /**
+     * @return The number of allowed tiers, one more than the highest index
+     */
+    public int size() {
+        return tiers.size();
+    }
+}
@@ -0,0 +1,53 @@
+package com.eventreceiver.admission;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MemoryBudgetTest {
+    private static final int BUFFER_BYTES = 1000;
+
+    @Test
+    void admit_UsageGrows_ShedsTiersInPriorityOrder() {
+        // Given: a budget of ten buffers, free throttled at half of it
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free", "enterprise"));
+        appConfig.getAdmission().setMaxBufferedBytes(10 * BUFFER_BYTES);
+        appConfig.getAdmission().setTierShares(Map.of("free", 0.5));
+        BatchBufferPool bufferPool = new BatchBufferPool(BUFFER_BYTES, 4, false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TierRegistry tierRegistry = new TierRegistry(appConfig);
+        CustomerTier free = tierRegistry.resolve("free");
+        CustomerTier enterprise = tierRegistry.resolve("enterprise");
+        MemoryBudget memoryBudget = new MemoryBudget(bufferPool, tierRegistry, appConfig, registry);
+        List<ByteBuffer> buffers = new ArrayList<>();
+
+        // When/Then
+        acquire(bufferPool, buffers, 4);
+        assertEquals(Admission.ADMITTED, memoryBudget.admit(free));
+        acquire(bufferPool, buffers, 1);
+        assertEquals(Admission.THROTTLED, memoryBudget.admit(free));
+        assertEquals(Admission.ADMITTED, memoryBudget.admit(enterprise));
+        acquire(bufferPool, buffers, 5);
+        assertEquals(Admission.OVERLOADED, memoryBudget.admit(enterprise));
+        buffers.forEach(bufferPool::release);
+        assertEquals(Admission.ADMITTED, memoryBudget.admit(free));
+        assertEquals(1.0, registry.get("event.admission.rejected").tags("tier", "free", "reason", "throttled").counter().count());
+    }
+
+    private static void acquire(BatchBufferPool bufferPool, List<ByteBuffer> buffers, int count) {
+        for (int i = 0; i < count; i++) {
+            buffers.add(bufferPool.acquire());
+        }
+    }
+}
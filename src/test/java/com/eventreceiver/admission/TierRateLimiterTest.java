@@ -0,0 +1,77 @@
+package com.eventreceiver.admission;
+
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TierRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void admit_LimitedTierFloods_RejectsOnlyThatTier() {
+        // Given: free limited to a burst of 10 events, enterprise unlimited
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free", "enterprise"));
+        AppConfig.RateLimitConfig limit = new AppConfig.RateLimitConfig();
+        limit.setEventsPerSecond(1);
+        limit.setBurstEvents(10);
+        appConfig.getAdmission().setTierRateLimits(Map.of("free", limit));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TierRegistry tierRegistry = new TierRegistry(appConfig);
+        CustomerTier free = tierRegistry.resolve("free");
+        CustomerTier enterprise = tierRegistry.resolve("enterprise");
+        TierRateLimiter rateLimiter = new TierRateLimiter(tierRegistry, appConfig, registry);
+
+        // When/Then
+        assertEquals(Admission.ADMITTED, rateLimiter.admit(free, 6));
+        assertEquals(Admission.ADMITTED, rateLimiter.admit(free, 4));
+        assertEquals(Admission.RATE_LIMITED, rateLimiter.admit(free, 1));
+        assertEquals(Admission.ADMITTED, rateLimiter.admit(enterprise, 1000));
+        assertEquals(1.0, registry.get("event.admission.rejected")
+            .tags("tier", "free", "reason", "rate_limited").counter().count());
+    }
+
+    @Test
+    void tryAcquire_TokensRefillOverTime() {
+        // Given: 10 tokens per second, 5 at most
+        long start = System.nanoTime();
+        TierRateLimiter.TokenBucket bucket = new TierRateLimiter.TokenBucket(10, 5);
+
+        // When/Then
+        assertTrue(bucket.tryAcquire(5, start));
+        assertFalse(bucket.tryAcquire(1, start));
+        assertFalse(bucket.tryAcquire(3, start + SECOND / 5));
+        assertTrue(bucket.tryAcquire(2, start + SECOND / 5));
+        // a full bucket admits a request larger than itself, then refills its cost before the next
+        assertTrue(bucket.tryAcquire(20, start + 10 * SECOND));
+        assertFalse(bucket.tryAcquire(1, start + 11 * SECOND));
+        assertTrue(bucket.tryAcquire(1, start + 11 * SECOND + 6 * SECOND / 10));
+    }
+
+    @Test
+    void nanosUntilAvailable_MatchesWhenTryAcquireSucceeds() {
+        // Given: 1 token per second, 10 at most, emptied
+        long start = System.nanoTime();
+        TierRateLimiter.TokenBucket bucket = new TierRateLimiter.TokenBucket(1, 10);
+        assertTrue(bucket.tryAcquire(10, start));
+
+        // When
+        long wait = bucket.nanosUntilAvailable(3, start);
+
+        // Then: three tokens are back after three seconds; a request larger than the bucket waits for all of it
+        assertEquals(3 * SECOND, wait);
+        assertFalse(bucket.tryAcquire(3, start + wait - 1));
+        assertTrue(bucket.tryAcquire(3, start + wait));
+        assertEquals(10 * SECOND, bucket.nanosUntilAvailable(50, start + wait));
+    }
+}
@@ -0,0 +1,309 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.AvroFormat;
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.batch.format.NdjsonFormat;
+import com.eventreceiver.config.AppConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.Zstd;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.SeekableByteArrayInput;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchEncoderTest {
+    private static final int MAX_BATCH_SIZE_BYTES = 4096;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void encode_Gzip_ProducesDecompressibleObject() throws Exception {
+        // Given
+        BatchEncoder encoder = encoder("gzip", false);
+        byte[] raw = batchContent(20);
+
+        // When
+        List<byte[]> encoded = new ArrayList<>();
+        List<SealedBatch> batches = new ArrayList<>();
+        encoder.encode(sealedBatch(raw, 20), batch -> {
+            batches.add(batch);
+            encoded.add(contentOf(batch));
+            batch.release();
+        });
+
+        // Then
+        assertEquals(1, encoded.size());
+        assertEquals("gzip", batches.get(0).getCodec().getContentEncoding());
+        assertEquals(".gz", batches.get(0).getCodec().getFileExtension());
+        assertTrue(encoded.get(0).length < raw.length);
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(encoded.get(0)))) {
+            assertArrayEquals(raw, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void encode_Zstd_ProducesDecompressibleObject() {
+        // Given
+        BatchEncoder encoder = encoder("zstd", false);
+        byte[] raw = batchContent(20);
+
+        // When
+        List<byte[]> encoded = new ArrayList<>();
+        encoder.encode(sealedBatch(raw, 20), batch -> {
+            assertEquals("zstd", batch.getCodec().getContentEncoding());
+            encoded.add(contentOf(batch));
+            batch.release();
+        });
+
+        // Then
+        assertEquals(1, encoded.size());
+        assertArrayEquals(raw, Zstd.decompress(encoded.get(0), raw.length));
+    }
+
+    @Test
+    void encode_None_KeepsBatchUnchanged() {
+        // Given
+        BatchEncoder encoder = encoder("none", false);
+        byte[] raw = batchContent(5);
+
+        // When
+        List<SealedBatch> batches = new ArrayList<>();
+        encoder.encode(sealedBatch(raw, 5), batches::add);
+
+        // Then
+        assertEquals(1, batches.size());
+        assertNull(batches.get(0).getCodec().getContentEncoding());
+        assertArrayEquals(raw, contentOf(batches.get(0)));
+    }
+
+    @Test
+    void encode_CompressedSizeOverLimit_SplitsAtEventBoundary() throws Exception {
+        // Given
+        BatchEncoder encoder = encoder("gzip", true);
+        byte[] raw = incompressibleBatchContent(8, 700);
+
+        // When
+        List<byte[]> encoded = new ArrayList<>();
+        List<Integer> eventCounts = new ArrayList<>();
+        encoder.encode(sealedBatch(raw, 8), batch -> {
+            encoded.add(contentOf(batch));
+            eventCounts.add(batch.getEventCount());
+            batch.release();
+        });
+
+        // Then
+        assertTrue(encoded.size() > 1);
+        assertEquals(8, eventCounts.stream().mapToInt(Integer::intValue).sum());
+        int events = 0;
+        for (byte[] content : encoded) {
+            assertTrue(content.length <= MAX_BATCH_SIZE_BYTES);
+            byte[] json = content;
+            if (content[0] != '[') {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+                    json = in.readAllBytes();
+                }
+            }
+            events += objectMapper.readTree(json).size();
+        }
+        assertEquals(8, events);
+    }
+
+    @Test
+    void encode_Avro_TranscodesEventsWithTypedTimestamp() throws Exception {
+        // Given
+        BatchEncoder encoder = encoder("none", false);
+        byte[] raw = ndjsonContent(3);
+
+        // When
+        List<byte[]> encoded = new ArrayList<>();
+        encoder.encode(sealedBatch(AvroFormat.INSTANCE, raw, 3), batch -> {
+            assertEquals("application/avro", batch.getFormat().getContentType());
+            encoded.add(contentOf(batch));
+            batch.release();
+        });
+
+        // Then
+        assertEquals(1, encoded.size());
+        List<GenericRecord> records = new ArrayList<>();
+        try (DataFileReader<GenericRecord> reader = new DataFileReader<>(
+                new SeekableByteArrayInput(encoded.get(0)), new GenericDatumReader<>())) {
+            reader.forEach(records::add);
+        }
+        assertEquals(3, records.size());
+        assertEquals(Instant.parse("2024-01-10T20:12:50.234Z").toEpochMilli(), records.get(0).get("event_timestamp"));
+        assertEquals("what is the capital of India? 2", records.get(2).get("body").toString());
+    }
+
+    @Test
+    void encode_OversizeEventTranscodedOnHeap_CountsHeapBuffersAsUsedUntilReleased() {
+        // Given: a single event too large for a pooled buffer, whose Avro form does not fit one either
+        BatchBufferPool bufferPool = new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true);
+        BatchEncoder encoder = encoder("none", false, bufferPool);
+        byte[] event = ("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"" + "x".repeat(8192) + "\"}")
+            .getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = SealedBatch.ofSingleEvent("premium", AvroFormat.INSTANCE, event, 0, event.length,
+            TierBatch.UNKNOWN_EVENT_TIME, null, bufferPool);
+        assertEquals(batch.getSizeBytes(), bufferPool.getUsedBytes());
+
+        // When
+        List<Long> usedWhileEncoded = new ArrayList<>();
+        encoder.encode(batch, encoded -> {
+            usedWhileEncoded.add(bufferPool.getUsedBytes() - encoded.getSizeBytes());
+            encoded.release();
+        });
+
+        // Then: the single event batch is released once transcoded, and the heap output once stored
+        assertEquals(1, usedWhileEncoded.size());
+        assertEquals(0, usedWhileEncoded.get(0));
+        assertEquals(0, bufferPool.getUsedBytes());
+    }
+
+    @Test
+    void encode_NdjsonOverLimit_SplitsAtLineBoundary() throws Exception {
+        // Given
+        BatchEncoder encoder = encoder("gzip", true);
+        byte[] raw = incompressibleBatchContent(8, 700);
+        String ndjson = new String(raw, StandardCharsets.UTF_8);
+        raw = (ndjson.substring(1, ndjson.length() - 1).replace("},{", "}\n{") + "\n").getBytes(StandardCharsets.UTF_8);
+
+        // When
+        List<byte[]> encoded = new ArrayList<>();
+        encoder.encode(sealedBatch(NdjsonFormat.INSTANCE, raw, 8), batch -> {
+            encoded.add(contentOf(batch));
+            batch.release();
+        });
+
+        // Then
+        assertTrue(encoded.size() > 1);
+        int events = 0;
+        for (byte[] content : encoded) {
+            byte[] lines = content;
+            if (content[0] != '{') {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+                    lines = in.readAllBytes();
+                }
+            }
+            for (String line : new String(lines, StandardCharsets.UTF_8).split("\n")) {
+                objectMapper.readTree(line);
+                events++;
+            }
+            assertEquals('\n', lines[lines.length - 1]);
+        }
+        assertEquals(8, events);
+    }
+
+    @Test
+    void encode_UntimedBatchSpanningTwoHours_SplitsByEventTimePartition() {
+        // Given: a replayed batch, whose events were appended without a parsed timestamp
+        BatchEncoder encoder = encoder("none", false);
+        String early = "{\"event_timestamp\":\"2024-01-11T01:59:59.999Z\",\"body\":\"a {\\\"nested\\\"}\"}\n";
+        String late = "{\"event_timestamp\":\"2024-01-11T02:00:00.000Z\",\"body\":\"b\"}\n";
+        byte[] raw = (early + late + early).getBytes(StandardCharsets.UTF_8);
+
+        // When
+        List<SealedBatch> batches = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        encoder.encode(sealedBatch(NdjsonFormat.INSTANCE, raw, 3), batch -> {
+            batches.add(batch);
+            contents.add(new String(contentOf(batch), StandardCharsets.UTF_8));
+            batch.release();
+        });
+
+        // Then
+        assertEquals(List.of(early + early, late), contents);
+        assertEquals(2, batches.get(0).getEventCount());
+        assertEquals(Instant.parse("2024-01-10T20:29:59.999Z").toEpochMilli(), batches.get(0).getMaxEventMillis());
+        assertEquals(Instant.parse("2024-01-10T20:30:00.000Z").toEpochMilli(), batches.get(1).getMinEventMillis());
+        assertEquals(1, meterRegistry.get("event.batches.partitioned").counter().count());
+    }
+
+    private BatchEncoder encoder(String codec, boolean limitCompressedSize) {
+        return encoder(codec, limitCompressedSize, null);
+    }
+
+    private BatchEncoder encoder(String codec, boolean limitCompressedSize, BatchBufferPool pool) {
+        AppConfig appConfig = new AppConfig();
+        appConfig.getBatch().setMaxBatchSizeBytes(MAX_BATCH_SIZE_BYTES);
+        appConfig.getBatch().setMaxRawBatchSizeBytes(4 * MAX_BATCH_SIZE_BYTES);
+        appConfig.getBatch().setCodec(codec);
+        appConfig.getBatch().setLimitCompressedSize(limitCompressedSize);
+        BatchBufferPool bufferPool = pool != null ? pool
+            : new BatchBufferPool(appConfig.getBatch().getBufferCapacityBytes(), 4, true);
+        return new BatchEncoder(new BatchCodecs(appConfig, meterRegistry), bufferPool, appConfig, meterRegistry);
+    }
+
+    private static SealedBatch sealedBatch(byte[] content, int eventCount) {
+        return sealedBatch(JsonArrayFormat.INSTANCE, content, eventCount);
+    }
+
+    private static SealedBatch sealedBatch(BatchFormat format, byte[] content, int eventCount) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(0, content);
+        return new SealedBatch("premium", format, eventCount, content.length, buffer, b -> { });
+    }
+
+    private static byte[] contentOf(SealedBatch batch) {
+        ByteBuffer content = batch.getContent();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] batchContent(int eventCount) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < eventCount; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"what is the capital of India? ")
+                .append(i).append("\"}");
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ndjsonContent(int eventCount) {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < eventCount; i++) {
+            json.append("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"what is the capital of India? ")
+                .append(i).append("\"}\n");
+        }
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] incompressibleBatchContent(int eventCount, int bodyLength) {
+        Random random = new Random(42);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < eventCount; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"");
+            for (int c = 0; c < bodyLength; c++) {
+                json.append(safeChar(random));
+            }
+            json.append("\"}");
+        }
+        return json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static char safeChar(Random random) {
+        // printable ASCII without '"' and '\\', so the body needs no escaping
+        char c = (char) ('#' + random.nextInt(57));
+        return c == '\\' ? 'z' : c;
+    }
+}
@@ -0,0 +1,125 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.sink.StorageSink;
+import com.eventreceiver.sink.StoreOutcome;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class BatchUploaderTest {
+    private static final int MAX_BATCH_SIZE_BYTES = 1024;
+
+    @Test
+    void submit_AfterShutdown_UploadsOnCallerAndReleasesBatch() {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free"));
+        appConfig.getBatch().setMaxBatchSizeBytes(MAX_BATCH_SIZE_BYTES);
+        appConfig.getBatch().setWriteManifests(false);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BatchBufferPool bufferPool = new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true);
+        ResilientStorage resilientStorage = mock(ResilientStorage.class);
+        List<String> storingThreads = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            storingThreads.add(Thread.currentThread().getName());
+            invocation.<BiConsumer<SealedBatch, StoreOutcome>>getArgument(2)
+                .accept(invocation.getArgument(0), StoreOutcome.STORED);
+            return null;
+        }).when(resilientStorage).store(any(), any(), any());
+        BatchUploader uploader = new BatchUploader(resilientStorage,
+            new BatchEncoder(new BatchCodecs(appConfig, registry), bufferPool, appConfig, registry), bufferPool,
+            new BatchMetrics(appConfig, registry), appConfig, registry);
+        uploader.shutdown();
+        AtomicBoolean released = new AtomicBoolean();
+        byte[] content = "[{\"body\":\"test\"}]".getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = new SealedBatch("free", JsonArrayFormat.INSTANCE, 1, content.length,
+            ByteBuffer.wrap(content), b -> released.set(true));
+
+        // When
+        uploader.submit(batch);
+        uploader.enqueue(batch);
+
+        // Then: neither batch is dropped, both are stored by the submitting thread
+        assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName()), storingThreads);
+        assertTrue(released.get());
+        assertEquals(0, registry.get("event.upload.inflight.bytes").gauge().value());
+    }
+
+    @Test
+    void submitPacked_SeveralTiers_StoresPackAndOneManifestListingEverySection() throws Exception {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free", "pro"));
+        appConfig.getBatch().setMaxBatchSizeBytes(MAX_BATCH_SIZE_BYTES);
+        appConfig.getBatch().getPacking().setEnabled(true);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        BatchBufferPool bufferPool = new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true);
+        ResilientStorage resilientStorage = mock(ResilientStorage.class);
+        Map<String, byte[]> storedObjects = new ConcurrentHashMap<>();
+        CountDownLatch packAndManifestStored = new CountDownLatch(2);
+        doAnswer(invocation -> {
+            SealedBatch stored = invocation.getArgument(0);
+            ByteBuffer content = stored.getContent();
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            storedObjects.put(invocation.getArgument(1), bytes);
+            invocation.<BiConsumer<SealedBatch, StoreOutcome>>getArgument(2).accept(stored, StoreOutcome.STORED);
+            packAndManifestStored.countDown();
+            return null;
+        }).when(resilientStorage).store(any(), any(), any());
+        BatchUploader uploader = new BatchUploader(resilientStorage,
+            new BatchEncoder(new BatchCodecs(appConfig, registry), bufferPool, appConfig, registry), bufferPool,
+            new BatchMetrics(appConfig, registry), appConfig, registry);
+
+        // When
+        uploader.submitPacked(List.of(batch("free"), batch("pro")));
+
+        // Then: two PUTs, the pack and a single manifest below the pack directory
+        assertTrue(packAndManifestStored.await(5, TimeUnit.SECONDS));
+        uploader.shutdown();
+        assertEquals(2, storedObjects.size());
+        String packKey = storedObjects.keySet().stream().filter(key -> !StorageSink.isManifestKey(key)).findFirst()
+            .orElseThrow();
+        String manifestKey = storedObjects.keySet().stream().filter(StorageSink::isManifestKey).findFirst()
+            .orElseThrow();
+        assertTrue(manifestKey.startsWith(StorageSink.PACK_DIRECTORY + "/" + StorageSink.MANIFEST_DIRECTORY + "/"));
+        JsonNode objects = new ObjectMapper().readTree(storedObjects.get(manifestKey)).get("objects");
+        assertEquals(2, objects.size());
+        for (JsonNode object : objects) {
+            assertEquals(packKey, object.get("key").asText());
+            assertNotNull(object.get("offset"));
+        }
+        assertEquals(List.of("free", "pro"), List.of(objects.get(0).get("tier").asText(), objects.get(1).get("tier").asText()));
+    }
+
+    private static SealedBatch batch(String tier) {
+        byte[] content = "[{\"body\":\"test\"}]".getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = new SealedBatch(tier, JsonArrayFormat.INSTANCE, 1, content.length, ByteBuffer.wrap(content),
+            b -> { });
+        batch.setFlushInfo(FlushReason.DEADLINE, System.nanoTime());
+        return batch;
+    }
+}
@@ -0,0 +1,53 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.BatchFormat;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.batch.format.NdjsonFormat;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PackedObjectTest {
+    @Test
+    void of_SeveralBatches_WritesHeaderWithOffsetsOfEverySection() throws Exception {
+        // Given
+        SealedBatch free = batch("free", NdjsonFormat.INSTANCE, "{\"a\":1}\n{\"a\":2}\n", 2);
+        SealedBatch pro = batch("pro", JsonArrayFormat.INSTANCE, "[{\"b\":1}]", 1);
+
+        // When
+        PackedObject pack = PackedObject.of(List.of(free, pro), new BatchBufferPool(64, 1, false));
+
+        // Then
+        SealedBatch batch = pack.getBatch();
+        assertEquals(PackedObject.TIER, batch.getTier());
+        assertEquals(3, batch.getEventCount());
+        assertEquals(FlushReason.DEADLINE, batch.getFlushReason());
+        byte[] content = new byte[batch.getContent().remaining()];
+        batch.getContent().duplicate().get(content);
+        String object = new String(content, StandardCharsets.UTF_8);
+        JsonNode sections = new ObjectMapper().readTree(object.substring(0, object.indexOf('\n'))).get("sections");
+        assertEquals(2, sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+            JsonNode section = sections.get(i);
+            assertEquals(pack.getOffset(i), section.get("offset").asLong());
+            String expected = i == 0 ? "{\"a\":1}\n{\"a\":2}\n" : "[{\"b\":1}]";
+            assertEquals(expected, object.substring((int) section.get("offset").asLong(),
+                (int) (section.get("offset").asLong() + section.get("length").asLong())));
+        }
+        assertEquals("free", sections.get(0).get("tier").asText());
+        assertEquals("json", sections.get(1).get("format").asText());
+    }
+
+    private static SealedBatch batch(String tier, BatchFormat format, String content, int eventCount) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = new SealedBatch(tier, format, eventCount, bytes.length, ByteBuffer.wrap(bytes), b -> { });
+        batch.setFlushInfo(FlushReason.DEADLINE, System.nanoTime());
+        return batch;
+    }
+}
@@ -0,0 +1,103 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.model.EncodedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TierBufferStressTest {
+    private static final int WRITER_THREADS = 16;
+    private static final int EVENTS_PER_WRITER = 20_000;
+    private static final int MAX_BATCH_SIZE_BYTES = 4096;
+    private static final int RUN_LENGTH = 7;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void append_ManyWritersWithConcurrentFlushes_NoEventLostOrDuplicated() throws Exception {
+        // Given
+        TierBuffer tierBuffer = new TierBuffer("premium", JsonArrayFormat.INSTANCE,
+            new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true), () -> MAX_BATCH_SIZE_BYTES);
+        ConcurrentLinkedQueue<byte[]> sealedContents = new ConcurrentLinkedQueue<>();
+        Consumer<SealedBatch> collector = batch -> {
+            ByteBuffer content = batch.getContent();
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            assertEquals(batch.getSizeBytes(), bytes.length);
+            sealedContents.add(bytes);
+            batch.release();
+        };
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        Thread flusher = new Thread(() -> {
+            while (writing.get()) {
+                tierBuffer.flush(FlushReason.DEADLINE, collector);
+                Thread.yield();
+            }
+        });
+
+        // When: even writers append single events, odd writers append runs of events
+        for (int w = 0; w < WRITER_THREADS; w++) {
+            int writer = w;
+            writers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                List<EncodedEvent> run = new ArrayList<>();
+                for (int i = 0; i < EVENTS_PER_WRITER; i++) {
+                    byte[] event = ("\"" + writer + ":" + i + ":" + "x".repeat(i % 200) + "\"")
+                        .getBytes(StandardCharsets.UTF_8);
+                    if (writer % 2 == 0) {
+                        tierBuffer.append(event, 0, event.length, collector);
+                        continue;
+                    }
+                    run.add(new EncodedEvent(event, 0, event.length, null));
+                    if (run.size() == RUN_LENGTH || i == EVENTS_PER_WRITER - 1) {
+                        tierBuffer.appendAll(run, collector);
+                        run = new ArrayList<>();
+                    }
+                }
+            });
+        }
+        flusher.start();
+        start.countDown();
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(60, TimeUnit.SECONDS));
+        writing.set(false);
+        flusher.join();
+        tierBuffer.flush(FlushReason.DEADLINE, collector);
+
+        // Then
+        Set<String> seen = new HashSet<>();
+        for (byte[] content : sealedContents) {
+            assertTrue(content.length <= MAX_BATCH_SIZE_BYTES);
+            String[] events = objectMapper.readValue(content, String[].class);
+            for (String event : events) {
+                assertTrue(seen.add(event), "duplicate event " + event);
+            }
+        }
+        assertEquals(WRITER_THREADS * EVENTS_PER_WRITER, seen.size());
+    }
+}
@@ -0,0 +1,219 @@
+package com.eventreceiver.batch;
+
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.sink.StoreOutcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class TierFlushSchedulerTest {
+    private static final int MAX_BATCH_SIZE_BYTES = 1024;
+
+    @Mock
+    private BatchUploader batchUploader;
+
+    private final AppConfig appConfig = new AppConfig();
+    private final BatchBufferPool bufferPool = new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true);
+    private TierFlushScheduler flushScheduler;
+
+    @BeforeEach
+    void setUp() {
+        appConfig.getBatch().setMaxBatchDelaySeconds(60);
+        AppConfig.TierBatchConfig freeConfig = new AppConfig.TierBatchConfig();
+        freeConfig.setMaxBatchDelaySeconds(1);
+        appConfig.getBatch().getTiers().put("free", freeConfig);
+        flushScheduler = new TierFlushScheduler(batchUploader, appConfig, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        flushScheduler.shutdown();
+    }
+
+    @Test
+    void register_OldestEventReachesTierDelay_FlushesWithDeadlineReason() {
+        // Given
+        TierBuffer tierBuffer = tierBuffer("free");
+        flushScheduler.register(tierBuffer);
+
+        // When
+        append(tierBuffer);
+
+        // Then
+        ArgumentCaptor<SealedBatch> captor = ArgumentCaptor.forClass(SealedBatch.class);
+        verify(batchUploader, timeout(5000)).enqueue(captor.capture());
+        SealedBatch batch = captor.getValue();
+        assertEquals(FlushReason.DEADLINE, batch.getFlushReason());
+        assertEquals(1, batch.getEventCount());
+        assertTrue(batch.getSealedNanos() - batch.getOldestEventNanos() >= TimeUnit.SECONDS.toNanos(1));
+        batch.release();
+    }
+
+    @Test
+    void shutdown_PendingEvents_FlushesWithShutdownReason() {
+        // Given
+        TierBuffer tierBuffer = tierBuffer("pro");
+        flushScheduler.register(tierBuffer);
+        append(tierBuffer);
+
+        // When
+        flushScheduler.shutdown();
+
+        // Then
+        ArgumentCaptor<SealedBatch> captor = ArgumentCaptor.forClass(SealedBatch.class);
+        verify(batchUploader).submit(captor.capture());
+        assertEquals(FlushReason.SHUTDOWN, captor.getValue().getFlushReason());
+        assertEquals(TimeUnit.SECONDS.toNanos(60), flushScheduler.getDelayNanos("pro"));
+        captor.getValue().release();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void register_PackingEnabled_DueTierTakesSmallBatchesOfOtherTiersAlong() {
+        // Given
+        flushScheduler.shutdown();
+        appConfig.getBatch().getPacking().setEnabled(true);
+        flushScheduler = new TierFlushScheduler(batchUploader, appConfig, new SimpleMeterRegistry());
+        TierBuffer free = tierBuffer("free");
+        TierBuffer pro = tierBuffer("pro");
+        flushScheduler.register(free);
+        flushScheduler.register(pro);
+        flushScheduler.register(tierBuffer("enterprise"));
+
+        // When
+        append(pro);
+        append(free);
+
+        // Then
+        ArgumentCaptor<List<SealedBatch>> captor = ArgumentCaptor.forClass(List.class);
+        verify(batchUploader, timeout(5000)).submitPacked(captor.capture());
+        List<SealedBatch> batches = captor.getValue();
+        assertEquals(List.of("free", "pro"), batches.stream().map(SealedBatch::getTier).sorted().toList());
+        batches.forEach(batch -> assertEquals(FlushReason.DEADLINE, batch.getFlushReason()));
+        assertEquals(0, pro.getOldestEventNanos());
+        batches.forEach(SealedBatch::release);
+    }
+
+    @Test
+    void register_FreeUploadLaneSaturated_EnterpriseDeadlineFlushIsNotDelayed() throws Exception {
+        // Given: two upload workers stuck on free uploads and free's one queue slot taken
+        flushScheduler.shutdown();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        appConfig.setAllowedCustomerTiers(List.of("free", "enterprise"));
+        AppConfig.TierBatchConfig enterpriseConfig = new AppConfig.TierBatchConfig();
+        enterpriseConfig.setMaxBatchDelaySeconds(2);
+        appConfig.getBatch().getTiers().put("enterprise", enterpriseConfig);
+        appConfig.getUpload().setConcurrency(2);
+        appConfig.getUpload().setTierQueueCapacities(Map.of("free", 1));
+        CountDownLatch freeUploads = new CountDownLatch(1);
+        List<String> storedTiers = new CopyOnWriteArrayList<>();
+        ResilientStorage resilientStorage = mock(ResilientStorage.class);
+        doAnswer(invocation -> {
+            SealedBatch batch = invocation.getArgument(0);
+            if (batch.getTier().equals("free")) {
+                freeUploads.await();
+            }
+            storedTiers.add(batch.getTier());
+            invocation.<BiConsumer<SealedBatch, StoreOutcome>>getArgument(2).accept(batch, StoreOutcome.STORED);
+            return null;
+        }).when(resilientStorage).store(any(), any(), any());
+        BatchUploader uploader = new BatchUploader(resilientStorage,
+            new BatchEncoder(new BatchCodecs(appConfig, registry), bufferPool, appConfig, registry), bufferPool,
+            new BatchMetrics(appConfig, registry), appConfig, registry);
+        flushScheduler = new TierFlushScheduler(uploader, appConfig, registry);
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            producer.execute(() -> {
+                for (int i = 0; i < 4; i++) {
+                    uploader.submit(freeBatch());
+                }
+            });
+            TierBuffer free = tierBuffer("free");
+            TierBuffer enterprise = tierBuffer("enterprise");
+            flushScheduler.register(free);
+            flushScheduler.register(enterprise);
+
+            // When
+            append(free);
+            append(enterprise);
+
+            // Then: enterprise is flushed on its deadline while free's flush is held back
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (enterprise.getOldestEventNanos() != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, enterprise.getOldestEventNanos());
+            assertTrue(free.getOldestEventNanos() != 0);
+            assertTrue(registry.get("event.batch.flush.deferred").tag("tier", "free").counter().count() > 0);
+            assertTrue(storedTiers.isEmpty());
+
+            freeUploads.countDown();
+            verify(resilientStorage, timeout(5000).atLeastOnce()).store(argThat(batch -> batch.getTier().equals("enterprise")),
+                any(), any());
+        } finally {
+            freeUploads.countDown();
+            producer.shutdown();
+            flushScheduler.shutdown();
+            uploader.shutdown();
+        }
+    }
+
+    @Test
+    void adaptiveDelayNanos_LeavesRoomForUploadsWithinBounds() {
+        // Given
+        long slo = TimeUnit.SECONDS.toNanos(10);
+        long min = TimeUnit.SECONDS.toNanos(1);
+        long max = TimeUnit.SECONDS.toNanos(30);
+
+        // When / Then
+        assertEquals(TimeUnit.SECONDS.toNanos(6), TierFlushScheduler.adaptiveDelayNanos(slo, TimeUnit.SECONDS.toNanos(2), min, max));
+        assertEquals(min, TierFlushScheduler.adaptiveDelayNanos(slo, TimeUnit.SECONDS.toNanos(8), min, max));
+        assertEquals(slo, TierFlushScheduler.adaptiveDelayNanos(slo, 0, min, max));
+    }
+
+    private TierBuffer tierBuffer(String tier) {
+        return new TierBuffer(tier, JsonArrayFormat.INSTANCE, bufferPool, () -> MAX_BATCH_SIZE_BYTES);
+    }
+
+    private static SealedBatch freeBatch() {
+        byte[] content = "[{\"body\":\"test\"}]".getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = new SealedBatch("free", JsonArrayFormat.INSTANCE, 1, content.length,
+            ByteBuffer.wrap(content), b -> { });
+        batch.setFlushInfo(FlushReason.SIZE, System.nanoTime());
+        return batch;
+    }
+
+    private static void append(TierBuffer tierBuffer) {
+        byte[] event = "{\"body\":\"test\"}".getBytes(StandardCharsets.UTF_8);
+        tierBuffer.append(event, 0, event.length, b -> { });
+    }
+}
@@ -0,0 +1,65 @@
+package com.eventreceiver.batch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedFairQueueTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private String lastTier;
+
+    @Test
+    void poll_CompetingTiers_SharesBytesByWeight() {
+        // Given: a backlog of free batches queued ahead of enterprise ones
+        WeightedFairQueue queue = new WeightedFairQueue(16, 100, Map.of("enterprise", 3), Map.of(),
+            List.of("free", "enterprise"), registry);
+        for (int i = 0; i < 6; i++) {
+            assertTrue(queue.offer(task("free")));
+        }
+        for (int i = 0; i < 6; i++) {
+            assertTrue(queue.offer(task("enterprise")));
+        }
+
+        // When
+        List<String> order = new ArrayList<>();
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            task.run();
+            order.add(lastTier);
+        }
+
+        // Then
+        assertEquals(List.of("free", "enterprise", "enterprise", "enterprise", "free", "enterprise", "enterprise",
+            "enterprise", "free", "free", "free", "free"), order);
+        assertEquals(6, registry.get("event.upload.queue.time").tag("tier", "enterprise").timer().count());
+    }
+
+    @Test
+    void offer_TierAtItsCapacity_RefusesOnlyThatTier() {
+        // Given
+        WeightedFairQueue queue = new WeightedFairQueue(4, 100, Map.of(), Map.of("free", 2),
+            List.of("free", "pro"), registry);
+
+        // When/Then
+        assertTrue(queue.offer(task("free")));
+        assertTrue(queue.offer(task("free")));
+        assertFalse(queue.offer(task("free")));
+        assertTrue(queue.offer(task("pro")));
+        assertTrue(queue.offer(task("pro")));
+        assertFalse(queue.offer(task("pro")));
+        assertEquals(0, queue.remainingCapacity());
+        queue.poll();
+        assertEquals(1, queue.remainingCapacity());
+    }
+
+    private WeightedFairQueue.Task task(String tier) {
+        return new WeightedFairQueue.Task(tier, 100, true, () -> lastTier = tier);
+    }
+}
@@ -0,0 +1,191 @@
+package com.eventreceiver.compaction;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.AvroFormat;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.batch.format.NdjsonFormat;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.model.Event;
+import com.eventreceiver.sink.StorageSink;
+import com.eventreceiver.sink.StoredObject;
+import com.eventreceiver.sink.StubS3Sink;
+import com.eventreceiver.tier.TierRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.file.DataFileStream;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ObjectCompactorTest {
+    private static final String PARTITION = "dt=2024-03-20/hour=14/";
+    private static final long EVENT_TIME = Event.EVENT_TIMESTAMP_FORMAT
+        .parse("2024-03-20T14:05:00.000Z", Instant::from).toEpochMilli();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private AppConfig appConfig;
+    private StubS3Sink sink;
+    private ObjectCompactor compactor;
+
+    @BeforeEach
+    void setUp() {
+        appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free", "pro"));
+        AppConfig.TierBatchConfig free = new AppConfig.TierBatchConfig();
+        free.setFormat("ndjson");
+        free.setCodec("gzip");
+        AppConfig.TierBatchConfig pro = new AppConfig.TierBatchConfig();
+        pro.setFormat("avro");
+        appConfig.getBatch().getTiers().putAll(Map.of("free", free, "pro", pro));
+        appConfig.getSink().getStub().setLatencyMillis(0);
+        appConfig.getSink().getStub().setLatencyJitterMillis(0);
+        appConfig.getSink().getStub().setRetainObjects(true);
+        appConfig.getCompaction().setIntervalMillis(TimeUnit.HOURS.toMillis(1));
+        sink = new StubS3Sink(appConfig);
+        compactor = new ObjectCompactor(sink, new BatchFormats(appConfig), new BatchCodecs(appConfig, registry),
+            new TierRegistry(appConfig), appConfig, registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        compactor.shutdown();
+    }
+
+    @Test
+    void compact_SmallObjectsOfClosedPartition_MergesThemAndWritesManifest() throws IOException {
+        // Given an uncompressed object among the gzip ones, as stored for batches gzip does not shrink
+        List<String> sources = List.of(
+            storeNdjson(event(0, "a") + event(1, "b")),
+            store("free", ".ndjson", event(2, "c").getBytes(StandardCharsets.UTF_8)),
+            storeNdjson(event(3, "d") + event(4, "e")));
+
+        // When
+        compactor.compact(EVENT_TIME + TimeUnit.HOURS.toMillis(3));
+
+        // Then
+        List<String> dataKeys = keysBelow("tier=free/" + PARTITION);
+        assertEquals(1, dataKeys.size());
+        assertTrue(dataKeys.get(0).endsWith(".ndjson.gz"));
+        String merged = gunzip(sink.getObjects().get(dataKeys.get(0)));
+        for (String body : List.of("a", "b", "c", "d", "e")) {
+            assertTrue(merged.contains("\"body\":\"" + body + "\""));
+        }
+        assertEquals(5, merged.split("\n").length);
+
+        List<String> manifestKeys = keysBelow("tier=free/" + StorageSink.MANIFEST_DIRECTORY + "/");
+        assertEquals(1, manifestKeys.size());
+        String manifest = new String(sink.getObjects().get(manifestKeys.get(0)), StandardCharsets.UTF_8);
+        assertTrue(manifest.contains("\"flush_reason\":\"compaction\""));
+        assertTrue(manifest.contains("\"event_count\":5"));
+        assertTrue(manifest.contains("\"min_event_timestamp\":\"2024-03-20T14:05:00.000Z\""));
+        assertTrue(manifest.contains("\"max_event_timestamp\":\"2024-03-20T14:05:04.000Z\""));
+        sources.forEach(source -> assertTrue(manifest.contains(source)));
+        assertEquals(3.0, registry.counter("event.compaction.objects.merged").count());
+        assertEquals(1.0, registry.counter("event.compaction.objects.written").count());
+    }
+
+    @Test
+    void compact_PartitionWithinGracePeriod_LeavesObjects() {
+        // Given
+        List<String> sources = List.of(storeNdjson(event(0, "a")), storeNdjson(event(1, "b")));
+
+        // When
+        compactor.compact(EVENT_TIME + TimeUnit.MINUTES.toMillis(70));
+
+        // Then
+        assertEquals(sources.stream().sorted().toList(), keysBelow("tier=free/"));
+    }
+
+    @Test
+    void compact_AvroObjects_MergesRecordsIntoOneContainerFile() throws IOException {
+        // Given
+        for (int i = 0; i < 3; i++) {
+            byte[] ndjson = (event(i, "e" + i) + event(i + 10, "f" + i)).getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream avro = new ByteArrayOutputStream();
+            AvroFormat.INSTANCE.transcode(ByteBuffer.wrap(ndjson), avro);
+            store("pro", ".avro", avro.toByteArray());
+        }
+
+        // When
+        compactor.compact(EVENT_TIME + TimeUnit.HOURS.toMillis(3));
+
+        // Then
+        List<String> dataKeys = keysBelow("tier=pro/" + PARTITION);
+        assertEquals(1, dataKeys.size());
+        List<String> bodies = new ArrayList<>();
+        try (DataFileStream<GenericRecord> records = new DataFileStream<>(
+                new ByteArrayInputStream(sink.getObjects().get(dataKeys.get(0))), new GenericDatumReader<>())) {
+            records.forEach(record -> bodies.add(record.get(Event.BODY_FIELD).toString()));
+        }
+        assertEquals(6, bodies.size());
+        assertTrue(bodies.containsAll(List.of("e0", "f0", "e1", "f1", "e2", "f2")));
+    }
+
+    @Test
+    void plan_PacksObjectsUpToTargetSizeAndSkipsSingletons() {
+        // Given
+        long mb = 1024 * 1024;
+        List<StoredObject> objects = List.of(
+            new StoredObject("a", 2 * mb), new StoredObject("b", 2 * mb), new StoredObject("c", mb / 2),
+            new StoredObject("d", 2 * mb), new StoredObject("e", 2 * mb), new StoredObject("f", 2 * mb));
+
+        // When
+        List<List<StoredObject>> groups = compactor.plan(objects);
+
+        // Then
+        assertEquals(2, groups.size());
+        assertEquals(List.of("a", "b", "c"), groups.get(0).stream().map(StoredObject::getKey).toList());
+        assertEquals(List.of("d", "e"), groups.get(1).stream().map(StoredObject::getKey).toList());
+    }
+
+    private static String event(int seconds, String body) {
+        String timestamp = Event.EVENT_TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(EVENT_TIME + seconds * 1000L));
+        return "{\"event_timestamp\":\"" + timestamp + "\",\"body\":\"" + body + "\"}\n";
+    }
+
+    private String storeNdjson(String ndjson) {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(ndjson.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return store("free", ".ndjson.gz", gzip.toByteArray());
+    }
+
+    private String store(String tier, String extension, byte[] content) {
+        String key = "tier=" + tier + "/" + PARTITION + UUID.randomUUID() + extension;
+        sink.storeEvents(new SealedBatch(tier, NdjsonFormat.INSTANCE, 1, content.length, ByteBuffer.wrap(content),
+            b -> { }), key);
+        return key;
+    }
+
+    private List<String> keysBelow(String prefix) {
+        return sink.getObjects().keySet().stream().filter(key -> key.startsWith(prefix)).sorted().toList();
+    }
+
+    private static String gunzip(byte[] content) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
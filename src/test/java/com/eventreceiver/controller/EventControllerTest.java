@@ -1,8 +1,15 @@
 package com.eventreceiver.controller;
 
+import com.eventreceiver.admission.Admission;
+import com.eventreceiver.admission.MemoryBudget;
+import com.eventreceiver.admission.TierRateLimiter;
 import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.model.EncodedEvent;
 import com.eventreceiver.model.Event;
+import com.eventreceiver.service.EventPayloadParser;
 import com.eventreceiver.service.EventService;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -13,10 +20,14 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -27,6 +38,9 @@ class EventControllerTest {
     private EventService eventService;
     private AppConfig appConfig;
     private ObjectMapper objectMapper;
+    private MemoryBudget memoryBudget;
+    private TierRateLimiter rateLimiter;
+    private TierRegistry tierRegistry;
 
     @BeforeEach
     void setUp() {
@@ -35,8 +49,18 @@ class EventControllerTest {
         objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
         MeterRegistry meterRegistry = new SimpleMeterRegistry();
         
+        memoryBudget = mock(MemoryBudget.class);
+        when(memoryBudget.admit(any())).thenReturn(Admission.ADMITTED);
+        when(memoryBudget.getRetryAfterSeconds()).thenReturn(2);
+        rateLimiter = mock(TierRateLimiter.class);
+        when(rateLimiter.admit(any(), anyInt())).thenReturn(Admission.ADMITTED);
+        when(appConfig.getAllowedCustomerTiers()).thenReturn(List.of("premium", "free", "enterprise"));
+        when(appConfig.getIngest()).thenReturn(new AppConfig.IngestConfig());
+        tierRegistry = new TierRegistry(appConfig);
+        
         mockMvc = MockMvcBuilders
-            .standaloneSetup(new EventController(appConfig, eventService, meterRegistry))
+            .standaloneSetup(new EventController(appConfig, eventService, new EventPayloadParser(objectMapper),
+                memoryBudget, rateLimiter, tierRegistry, meterRegistry))
             .build();
     }
 
@@ -48,8 +72,7 @@ class EventControllerTest {
         event.setBody("test body");
         String customerTier = "premium";
         
-        when(appConfig.getAllowedCustomerTiers()).thenReturn(List.of("premium"));
-        doNothing().when(eventService).processEvent(any(Event.class), eq(customerTier));
+        doNothing().when(eventService).processEncodedEvent(any(EncodedEvent.class), eq(tier(customerTier)));
 
         // When/Then
         mockMvc.perform(post("/api/v1/ingest")
@@ -59,7 +82,104 @@ class EventControllerTest {
                 .andExpect(status().isAccepted())
                 .andExpect(jsonPath("$.status").value("success"));
 
-        verify(eventService).processEvent(any(Event.class), eq(customerTier));
+        verify(eventService).processEncodedEvent(any(EncodedEvent.class), eq(tier(customerTier)));
+        verify(eventService, never()).processEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvent_RawPassthrough_AppendsCompactedRequestBytes() throws Exception {
+        // Given
+        String payload = "{\n  \"event_timestamp\": \"2024-01-11T01:42:50.234Z\",\n  \"body\": \"what is the capital of India?\"\n}";
+        String customerTier = "premium";
+        StringBuilder appended = new StringBuilder();
+        doAnswer(invocation -> {
+            EncodedEvent encoded = invocation.getArgument(0);
+            appended.append(new String(encoded.getBytes(), encoded.getOffset(), encoded.getLength(),
+                StandardCharsets.UTF_8));
+            return null;
+        }).when(eventService).processEncodedEvent(any(EncodedEvent.class), eq(tier(customerTier)));
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content(payload))
+                .andExpect(status().isAccepted());
+
+        assertEquals("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"what is the capital of India?\"}",
+            appended.toString());
+    }
+
+    @Test
+    void ingestEvent_PojoMode_ProcessesDecodedEvent() throws Exception {
+        // Given
+        Event event = new Event();
+        event.setEventTimestamp(Instant.now());
+        event.setBody("test body");
+        String customerTier = "premium";
+        AppConfig.IngestConfig ingestConfig = new AppConfig.IngestConfig();
+        ingestConfig.setRawPassthrough(false);
+        when(appConfig.getIngest()).thenReturn(ingestConfig);
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content(objectMapper.writeValueAsString(event)))
+                .andExpect(status().isAccepted());
+
+        verify(eventService).processEvent(argThat(e -> "test body".equals(e.getBody())), eq(tier(customerTier)));
+        verify(eventService, never()).processEncodedEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvent_BlankBody_ReturnsBadRequest() throws Exception {
+        // Given
+        String customerTier = "premium";
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"  \"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value("body is required"));
+
+        verify(eventService, never()).processEncodedEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvent_NumericBody_ReturnsBadRequest() throws Exception {
+        // Given
+        String customerTier = "premium";
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":42}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("error"))
+                .andExpect(jsonPath("$.message").value("body must be a string"));
+
+        verify(eventService, never()).processEncodedEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvent_MissingTimestamp_ReturnsBadRequest() throws Exception {
+        // Given
+        String customerTier = "premium";
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content("{\"body\":\"test body\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("event_timestamp is required"));
+
+        verify(eventService, never()).processEncodedEvent(any(), any());
     }
 
     @Test
@@ -70,7 +190,6 @@ class EventControllerTest {
         event.setBody("test body");
         String customerTier = "invalid";
         
-        when(appConfig.getAllowedCustomerTiers()).thenReturn(List.of("premium"));
 
         // When/Then
         mockMvc.perform(post("/api/v1/ingest")
@@ -81,7 +200,7 @@ class EventControllerTest {
                 .andExpect(jsonPath("$.status").value("error"))
                 .andExpect(jsonPath("$.message").value("Unauthorized customer tier"));
 
-        verify(eventService, never()).processEvent(any(), any());
+        verify(eventService, never()).processEncodedEvent(any(), any());
     }
 
     @Test
@@ -92,8 +211,7 @@ class EventControllerTest {
         event.setBody("test body");
         String customerTier = "premium";
         
-        when(appConfig.getAllowedCustomerTiers()).thenReturn(List.of("premium"));
-        doThrow(new RuntimeException("Test error")).when(eventService).processEvent(any(), any());
+        doThrow(new RuntimeException("Test error")).when(eventService).processEncodedEvent(any(), any());
 
         // When/Then
         mockMvc.perform(post("/api/v1/ingest")
@@ -104,4 +222,168 @@ class EventControllerTest {
                 .andExpect(jsonPath("$.status").value("error"))
                 .andExpect(jsonPath("$.message").value("Test error"));
     }
+
+    @Test
+    void ingestEvents_JsonArrayWithInvalidEvent_AcceptsValidEventsAndReportsRejection() throws Exception {
+        // Given
+        String payload = "[{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"first\"},"
+            + "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":{\"nested\":[1,2]}},"
+            + "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\", \"body\":\"third\"}]";
+        String customerTier = "premium";
+        List<String> appended = new ArrayList<>();
+        doAnswer(invocation -> {
+            List<EncodedEvent> events = invocation.getArgument(0);
+            events.forEach(e -> appended.add(new String(e.getBytes(), e.getOffset(), e.getLength(),
+                StandardCharsets.UTF_8)));
+            return null;
+        }).when(eventService).processEncodedEvents(any(), eq(tier(customerTier)));
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", customerTier)
+                .content(payload))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("partial"))
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0].index").value(1))
+                .andExpect(jsonPath("$.errors[0].message").value("body must be a string"));
+
+        assertEquals(List.of(
+            "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"first\"}",
+            "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"third\"}"), appended);
+    }
+
+    @Test
+    void ingestEvents_Ndjson_AcceptsAllEvents() throws Exception {
+        // Given
+        String payload = "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"first\"}\n"
+            + "{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"second\"}\n";
+        String customerTier = "premium";
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest/batch")
+                .contentType("application/x-ndjson")
+                .header("X-Customer-Tier", customerTier)
+                .content(payload))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.status").value("success"))
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(0));
+
+        verify(eventService).processEncodedEvents(argThat(events -> events.size() == 2), eq(tier(customerTier)));
+    }
+
+    @Test
+    void ingestEvents_MalformedPayload_RejectsWholeRequest() throws Exception {
+        // Given
+        String payload = "[{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"first\"},{\"body\":";
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "premium")
+                .content(payload))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.status").value("error"));
+
+        verify(eventService, never()).processEncodedEvents(any(), any());
+    }
+
+    @Test
+    void ingestEvent_TierThrottled_ReturnsTooManyRequestsWithRetryAfter() throws Exception {
+        // Given
+        when(memoryBudget.admit(tier("free"))).thenReturn(Admission.THROTTLED);
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "free")
+                .content("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"test\"}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"))
+                .andExpect(jsonPath("$.status").value("error"));
+
+        verify(eventService, never()).processEncodedEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvent_InvalidEventOrExhaustedBudget_TakesNoQuota() throws Exception {
+        // Given
+        when(memoryBudget.admit(tier("enterprise"))).thenReturn(Admission.OVERLOADED);
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "premium")
+                .content("{\"body\":\"test body\"}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "enterprise")
+                .content("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"test\"}"))
+                .andExpect(status().isServiceUnavailable());
+
+        verify(rateLimiter, never()).admit(any(), anyInt());
+    }
+
+    @Test
+    void ingestEvent_TierOutOfQuota_ReturnsTooManyRequestsWithoutProcessing() throws Exception {
+        // Given
+        when(rateLimiter.admit(tier("free"), 1)).thenReturn(Admission.RATE_LIMITED);
+        when(rateLimiter.retryAfterSeconds(tier("free"), 1)).thenReturn(7);
+
+        // When/Then: the client waits as long as the tier's bucket needs, not the memory budget's delay
+        mockMvc.perform(post("/api/v1/ingest")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "free")
+                .content("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"test\"}"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "7"))
+                .andExpect(jsonPath("$.message").value("Ingest quota of the customer tier exceeded, retry later"));
+
+        verify(memoryBudget).admit(tier("free"));
+        verify(eventService, never()).processEncodedEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvents_TierOutOfQuota_ReturnsTooManyRequestsWithoutProcessing() throws Exception {
+        // Given
+        when(rateLimiter.admit(tier("free"), 2)).thenReturn(Admission.RATE_LIMITED);
+        when(rateLimiter.retryAfterSeconds(tier("free"), 2)).thenReturn(12);
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "free")
+                .content("[{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"a\"},"
+                    + "{\"event_timestamp\":\"2024-01-11T01:42:51.234Z\",\"body\":\"b\"}]"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "12"))
+                .andExpect(jsonPath("$.message").value("Ingest quota of the customer tier exceeded, retry later"));
+
+        verify(eventService, never()).processEncodedEvents(any(), any());
+        verify(eventService, never()).processEvent(any(), any());
+    }
+
+    @Test
+    void ingestEvents_BudgetExhausted_ReturnsServiceUnavailable() throws Exception {
+        // Given
+        when(memoryBudget.admit(tier("enterprise"))).thenReturn(Admission.OVERLOADED);
+
+        // When/Then
+        mockMvc.perform(post("/api/v1/ingest/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Customer-Tier", "enterprise")
+                .content("[{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"test\"}]"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verify(eventService, never()).processEncodedEvents(any(), any());
+    }
+
+    private CustomerTier tier(String name) {
+        return tierRegistry.resolve(name);
+    }
 }
@@ -0,0 +1,145 @@
+package com.eventreceiver.reactive;
+
+import com.eventreceiver.admission.Admission;
+import com.eventreceiver.admission.MemoryBudget;
+import com.eventreceiver.admission.TierRateLimiter;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.model.EncodedEvent;
+import com.eventreceiver.service.EventPayloadParser;
+import com.eventreceiver.service.EventService;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.web.reactive.function.server.RequestPredicates.POST;
+
+class ReactiveEventHandlerTest {
+    private static final String PAYLOAD =
+        "{\n  \"event_timestamp\": \"2024-01-11T01:42:50.234Z\",\n  \"body\": \"test body\"\n}";
+
+    private WebTestClient client;
+    private EventService eventService;
+    private MemoryBudget memoryBudget;
+    private TierRegistry tierRegistry;
+
+    @BeforeEach
+    void setUp() {
+        eventService = mock(EventService.class);
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("premium", "free"));
+        appConfig.getReactive().setMaxEventBytes(1024);
+        appConfig.getReactive().setMaxStallMillis(50);
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        memoryBudget = mock(MemoryBudget.class);
+        when(memoryBudget.admit(any())).thenReturn(Admission.ADMITTED);
+        when(memoryBudget.hasRoom(any())).thenReturn(true);
+        when(memoryBudget.getRetryAfterSeconds()).thenReturn(2);
+        tierRegistry = new TierRegistry(appConfig);
+
+        ReactiveEventHandler handler = new ReactiveEventHandler(appConfig, eventService,
+            new EventPayloadParser(objectMapper), memoryBudget,
+            new TierRateLimiter(tierRegistry, appConfig, new SimpleMeterRegistry()), tierRegistry, objectMapper,
+            new SimpleMeterRegistry());
+        client = WebTestClient.bindToRouterFunction(RouterFunctions.route(POST("/api/v1/ingest"), handler::ingestEvent))
+            .build();
+    }
+
+    @Test
+    void ingestEvent_ValidRequest_AppendsCompactedEvent() {
+        // Given
+        doAnswer(invocation -> {
+            EncodedEvent event = invocation.getArgument(0);
+            assertEquals("{\"event_timestamp\":\"2024-01-11T01:42:50.234Z\",\"body\":\"test body\"}",
+                new String(event.getBytes(), event.getOffset(), event.getLength(), StandardCharsets.UTF_8));
+            return null;
+        }).when(eventService).processEncodedEvent(any(EncodedEvent.class), eq(tier("premium")));
+
+        // When / Then
+        ingest("premium", PAYLOAD)
+            .expectStatus().isAccepted()
+            .expectBody()
+            .jsonPath("$.status").isEqualTo("success")
+            .jsonPath("$.message").isEqualTo("Event accepted");
+        verify(eventService).processEncodedEvent(any(EncodedEvent.class), eq(tier("premium")));
+    }
+
+    @Test
+    void ingestEvent_UnauthorizedTier_ReturnsBadRequest() {
+        // When / Then
+        ingest("unknown", PAYLOAD)
+            .expectStatus().isBadRequest()
+            .expectBody()
+            .jsonPath("$.message").isEqualTo("Unauthorized customer tier");
+        verifyNoInteractions(eventService);
+        verify(memoryBudget, never()).admit(any());
+    }
+
+    @Test
+    void ingestEvent_InvalidEvent_ReturnsBadRequest() {
+        // When / Then
+        ingest("premium", "{\"user_id\": \"42\"}")
+            .expectStatus().isBadRequest()
+            .expectBody()
+            .jsonPath("$.status").isEqualTo("error")
+            .jsonPath("$.message").isEqualTo("Unknown field: user_id");
+        verifyNoInteractions(eventService);
+    }
+
+    @Test
+    void ingestEvent_BodyOverLimit_ReturnsPayloadTooLarge() {
+        // When / Then
+        ingest("premium", "{\"event_timestamp\": \"2024-01-11T01:42:50.234Z\", \"body\": \"" + "x".repeat(2048) + "\"}")
+            .expectStatus().isEqualTo(413);
+        verifyNoInteractions(eventService);
+    }
+
+    @Test
+    void ingestEvent_TierThrottled_ReturnsTooManyRequestsWithRetryAfter() {
+        // Given
+        when(memoryBudget.admit(tier("free"))).thenReturn(Admission.THROTTLED);
+
+        // When / Then
+        ingest("free", PAYLOAD)
+            .expectStatus().isEqualTo(429)
+            .expectHeader().valueEquals("Retry-After", "2");
+        verifyNoInteractions(eventService);
+    }
+
+    @Test
+    void ingestEvent_BudgetStaysExhaustedWhileReading_ReturnsServiceUnavailable() {
+        // Given
+        when(memoryBudget.hasRoom(tier("premium"))).thenReturn(false);
+
+        // When / Then
+        ingest("premium", PAYLOAD)
+            .expectStatus().isEqualTo(503)
+            .expectHeader().valueEquals("Retry-After", "2");
+        verifyNoInteractions(eventService);
+    }
+
+    private WebTestClient.ResponseSpec ingest(String customerTier, String payload) {
+        return client.post().uri("/api/v1/ingest")
+            .contentType(MediaType.APPLICATION_JSON)
+            .header("X-Customer-Tier", customerTier)
+            .bodyValue(payload)
+            .exchange();
+    }
+
+    private CustomerTier tier(String name) {
+        return tierRegistry.resolve(name);
+    }
+}
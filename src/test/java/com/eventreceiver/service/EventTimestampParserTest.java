@@ -0,0 +1,61 @@
+package com.eventreceiver.service;
+
+import com.eventreceiver.model.Event;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventTimestampParserTest {
+
+    @Test
+    void parse_CanonicalTimestamps_MatchesFormatter() {
+        // Given
+        List<String> timestamps = List.of("2024-01-11T01:42:50.234Z", "2024-02-29T23:59:59.999Z",
+            "1970-01-01T05:30:00.000Z", "2100-12-31T00:00:00.001Z");
+
+        for (String timestamp : timestamps) {
+            // When
+            Instant parsed = parse(timestamp);
+
+            // Then
+            assertEquals(Instant.from(Event.EVENT_TIMESTAMP_FORMAT.parse(timestamp)), parsed, timestamp);
+        }
+    }
+
+    @Test
+    void parse_TimestampsTheFormatterResolves_LeavesThemToIt() {
+        // When / Then
+        assertNull(parse("2023-02-29T10:00:00.000Z"));
+        assertNull(parse("2024-01-11T24:00:00.000Z"));
+        assertNull(parse("2024-01-11T01:42:50Z"));
+        assertNull(parse("2024-01-11 01:42:50.234Z"));
+        assertNull(parse("2024-1a-11T01:42:50.234Z"));
+    }
+
+    @Test
+    void parse_NonDigitTimeFields_LeavesThemToTheFormatter() {
+        // Given
+        List<String> timestamps = List.of("2024-03-20Txx:30:00.000Z", "2024-03-20T10:-1:00.000Z",
+            "2024-03-20T10:30:a0.000Z", "2024-03-20T1x:30:00.000Z", "2024-03-20T10:30:00.0a0Z");
+
+        for (String timestamp : timestamps) {
+            // When
+            Instant parsed = parse(timestamp);
+
+            // Then
+            assertNull(parsed, timestamp);
+            assertThrows(DateTimeParseException.class, () -> Event.EVENT_TIMESTAMP_FORMAT.parse(timestamp), timestamp);
+        }
+    }
+
+    private static Instant parse(String timestamp) {
+        char[] text = ("\"" + timestamp + "\"").toCharArray();
+        return EventTimestampParser.parse(text, 1, timestamp.length());
+    }
+}
@@ -0,0 +1,108 @@
+package com.eventreceiver.service;
+
+import com.eventreceiver.exception.EventTooLargeException;
+import com.eventreceiver.exception.InvalidEventException;
+import com.eventreceiver.model.EncodedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingEventParserTest {
+    private static final String PAYLOAD =
+        "{\n  \"event_timestamp\": \"2024-01-11T01:42:50.234Z\",\n  \"body\": \"what is \\\"the\\\" capital of India?\"\n}";
+
+    private final EventPayloadParser payloadParser =
+        new EventPayloadParser(new ObjectMapper().registerModule(new JavaTimeModule()));
+
+    @Test
+    void feed_ChunkedValidEvent_MatchesBlockingParser() {
+        // Given
+        byte[] payload = PAYLOAD.getBytes(StandardCharsets.UTF_8);
+        // parse compacts the payload in place
+        EncodedEvent expected = payloadParser.parse(payload.clone());
+
+        for (int chunkSize = 1; chunkSize <= payload.length; chunkSize++) {
+            StreamingEventParser parser = payloadParser.streamingParser(-1, 1024);
+
+            // When
+            for (int offset = 0; offset < payload.length; offset += chunkSize) {
+                parser.feed(ByteBuffer.wrap(payload, offset, Math.min(chunkSize, payload.length - offset)));
+            }
+            EncodedEvent event = parser.finish();
+
+            // Then
+            assertEquals(compacted(expected), compacted(event), "chunk size " + chunkSize);
+            assertEquals(expected.getEventTimestamp(), event.getEventTimestamp());
+        }
+    }
+
+    @Test
+    void feed_UnknownFieldInFirstChunk_RejectsBeforeRestOfBody() {
+        // Given
+        StreamingEventParser parser = payloadParser.streamingParser(1 << 20, 1 << 20);
+
+        // When / Then
+        InvalidEventException e = assertThrows(InvalidEventException.class,
+            () -> parser.feed(chunk("{\"user_id\": \"42\", \"body\": \"")));
+        assertEquals("Unknown field: user_id", e.getMessage());
+    }
+
+    @Test
+    void feed_MissingTimestamp_RejectsAtEndOfObject() {
+        // Given
+        StreamingEventParser parser = payloadParser.streamingParser(-1, 1024);
+
+        // When / Then
+        InvalidEventException e = assertThrows(InvalidEventException.class,
+            () -> parser.feed(chunk("{\"body\": \"test\"}")));
+        assertEquals("event_timestamp is required", e.getMessage());
+    }
+
+    @Test
+    void feed_BooleanBody_Rejects() {
+        // Given
+        StreamingEventParser parser = payloadParser.streamingParser(-1, 1024);
+
+        // When / Then
+        InvalidEventException e = assertThrows(InvalidEventException.class,
+            () -> parser.feed(chunk("{\"event_timestamp\": \"2024-01-11T01:42:50.234Z\", \"body\": true}")));
+        assertEquals("body must be a string", e.getMessage());
+    }
+
+    @Test
+    void finish_TruncatedBody_Rejects() {
+        // Given
+        StreamingEventParser parser = payloadParser.streamingParser(-1, 1024);
+        parser.feed(chunk("{\"event_timestamp\": \"2024-01-11T01:42:50.234Z\", \"bo"));
+
+        // When / Then
+        InvalidEventException e = assertThrows(InvalidEventException.class, parser::finish);
+        assertEquals("Malformed event JSON", e.getMessage());
+    }
+
+    @Test
+    void feed_PastMaxBytes_RejectsAsTooLarge() {
+        // Given
+        StreamingEventParser parser = payloadParser.streamingParser(-1, 32);
+        parser.feed(chunk("{\"body\": \""));
+
+        // When / Then
+        assertThrows(EventTooLargeException.class, () -> parser.feed(chunk("x".repeat(32))));
+    }
+
+    private static ByteBuffer chunk(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String compacted(EncodedEvent event) {
+        byte[] bytes = Arrays.copyOfRange(event.getBytes(), event.getOffset(), event.getOffset() + event.getLength());
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
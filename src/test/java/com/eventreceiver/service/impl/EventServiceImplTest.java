@@ -1,38 +1,91 @@
 package com.eventreceiver.service.impl;
 
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.BatchEncoder;
+import com.eventreceiver.batch.BatchMetrics;
+import com.eventreceiver.batch.BatchUploader;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.TierFlushScheduler;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.batch.format.ManifestFormat;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.config.JacksonConfig;
 import com.eventreceiver.model.Event;
-import com.eventreceiver.service.S3Service;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.sink.StorageSink;
+import com.eventreceiver.spool.EventSpool;
+import com.eventreceiver.tier.CustomerTier;
+import com.eventreceiver.tier.TierRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class EventServiceImplTest {
     @Mock
-    private S3Service s3Service;
+    private StorageSink storageSink;
     
     private EventServiceImpl eventService;
+    private BatchUploader batchUploader;
+    private ResilientStorage resilientStorage;
+    private TierFlushScheduler flushScheduler;
+    private MeterRegistry meterRegistry;
+    private TierRegistry tierRegistry;
+    private final ObjectMapper objectMapper = new JacksonConfig().objectMapper();
     private final long maxBatchSizeBytes = 1000;
 
     @BeforeEach
     void setUp() {
-        MeterRegistry meterRegistry = new SimpleMeterRegistry();
-        eventService = new EventServiceImpl(s3Service, meterRegistry);
-        ReflectionTestUtils.setField(eventService, "maxBatchSizeBytes", maxBatchSizeBytes);
-        int maxBatchDelaySeconds = 5;
-        ReflectionTestUtils.setField(eventService, "maxBatchDelaySeconds", maxBatchDelaySeconds);
-        eventService.init();
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().doCallRealMethod().when(storageSink).storeEventsAsync(any(), anyString());
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("premium", "standard"));
+        appConfig.getBatch().setMaxBatchSizeBytes((int) maxBatchSizeBytes);
+        BatchBufferPool bufferPool = new BatchBufferPool((int) maxBatchSizeBytes, 8, true);
+        BatchCodecs batchCodecs = new BatchCodecs(appConfig, meterRegistry);
+        BatchEncoder batchEncoder = new BatchEncoder(batchCodecs, bufferPool, appConfig, meterRegistry);
+        appConfig.getUpload().getFallback().setEnabled(false);
+        BatchFormats batchFormats = new BatchFormats(appConfig);
+        BatchMetrics batchMetrics = new BatchMetrics(appConfig, meterRegistry);
+        resilientStorage = new ResilientStorage(storageSink, batchFormats, batchCodecs, batchMetrics, appConfig,
+            meterRegistry);
+        batchUploader = new BatchUploader(resilientStorage, batchEncoder, bufferPool, batchMetrics, appConfig, meterRegistry);
+        EventSpool eventSpool = new EventSpool(appConfig, batchUploader, batchFormats, bufferPool, meterRegistry);
+        flushScheduler = new TierFlushScheduler(batchUploader, appConfig, meterRegistry);
+        tierRegistry = new TierRegistry(appConfig);
+        eventService = new EventServiceImpl(batchUploader, bufferPool, batchCodecs, batchFormats, eventSpool,
+            flushScheduler, tierRegistry, objectMapper, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        flushScheduler.shutdown();
+        batchUploader.shutdown();
+        resilientStorage.shutdown();
     }
 
     @Test
@@ -44,10 +97,10 @@ class EventServiceImplTest {
         String customerTier = "premium";
 
         // When
-        eventService.processEvent(event, customerTier);
+        eventService.processEvent(event, tier(customerTier));
 
         // Then
-        verify(s3Service, never()).storeEvents(any(), any());
+        verify(storageSink, never()).storeEvents(any(), anyString());
     }
 
     @Test
@@ -59,10 +112,34 @@ class EventServiceImplTest {
         String customerTier = "premium";
 
         // When
-        eventService.processEvent(event, customerTier);
+        eventService.processEvent(event, tier(customerTier));
 
         // Then
-        verify(s3Service, times(1)).storeEvents(any(), eq(customerTier));
+        verify(storageSink, timeout(1000).times(1)).storeEvents(forTier(customerTier), anyString());
+    }
+
+    @Test
+    void processEvent_BatchStored_RecordsBatchMetricsByTierAndReason() {
+        // Given
+        Event event = new Event();
+        event.setEventTimestamp(Instant.now());
+        event.setBody("test body");
+        eventService.processEvent(event, tier("premium"));
+        eventService.processEvent(event, tier("premium"));
+
+        // When
+        flushScheduler.shutdown();
+        batchUploader.shutdown();
+
+        // Then
+        DistributionSummary storedEvents = meterRegistry.get("event.batch.stored.events")
+            .tags("tier", "premium", "reason", "shutdown").summary();
+        assertEquals(1, storedEvents.count());
+        assertEquals(2, storedEvents.totalAmount());
+        assertEquals(1, meterRegistry.get("event.batch.durable.latency")
+            .tags("tier", "premium", "reason", "shutdown").timer().count());
+        assertEquals(0, meterRegistry.get("event.batch.durable.latency")
+            .tags("tier", "premium", "reason", "size").timer().count());
     }
 
     @Test
@@ -79,11 +156,11 @@ class EventServiceImplTest {
         String customerTier = "premium";
 
         // When
-        eventService.processEvent(event1, customerTier);
-        eventService.processEvent(event2, customerTier);
+        eventService.processEvent(event1, tier(customerTier));
+        eventService.processEvent(event2, tier(customerTier));
 
         // Then
-        verify(s3Service, never()).storeEvents(any(), any());
+        verify(storageSink, never()).storeEvents(any(), anyString());
     }
 
     @Test
@@ -98,12 +175,12 @@ class EventServiceImplTest {
         event2.setBody("x".repeat((int)maxBatchSizeBytes));
 
         // When
-        eventService.processEvent(event1, "premium");
-        eventService.processEvent(event2, "standard");
+        eventService.processEvent(event1, tier("premium"));
+        eventService.processEvent(event2, tier("standard"));
 
         // Then
-        verify(s3Service, times(1)).storeEvents(any(), eq("premium"));
-        verify(s3Service, times(1)).storeEvents(any(), eq("standard"));
+        verify(storageSink, timeout(1000).times(1)).storeEvents(forTier("premium"), anyString());
+        verify(storageSink, timeout(1000).times(1)).storeEvents(forTier("standard"), anyString());
     }
 
     @Test
@@ -114,15 +191,178 @@ class EventServiceImplTest {
         event.setBody("x".repeat((int)maxBatchSizeBytes));
         String customerTier = "premium";
 
-        doThrow(new RuntimeException("Test error")).when(s3Service).storeEvents(any(), any());
+        doThrow(new RuntimeException("Test error")).when(storageSink).storeEvents(any(), anyString());
 
         // When/Then
         try {
-            eventService.processEvent(event, customerTier);
+            eventService.processEvent(event, tier(customerTier));
         } catch (Exception e) {
             // Expected
         }
 
-        verify(s3Service, times(1)).storeEvents(any(), eq(customerTier));
+        verify(storageSink, timeout(1000).times(1)).storeEvents(forTier(customerTier), anyString());
+    }
+
+    @Test
+    void processEvent_BatchNeverExceedsMaxSize() throws Exception {
+        // Given
+        String customerTier = "premium";
+        int eventCount = 40;
+        List<byte[]> storedContents = captureStoredContents();
+
+        // When
+        for (int i = 0; i < eventCount; i++) {
+            Event event = new Event();
+            event.setEventTimestamp(Instant.now());
+            event.setBody("caf\u00e9 \"quoted\" body " + i);
+            eventService.processEvent(event, tier(customerTier));
+        }
+
+        // Then
+        verify(storageSink, timeout(1000).atLeastOnce()).storeEvents(forTier(customerTier), anyString());
+        batchUploader.shutdown();
+        int storedEvents = 0;
+        for (byte[] content : storedContents) {
+            assertTrue(content.length <= maxBatchSizeBytes);
+            Event[] batch = objectMapper.readValue(content, Event[].class);
+            assertArrayEquals(content, objectMapper.writeValueAsBytes(batch));
+            storedEvents += batch.length;
+        }
+        assertTrue(storedEvents < eventCount);
+    }
+
+    @Test
+    void processEvent_BatchExactlyAtMaxSize_ProcessesBatch() throws Exception {
+        // Given
+        Event event = new Event();
+        event.setEventTimestamp(Instant.now());
+        event.setBody("");
+        int emptyBodySize = objectMapper.writeValueAsBytes(List.of(event)).length;
+        event.setBody("x".repeat((int) maxBatchSizeBytes - emptyBodySize));
+        String customerTier = "premium";
+        List<byte[]> storedContents = captureStoredContents();
+
+        // When
+        eventService.processEvent(event, tier(customerTier));
+
+        // Then
+        verify(storageSink, timeout(1000).times(1)).storeEvents(forTier(customerTier), anyString());
+        batchUploader.shutdown();
+        assertEquals(1, storedContents.size());
+        assertArrayEquals(objectMapper.writeValueAsBytes(List.of(event)), storedContents.get(0));
+        assertEquals(maxBatchSizeBytes, storedContents.get(0).length);
+    }
+
+    @Test
+    void processEvent_SlowUpload_DoesNotBlockIngest() throws Exception {
+        // Given
+        CountDownLatch uploadReleased = new CountDownLatch(1);
+        doAnswer(invocation -> uploadReleased.await(5, TimeUnit.SECONDS))
+            .when(storageSink).storeEvents(any(), anyString());
+        String customerTier = "premium";
+
+        // When
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            Event event = new Event();
+            event.setEventTimestamp(Instant.now());
+            event.setBody("x".repeat((int) maxBatchSizeBytes));
+            eventService.processEvent(event, tier(customerTier));
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        uploadReleased.countDown();
+
+        // Then
+        assertTrue(elapsedMillis < 1000);
+        verify(storageSink, timeout(1000).times(3)).storeEvents(forTier(customerTier), anyString());
+    }
+
+    @Test
+    void processEvent_EventsOfTwoHours_StoresOneObjectPerPartitionAndManifest() throws Exception {
+        // Given
+        Map<String, byte[]> storedObjects = captureStoredObjects();
+        Instant firstHour = Instant.parse("2024-01-10T20:29:59.000Z");
+        Instant secondHour = Instant.parse("2024-01-10T20:30:00.000Z");
+
+        // When
+        for (Instant timestamp : List.of(firstHour, secondHour, firstHour)) {
+            Event event = new Event();
+            event.setEventTimestamp(timestamp);
+            event.setBody("test body");
+            eventService.processEvent(event, tier("premium"));
+        }
+        flushScheduler.shutdown();
+        batchUploader.shutdown();
+
+        // Then: hours are taken in the timestamps' zone, Asia/Kolkata
+        assertEquals(3, storedObjects.size());
+        String firstKey = keyWithPrefix(storedObjects, "tier=premium/dt=2024-01-11/hour=01/");
+        String secondKey = keyWithPrefix(storedObjects, "tier=premium/dt=2024-01-11/hour=02/");
+        assertEquals(2, objectMapper.readValue(storedObjects.get(firstKey), Event[].class).length);
+        assertEquals(1, objectMapper.readValue(storedObjects.get(secondKey), Event[].class).length);
+        JsonNode manifest = objectMapper.readTree(storedObjects.get(keyWithPrefix(storedObjects, "tier=premium/_manifests/")));
+        assertEquals("shutdown", manifest.get("flush_reason").asText());
+        JsonNode first = manifest.get("objects").get(0);
+        assertEquals(firstKey, first.get("key").asText());
+        assertEquals(2, first.get("event_count").asInt());
+        assertEquals("2024-01-11T01:59:59.000Z", first.get("max_event_timestamp").asText());
+        assertEquals(0, first.get("offset").asLong());
+        assertEquals(storedObjects.get(firstKey).length, first.get("length").asLong());
+        assertEquals(secondKey, manifest.get("objects").get(1).get("key").asText());
+        assertEquals(1, meterRegistry.get("event.batches.partitioned").counter().count());
+    }
+
+    /**
+     * Copies the content of every stored batch while the upload is in progress,
+     * before its buffer is handed back to the pool. Flush manifests are left out.
+     */
+    private List<byte[]> captureStoredContents() {
+        List<byte[]> storedContents = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            SealedBatch batch = invocation.getArgument(0);
+            if (batch.getFormat() != ManifestFormat.INSTANCE) {
+                storedContents.add(contentOf(batch));
+            }
+            return null;
+        }).when(storageSink).storeEvents(any(), anyString());
+        return storedContents;
+    }
+
+    /**
+     * Copies the content of every stored object, flush manifests included, by key.
+     */
+    private Map<String, byte[]> captureStoredObjects() {
+        Map<String, byte[]> storedObjects = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            storedObjects.put(invocation.getArgument(1), contentOf(invocation.getArgument(0)));
+            return null;
+        }).when(storageSink).storeEvents(any(), anyString());
+        return storedObjects;
+    }
+
+    private static byte[] contentOf(SealedBatch batch) {
+        ByteBuffer content = batch.getContent();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    private static String keyWithPrefix(Map<String, byte[]> storedObjects, String prefix) {
+        return storedObjects.keySet().stream()
+            .filter(key -> key.startsWith(prefix))
+            .findFirst()
+            .orElseThrow(() -> new AssertionError("No object below " + prefix + " in " + storedObjects.keySet()));
+    }
+
+    private CustomerTier tier(String name) {
+        return tierRegistry.resolve(name);
+    }
+
+    /**
+     * Matches the batches of a tier, but not their flush manifests.
+     */
+    private static SealedBatch forTier(String tier) {
+        return argThat(batch -> batch != null && tier.equals(batch.getTier())
+            && batch.getFormat() != ManifestFormat.INSTANCE);
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.format.NdjsonFormat;
+import com.eventreceiver.config.AppConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalFileSinkTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void storeEvents_WritesBatchBelowTierAndDate() throws Exception {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.getSink().getLocal().setDirectory(directory.toString());
+        appConfig.getSink().getLocal().setFsync(true);
+        LocalFileSink sink = new LocalFileSink(appConfig);
+        byte[] content = "{\"body\":\"a\"}\n{\"body\":\"b\"}\n".getBytes(StandardCharsets.UTF_8);
+        SealedBatch batch = new SealedBatch("free", NdjsonFormat.INSTANCE, 2, content.length,
+            ByteBuffer.allocateDirect(content.length).put(content).flip(), b -> { });
+
+        // When
+        String key = StorageSink.objectKey(batch);
+        sink.storeEvents(batch, key);
+
+        // Then
+        assertTrue(key.startsWith("tier=free/dt=") && key.endsWith(".ndjson"));
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory.resolve(key).getParent())) {
+            files = listing.toList();
+        }
+        assertEquals(1, files.size());
+        assertEquals(directory.resolve(key), files.get(0));
+        assertEquals(new String(content, StandardCharsets.UTF_8), Files.readString(files.get(0)));
+    }
+}
@@ -0,0 +1,205 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.BatchMetrics;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.config.AppConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ResilientStorageTest {
+    @TempDir
+    Path fallbackDirectory;
+
+    private final StorageSink sink = mock(StorageSink.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final byte[] content = "[{\"body\":\"a\"}]".getBytes(StandardCharsets.UTF_8);
+    private AppConfig appConfig;
+    private ResilientStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        appConfig = new AppConfig();
+        appConfig.getSink().setType("stub");
+        appConfig.getUpload().getRetry().setInitialBackoffMillis(50);
+        appConfig.getUpload().getFallback().setEnabled(false);
+        appConfig.getUpload().getFallback().setDirectory(fallbackDirectory.toString());
+        appConfig.getUpload().getFallback().setDrainIntervalMillis(50);
+        doCallRealMethod().when(sink).storeEventsAsync(any(), anyString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (storage != null) {
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    void store_ThrottledAttempt_RetriesOnTimerWithSameKey() throws Exception {
+        // Given
+        doThrow(slowDown()).doNothing().when(sink).storeEvents(any(), anyString());
+        storage = storage();
+        CompletableFuture<StoreOutcome> outcome = new CompletableFuture<>();
+
+        // When
+        store(batch(), (batch, result) -> outcome.complete(result));
+
+        // Then: the caller is not held for the backoff
+        assertFalse(outcome.isDone());
+        assertEquals(StoreOutcome.STORED, outcome.get(5, TimeUnit.SECONDS));
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(sink, times(2)).storeEvents(any(), keys.capture());
+        assertEquals(2, meterRegistry.get("event.sink.requests").counter().count());
+        assertEquals(keys.getAllValues().get(0), keys.getAllValues().get(1));
+        assertEquals(1, meterRegistry.get("event.s3.put.retries").tags("tier", "premium", "reason", "size")
+            .counter().count());
+    }
+
+    @Test
+    void store_AccessDenied_FailsWithoutRetry() throws Exception {
+        // Given
+        doThrow(S3Exception.builder().statusCode(403).message("Access Denied").build())
+            .when(sink).storeEvents(any(), anyString());
+        storage = storage();
+        CompletableFuture<StoreOutcome> outcome = new CompletableFuture<>();
+
+        // When
+        store(batch(), (batch, result) -> outcome.complete(result));
+
+        // Then
+        assertEquals(StoreOutcome.FAILED, outcome.get(5, TimeUnit.SECONDS));
+        verify(sink, times(1)).storeEvents(any(), anyString());
+    }
+
+    @Test
+    void store_CircuitOpen_DivertsToFallbackAndDrainsOnceSinkRecovers() throws Exception {
+        // Given
+        appConfig.getUpload().getRetry().setMaxAttempts(1);
+        appConfig.getUpload().getCircuitBreaker().setFailureThreshold(1);
+        appConfig.getUpload().getCircuitBreaker().setOpenMillis(200);
+        appConfig.getUpload().getFallback().setEnabled(true);
+        doThrow(slowDown()).when(sink).storeEvents(any(), anyString());
+        storage = storage();
+        CompletableFuture<StoreOutcome> first = new CompletableFuture<>();
+        CompletableFuture<StoreOutcome> second = new CompletableFuture<>();
+
+        // When
+        store(batch(), (batch, result) -> first.complete(result));
+        store(batch(), (batch, result) -> second.complete(result));
+
+        // Then: both are diverted, the second one without reaching the sink
+        assertEquals(StoreOutcome.DIVERTED, first.get(5, TimeUnit.SECONDS));
+        assertEquals(StoreOutcome.DIVERTED, second.get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.OPEN, storage.getCircuitState());
+        verify(sink, times(1)).storeEvents(any(), anyString());
+        assertEquals(2, fallbackFiles().size());
+
+        // When: the sink recovers
+        doNothing().when(sink).storeEvents(any(), anyString());
+
+        // Then: a probe closes the circuit and the files are handed back under their keys
+        verify(sink, timeout(5000).times(3)).storeEvents(any(), anyString());
+        awaitCount("event.sink.fallback.drained", 2);
+        assertTrue(fallbackFiles().isEmpty());
+        assertEquals(CircuitBreaker.State.CLOSED, storage.getCircuitState());
+    }
+
+    @Test
+    void store_SlowAttempt_HedgedRequestStoresBatchFirst() throws Exception {
+        // Given
+        appConfig.getUpload().getHedge().setEnabled(true);
+        appConfig.getUpload().getHedge().setMinDelayMillis(50);
+        CountDownLatch slowAttemptReleased = new CountDownLatch(1);
+        doAnswer(invocation -> slowAttemptReleased.await(5, TimeUnit.SECONDS))
+            .doNothing()
+            .when(sink).storeEvents(any(), anyString());
+        storage = storage();
+        CompletableFuture<StoreOutcome> outcome = new CompletableFuture<>();
+        CountDownLatch bufferReleased = new CountDownLatch(1);
+        SealedBatch batch = new SealedBatch("premium", JsonArrayFormat.INSTANCE, 1, content.length,
+            ByteBuffer.wrap(content), b -> bufferReleased.countDown());
+
+        // When
+        CompletableFuture.runAsync(() -> store(batch, (stored, result) -> {
+            outcome.complete(result);
+            stored.release();
+        }));
+
+        // Then: the batch is done while the slow attempt is still running, but keeps its buffer until that one ends
+        assertEquals(StoreOutcome.STORED, outcome.get(5, TimeUnit.SECONDS));
+        verify(sink, times(2)).storeEvents(any(), anyString());
+        assertEquals(1, meterRegistry.get("event.sink.hedges.won").counter().count());
+        assertEquals(1, bufferReleased.getCount());
+        slowAttemptReleased.countDown();
+        assertTrue(bufferReleased.await(5, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("event.sink.hedges.win.ratio").gauge().value());
+    }
+
+    @Test
+    void isRetryable_ClassifiesSdkErrors() {
+        assertTrue(ResilientStorage.isRetryable(slowDown()));
+        assertTrue(ResilientStorage.isRetryable(S3Exception.builder().statusCode(500).build()));
+        assertFalse(ResilientStorage.isRetryable(S3Exception.builder().statusCode(404).build()));
+        assertFalse(ResilientStorage.isRetryable(new IllegalStateException("bug")));
+    }
+
+    private ResilientStorage storage() {
+        return new ResilientStorage(sink, new BatchFormats(appConfig), new BatchCodecs(appConfig, meterRegistry),
+            new BatchMetrics(appConfig, meterRegistry), appConfig, meterRegistry);
+    }
+
+    private void store(SealedBatch batch, BiConsumer<SealedBatch, StoreOutcome> onDone) {
+        storage.store(batch, StorageSink.objectKey(batch), onDone);
+    }
+
+    private SealedBatch batch() {
+        return new SealedBatch("premium", JsonArrayFormat.INSTANCE, 1, content.length, ByteBuffer.wrap(content), b -> { });
+    }
+
+    private static S3Exception slowDown() {
+        return (S3Exception) S3Exception.builder().statusCode(503).message("Slow Down").build();
+    }
+
+    private List<Path> fallbackFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(fallbackDirectory)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private void awaitCount(String counterName, int expected) throws Exception {
+        Counter counter = meterRegistry.get(counterName).counter();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (counter.count() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(expected, counter.count());
+    }
+}
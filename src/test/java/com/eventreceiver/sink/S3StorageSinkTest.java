@@ -0,0 +1,174 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.config.AppConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class S3StorageSinkTest {
+    private static final int MB = 1024 * 1024;
+
+    @Mock
+    private S3AsyncClient s3Client;
+
+    private S3StorageSink sink;
+
+    @BeforeEach
+    void setUp() {
+        AppConfig appConfig = new AppConfig();
+        AppConfig.S3Config s3Config = new AppConfig.S3Config();
+        s3Config.setBucketName("events");
+        s3Config.setMultipartThresholdBytes(8 * MB);
+        s3Config.setPartSizeBytes(5 * MB);
+        appConfig.setS3(s3Config);
+        sink = new S3StorageSink(s3Client, appConfig);
+    }
+
+    @Test
+    void storeEvents_SmallBatch_PutsSingleObject() {
+        // Given
+        when(s3Client.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+            .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        // When
+        sink.storeEvents(batch(MB), "tier=premium/dt=2024-03-20/hour=14/batch.json");
+
+        // Then
+        ArgumentCaptor<PutObjectRequest> captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(captor.capture(), any(AsyncRequestBody.class));
+        assertEquals(MB, captor.getValue().contentLength());
+        assertEquals("tier=premium/dt=2024-03-20/hour=14/batch.json", captor.getValue().key());
+        verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    void storeEvents_LargeBatch_UploadsPartsAndCompletesInOrder() {
+        // Given
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build()));
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+            .thenAnswer(invocation -> {
+                UploadPartRequest request = invocation.getArgument(0);
+                return CompletableFuture.completedFuture(
+                    UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build());
+            });
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        // When
+        sink.storeEvents(batch(12 * MB), "tier=premium/dt=2024-03-20/hour=14/batch.json");
+
+        // Then
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3Client, times(2)).uploadPart(parts.capture(), any(AsyncRequestBody.class));
+        assertEquals(List.of(5L * MB, 7L * MB), parts.getAllValues().stream().map(UploadPartRequest::contentLength).toList());
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertEquals(List.of("etag-1", "etag-2"),
+            complete.getValue().multipartUpload().parts().stream().map(CompletedPart::eTag).toList());
+    }
+
+    @Test
+    void storeEvents_PartFails_AbortsUploadAndRethrows() {
+        // Given
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build()));
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+            .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().message("slow down").statusCode(503).build()));
+        when(s3Client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+
+        // When / Then
+        assertThrows(S3Exception.class, () -> sink.storeEvents(batch(10 * MB), "tier=premium/dt=2024-03-20/hour=14/batch.json"));
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void storeEvents_PartFailsWhileAnotherIsInFlight_WaitsForItBeforeFailing() throws Exception {
+        // Given: the first part fails at once, the second is still reading the batch buffer
+        CompletableFuture<UploadPartResponse> inFlight = new CompletableFuture<>();
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build()));
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+            .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().message("slow down").statusCode(503).build()))
+            .thenReturn(inFlight);
+        when(s3Client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+
+        // When
+        CompletableFuture<Void> store = CompletableFuture.runAsync(() ->
+            sink.storeEvents(batch(10 * MB), "tier=premium/dt=2024-03-20/hour=14/batch.json"));
+
+        // Then
+        Thread.sleep(200);
+        assertFalse(store.isDone());
+        verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        inFlight.complete(UploadPartResponse.builder().eTag("etag-2").build());
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> store.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(S3Exception.class, failure.getCause());
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void storeEvents_InterruptedBeforePart_AbortsUploadAndKeepsInterruptFlag() {
+        // Given
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload").build()));
+        when(s3Client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+            .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+        Thread.currentThread().interrupt();
+
+        // When / Then
+        RuntimeException e = assertThrows(RuntimeException.class,
+            () -> sink.storeEvents(batch(10 * MB), "tier=premium/dt=2024-03-20/hour=14/batch.json"));
+        assertTrue(Thread.interrupted());
+        assertInstanceOf(InterruptedException.class, e.getCause());
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    void partOffsets_LastPartTakesRemainder() {
+        assertArrayEquals(new long[] {0, 5L * MB, 11L * MB}, S3StorageSink.partOffsets(11L * MB, 4L * MB));
+        assertArrayEquals(new long[] {0, 3L * MB}, S3StorageSink.partOffsets(3L * MB, 8L * MB));
+    }
+
+    private static SealedBatch batch(int sizeBytes) {
+        return new SealedBatch("premium", JsonArrayFormat.INSTANCE, 1, sizeBytes, ByteBuffer.allocate(sizeBytes), b -> { });
+    }
+}
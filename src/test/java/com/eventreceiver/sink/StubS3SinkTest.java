@@ -0,0 +1,61 @@
+package com.eventreceiver.sink;
+
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.format.JsonArrayFormat;
+import com.eventreceiver.config.AppConfig;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StubS3SinkTest {
+    private final byte[] content = "[{\"body\":\"a\"}]".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void storeEvents_TakesSimulatedLatencyAndRetainsObject() {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.getSink().getStub().setLatencyMillis(30);
+        appConfig.getSink().getStub().setLatencyJitterMillis(0);
+        appConfig.getSink().getStub().setRetainObjects(true);
+        StubS3Sink sink = new StubS3Sink(appConfig);
+
+        // When
+        long start = System.nanoTime();
+        sink.storeEvents(batch(), StorageSink.objectKey(batch()));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then
+        assertTrue(elapsedMillis >= 30);
+        assertEquals(1, sink.getStoredObjects());
+        assertEquals(content.length, sink.getStoredBytes());
+        String key = sink.getObjects().keySet().iterator().next();
+        assertTrue(key.startsWith("tier=premium/dt=") && key.endsWith(".json"));
+        assertArrayEquals(content, sink.getObjects().get(key));
+    }
+
+    @Test
+    void storeEvents_ErrorRateOne_FailsWithSlowDown() {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.getSink().getStub().setLatencyMillis(0);
+        appConfig.getSink().getStub().setLatencyJitterMillis(0);
+        appConfig.getSink().getStub().setErrorRate(1.0);
+        StubS3Sink sink = new StubS3Sink(appConfig);
+
+        // When / Then
+        S3Exception e = assertThrows(S3Exception.class, () -> sink.storeEvents(batch(), StorageSink.objectKey(batch())));
+        assertEquals(503, e.statusCode());
+        assertEquals(0, sink.getStoredObjects());
+    }
+
+    private SealedBatch batch() {
+        return new SealedBatch("premium", JsonArrayFormat.INSTANCE, 1, content.length, ByteBuffer.wrap(content), b -> { });
+    }
+}
@@ -0,0 +1,152 @@
+package com.eventreceiver.spool;
+
+import com.eventreceiver.batch.BatchBufferPool;
+import com.eventreceiver.batch.BatchEncoder;
+import com.eventreceiver.batch.BatchMetrics;
+import com.eventreceiver.batch.BatchUploader;
+import com.eventreceiver.batch.FlushReason;
+import com.eventreceiver.batch.SealedBatch;
+import com.eventreceiver.batch.TierBatch;
+import com.eventreceiver.batch.TierBuffer;
+import com.eventreceiver.batch.codec.BatchCodecs;
+import com.eventreceiver.batch.format.BatchFormats;
+import com.eventreceiver.config.AppConfig;
+import com.eventreceiver.sink.ResilientStorage;
+import com.eventreceiver.sink.StorageSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+class EventSpoolTest {
+    private static final int MAX_BATCH_SIZE_BYTES = 1000;
+
+    @TempDir
+    Path spoolDirectory;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final StorageSink storageSink = mock(StorageSink.class);
+    private final ConcurrentLinkedQueue<String> storedEvents = new ConcurrentLinkedQueue<>();
+    private final List<ResilientStorage> resilientStorages = new ArrayList<>();
+    private AppConfig appConfig;
+    private BatchBufferPool bufferPool;
+
+    @BeforeEach
+    void setUp() {
+        appConfig = new AppConfig();
+        appConfig.getBatch().setMaxBatchSizeBytes(MAX_BATCH_SIZE_BYTES);
+        appConfig.getSpool().setEnabled(true);
+        appConfig.getSpool().setDirectory(spoolDirectory.toString());
+        appConfig.getSpool().setSegmentSizeBytes(512);
+        appConfig.getUpload().getFallback().setEnabled(false);
+        appConfig.getBatch().setWriteManifests(false);
+        bufferPool = new BatchBufferPool(MAX_BATCH_SIZE_BYTES, 4, true);
+        doCallRealMethod().when(storageSink).storeEventsAsync(any(), anyString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        resilientStorages.forEach(ResilientStorage::shutdown);
+    }
+
+    @Test
+    void append_UploadFails_EventsReplayedOnRestartAndSegmentsDeleted() throws Exception {
+        // Given: a first run whose uploads all fail
+        doThrow(new RuntimeException("S3 unavailable")).when(storageSink).storeEvents(any(), anyString());
+        BatchUploader uploader = uploader();
+        EventSpool spool = spool(uploader);
+        TierBuffer tierBuffer = new TierBuffer("premium", new BatchFormats(appConfig).forTier("premium"), bufferPool,
+            () -> MAX_BATCH_SIZE_BYTES);
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            byte[] event = ("\"event " + i + "\"").getBytes(StandardCharsets.UTF_8);
+            SpoolReceipt receipt = spool.append("premium", event, 0, event.length);
+            tierBuffer.append(event, 0, event.length, TierBatch.UNKNOWN_EVENT_TIME, receipt.getHold(), uploader::submit);
+            spool.awaitDurable(receipt);
+            events.add("event " + i);
+        }
+        tierBuffer.flush(FlushReason.DEADLINE, uploader::submit);
+        uploader.shutdown();
+        spool.close();
+        assertEquals(true, segmentFiles().size() > 1);
+
+        // When: the next run can reach S3 again
+        doAnswer(invocation -> {
+            SealedBatch batch = invocation.getArgument(0);
+            ByteBuffer content = batch.getContent();
+            byte[] bytes = new byte[content.remaining()];
+            content.get(bytes);
+            storedEvents.addAll(Arrays.asList(objectMapper.readValue(bytes, String[].class)));
+            return null;
+        }).when(storageSink).storeEvents(any(), anyString());
+        BatchUploader nextUploader = uploader();
+        EventSpool nextSpool = spool(nextUploader);
+        nextUploader.shutdown();
+
+        // Then: every event is stored and only the fresh active segment is left
+        assertEquals(events, storedEvents.stream().sorted((a, b) ->
+            Integer.compare(Integer.parseInt(a.substring(6)), Integer.parseInt(b.substring(6)))).toList());
+        assertEquals(1, segmentFiles().size());
+        nextSpool.close();
+    }
+
+    @Test
+    void start_PojoIngestMode_RefusesToStartWithoutWritingSegments() throws Exception {
+        // Given
+        appConfig.getIngest().setRawPassthrough(false);
+        BatchUploader uploader = uploader();
+
+        // When
+        EventSpool spool = new EventSpool(appConfig, uploader, new BatchFormats(appConfig), bufferPool, meterRegistry);
+
+        // Then
+        assertThrows(IllegalStateException.class, spool::start);
+        assertEquals(List.of(), segmentFiles());
+        uploader.shutdown();
+    }
+
+    private BatchUploader uploader() {
+        BatchCodecs batchCodecs = new BatchCodecs(appConfig, meterRegistry);
+        BatchEncoder encoder = new BatchEncoder(batchCodecs, bufferPool, appConfig, meterRegistry);
+        BatchMetrics batchMetrics = new BatchMetrics(appConfig, meterRegistry);
+        ResilientStorage resilientStorage = new ResilientStorage(storageSink, new BatchFormats(appConfig), batchCodecs,
+            batchMetrics, appConfig, meterRegistry);
+        resilientStorages.add(resilientStorage);
+        return new BatchUploader(resilientStorage, encoder, bufferPool, batchMetrics, appConfig, meterRegistry);
+    }
+
+    private EventSpool spool(BatchUploader uploader) {
+        EventSpool spool = new EventSpool(appConfig, uploader, new BatchFormats(appConfig), bufferPool, meterRegistry);
+        spool.start();
+        return spool;
+    }
+
+    private List<Path> segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(spoolDirectory)) {
+            return files.toList();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.eventreceiver.tier;
+
+import com.eventreceiver.config.AppConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TierRegistryTest {
+
+    @Test
+    void resolve_AllowedTiers_ReturnsOneIndexedHandlePerTier() {
+        // Given
+        AppConfig appConfig = new AppConfig();
+        appConfig.setAllowedCustomerTiers(List.of("free", "pro", "free", "enterprise"));
+
+        // When
+        TierRegistry tierRegistry = new TierRegistry(appConfig);
+
+        // Then
+        assertEquals(3, tierRegistry.size());
+        assertEquals(0, tierRegistry.resolve("free").getIndex());
+        assertEquals(2, tierRegistry.resolve("enterprise").getIndex());
+        assertSame(tierRegistry.resolve("pro"), tierRegistry.resolve(new String("pro")));
+        assertSame(tierRegistry.getTiers().get(1), tierRegistry.resolve("pro"));
+        assertNull(tierRegistry.resolve("premium"));
+        assertNull(tierRegistry.resolve(null));
+    }
+}